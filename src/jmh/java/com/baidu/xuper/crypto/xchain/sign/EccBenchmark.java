@@ -0,0 +1,63 @@
+package com.baidu.xuper.crypto.xchain.sign;
+
+import com.baidu.xuper.crypto.xchain.hash.Hash;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERSequenceGenerator;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compare Ecc.sign with the former signing path.
+ * mvn -Pjmh compile exec:exec
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EccBenchmark {
+    private BigInteger privateKey;
+    private byte[] hash;
+
+    @Setup
+    public void setUp() {
+        privateKey = ECKeyPair.create().getPrivateKey();
+        hash = Hash.doubleSha256("xuper-java-sdk".getBytes());
+    }
+
+    @Benchmark
+    public byte[] former() throws IOException {
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(true, new ECPrivateKeyParameters(privateKey, Ecc.domain));
+        BigInteger[] signature = signer.generateSignature(hash);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DERSequenceGenerator seq = new DERSequenceGenerator(baos);
+        seq.addObject(new ASN1Integer(signature[0]));
+        seq.addObject(new ASN1Integer(signature[1]));
+        seq.close();
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] randomK() throws IOException {
+        return Ecc.sign(hash, privateKey);
+    }
+
+    @Benchmark
+    public byte[] deterministicK() throws IOException {
+        return Ecc.sign(hash, privateKey, true);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] randomKAllThreads() throws IOException {
+        return Ecc.sign(hash, privateKey);
+    }
+}
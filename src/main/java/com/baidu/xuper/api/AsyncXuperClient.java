@@ -0,0 +1,229 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.config.Config;
+import com.baidu.xuper.pb.XchainOuterClass;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking version of the write paths of XuperClient.
+ * The preExecWithSelectUTXO and postTx round trips, and the endorser calls of compliance check, use the async
+ * stubs, so no thread is held while a transaction is in flight; building and signing run on the given executor.
+ */
+public class AsyncXuperClient {
+    private final XuperClient client;
+    private final boolean ownClient;
+    private final Executor executor;
+
+    /**
+     * @param target the address of xchain node, like 127.0.0.1:37101
+     */
+    public AsyncXuperClient(String target) {
+        this(new XuperClient(target), true, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param client the client whose channel is shared, it is not closed by close()
+     */
+    public AsyncXuperClient(XuperClient client) {
+        this(client, false, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param client   the client whose channel is shared, it is not closed by close()
+     * @param executor the executor to build and sign transactions on
+     */
+    public AsyncXuperClient(XuperClient client, Executor executor) {
+        this(client, false, executor);
+    }
+
+    private AsyncXuperClient(XuperClient client, boolean ownClient, Executor executor) {
+        this.client = client;
+        this.ownClient = ownClient;
+        this.executor = executor;
+    }
+
+    public void close() {
+        if (ownClient) {
+            client.close();
+        }
+    }
+
+    public XuperClient getClient() {
+        return client;
+    }
+
+    /**
+     * @param from   from address
+     * @param to     to address
+     * @param amount transfer amount
+     * @param fee    fee
+     * @return the future of transaction, completed when the node accepted it
+     */
+    public CompletableFuture<Transaction> transfer(Account from, String to, BigInteger amount, String fee) {
+        return transfer(from, to, amount, fee, null);
+    }
+
+    /**
+     * @param from   from address
+     * @param to     to address
+     * @param amount transfer amount
+     * @param fee    fee
+     * @param desc   transfer desc
+     * @return the future of transaction, completed when the node accepted it
+     */
+    public CompletableFuture<Transaction> transfer(Account from, String to, BigInteger amount, String fee, String desc) {
+        return submit(() -> client.newTransferProposal(from, to, amount, fee, desc));
+    }
+
+    /**
+     * @param from     the initiator of calling method
+     * @param module   module of contract, usually wasm
+     * @param contract contract name
+     * @param method   contract method
+     * @param args     contract method arguments
+     * @return the future of transaction, completed when the node accepted it
+     */
+    public CompletableFuture<Transaction> invokeContract(Account from, String module, String contract, String method, Map<String, byte[]> args) {
+        return invokeContract(from, module, contract, method, args, null);
+    }
+
+    public CompletableFuture<Transaction> invokeContract(Account from, String module, String contract, String method, Map<String, byte[]> args, String desc) {
+        return submit(() -> client.newInvokeProposal(from, module, contract, method, args, desc));
+    }
+
+    /**
+     * @param from     the initiator of calling method.
+     * @param contract contract name.
+     * @param method   contract method.
+     * @param args     contract method args.
+     * @param amount   amount of transfer to contract when call payable method.
+     * @return the future of transaction, completed when the node accepted it
+     */
+    public CompletableFuture<Transaction> invokeEVMContract(Account from, String contract, String method, Map<String, String> args, BigInteger amount) {
+        return submit(() -> client.newInvokeEVMProposal(from, contract, method, args, amount));
+    }
+
+    public CompletableFuture<Transaction> deployWasmContract(Account from, byte[] code, String contract, String runtime, Map<String, byte[]> initArgs) {
+        return submit(() -> client.newInvokeProposal(from, XuperClient.xkernelModule, "", XuperClient.xkernelDeployMethod,
+                client.deployContractArgs(from, code, contract, runtime, initArgs, "wasm"), null));
+    }
+
+    public CompletableFuture<Transaction> deployNativeContract(Account from, byte[] code, String contract, String runtime, Map<String, byte[]> initArgs) {
+        return submit(() -> client.newInvokeProposal(from, XuperClient.xkernelModule, "", XuperClient.xkernelDeployMethod,
+                client.deployContractArgs(from, code, contract, runtime, initArgs, "native"), null));
+    }
+
+    public CompletableFuture<Transaction> deployEVMContract(Account from, byte[] bin, byte[] abi, String contract, Map<String, String> initArgs) {
+        return submit(() -> client.newInvokeProposal(from, XuperClient.xkernelModule, "", XuperClient.xkernelDeployMethod,
+                client.deployEVMContractArgs(from, bin, abi, contract, initArgs), null));
+    }
+
+    public CompletableFuture<Transaction> upgradeWasmContract(Account from, byte[] code, String contract) {
+        return submit(() -> client.newInvokeProposal(from, XuperClient.xkernelModule, "", XuperClient.xkernelUpgradeMethod,
+                client.upgradeContractArgs(from, code, contract, "wasm"), null));
+    }
+
+    public CompletableFuture<Transaction> upgradeNativeContract(Account from, byte[] code, String contract) {
+        return submit(() -> client.newInvokeProposal(from, XuperClient.xkernelModule, "", XuperClient.xkernelUpgradeMethod,
+                client.upgradeContractArgs(from, code, contract, "native"), null));
+    }
+
+    public CompletableFuture<Transaction> createContractAccount(Account from, String accountName) {
+        return submit(() -> client.newInvokeProposal(from, XuperClient.xkernelModule, "", XuperClient.xkernelNewAccountMethod,
+                client.createContractAccountArgs(from, accountName), null));
+    }
+
+    /**
+     * build, sign by the initiator and send a proposal.
+     *
+     * @param proposal the proposal
+     * @return the future of transaction, completed when the node accepted it
+     */
+    public CompletableFuture<Transaction> submit(Proposal proposal) {
+        return submit(() -> proposal);
+    }
+
+    /**
+     * build a proposal without signing it.
+     *
+     * @param proposal the proposal
+     * @return the future of the unsigned transaction
+     */
+    public CompletableFuture<Transaction> build(Proposal proposal) {
+        Config config = client.getConfig();
+        if (config.getComplianceCheck().isNeedComplianceCheck()) {
+            return buildWithEndorser(proposal, config);
+        }
+        return CompletableFuture.supplyAsync(() -> proposal.newPreExecWithSelectUTXORequest(config), executor)
+                .thenCompose(request -> FutureObserver.call(client.getAsyncClient()::preExecWithSelectUTXO, request))
+                .thenApplyAsync(response -> {
+                    Common.checkResponseHeader(response.getHeader(), "PreExec");
+                    try {
+                        return new Transaction(response, proposal, client, config);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }, executor);
+    }
+
+    /**
+     * the PreExecWithFee and ComplianceCheck calls of endorser are sent on the async stub, building the
+     * requests and the transaction runs on the executor, so the stages of many transactions overlap.
+     */
+    private CompletableFuture<Transaction> buildWithEndorser(Proposal proposal, Config config) {
+        XendorserClient endorser;
+        try {
+            endorser = client.requireXendorserClient(config);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.supplyAsync(() -> proposal.newPreExecWithFeeRequest(proposal.newPreExecWithSelectUTXORequest(config)), executor)
+                .thenCompose(endorser::endorserCall)
+                .thenApplyAsync(r -> {
+                    XchainOuterClass.PreExecWithSelectUTXOResponse response =
+                            JsonReader.preExecWithSelectUTXOResponse(r.getResponseData());
+                    Common.checkResponseHeader(response.getHeader(), "PreExec");
+                    try {
+                        return new Transaction(response, proposal, client, config, false);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }, executor)
+                .thenCompose(tx -> {
+                    if (!tx.needComplianceSign()) {
+                        return CompletableFuture.completedFuture(tx);
+                    }
+                    return CompletableFuture.supplyAsync(tx::newComplianceCheckRequest, executor)
+                            .thenCompose(endorser::endorserCall)
+                            .thenApply(r -> tx.addComplianceSign(r.getEndorserSign()));
+                });
+    }
+
+    /**
+     * send a signed transaction.
+     *
+     * @param tx the signed transaction
+     * @return the future of transaction, completed when the node accepted it
+     */
+    public CompletableFuture<Transaction> send(Transaction tx) {
+        XchainOuterClass.TxStatus request = tx.newPostTxRequest();
+        return FutureObserver.call(client.getAsyncClient()::postTx, request)
+                .thenApply(response -> {
+                    Common.checkResponseHeader(response.getHeader(), "PostTx");
+                    return tx;
+                });
+    }
+
+    private CompletableFuture<Transaction> submit(Supplier<Proposal> supplier) {
+        return CompletableFuture.supplyAsync(supplier::get, executor)
+                .thenCompose(this::build)
+                .thenApplyAsync(Transaction::sign, executor)
+                .thenCompose(this::send);
+    }
+}
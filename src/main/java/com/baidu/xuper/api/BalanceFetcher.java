@@ -0,0 +1,139 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * query the balances of many accounts with a window of getBalance calls in flight on the channel of one client.
+ * Duplicate accounts are queried once, and a failed account is reported in the result without stopping the others.
+ * <pre>
+ * BalanceFetcher.Result r = client.getBalances(accounts);
+ * r.getBalances().forEach((account, balance) -&gt; ...);
+ * r.getErrors().forEach((account, error) -&gt; ...);
+ * </pre>
+ */
+public class BalanceFetcher {
+    public static final int DEFAULT_WINDOW = 256;
+
+    private final String bcname;
+    private final Function<XchainOuterClass.AddressStatus, CompletableFuture<XchainOuterClass.AddressStatus>> call;
+    private final int window;
+
+    /**
+     * @param client the client whose channel is used
+     * @param window the max count of getBalance calls in flight
+     */
+    public BalanceFetcher(XuperClient client, int window) {
+        this(client.getChainName(), request -> FutureObserver.call(client.getAsyncClient()::getBalance, request), window);
+    }
+
+    BalanceFetcher(String bcname, Function<XchainOuterClass.AddressStatus, CompletableFuture<XchainOuterClass.AddressStatus>> call,
+                   int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.bcname = bcname;
+        this.call = call;
+        this.window = window;
+    }
+
+    /**
+     * @param accounts the account names, can be contract accounts
+     * @return the balances and errors by account
+     */
+    public Result fetch(Collection<String> accounts) {
+        Map<String, BigInteger> balances = new ConcurrentHashMap<>();
+        Map<String, Throwable> errors = new ConcurrentHashMap<>();
+        Semaphore inFlight = new Semaphore(window);
+        try {
+            for (String account : new LinkedHashSet<>(accounts)) {
+                inFlight.acquire();
+                XchainOuterClass.AddressStatus request = newRequest(bcname, account);
+                CompletableFuture<XchainOuterClass.AddressStatus> f;
+                try {
+                    f = call.apply(request);
+                } catch (RuntimeException e) {
+                    f = CompletableFuture.failedFuture(e);
+                }
+                f.whenComplete((response, t) -> {
+                    try {
+                        if (t != null) {
+                            errors.put(account, t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                        } else {
+                            balances.put(account, balanceOf(response, bcname));
+                        }
+                    } catch (RuntimeException e) {
+                        errors.put(account, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            // all calls are done once the whole window is free
+            inFlight.acquire(window);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        return new Result(balances, errors);
+    }
+
+    static XchainOuterClass.AddressStatus newRequest(String bcname, String account) {
+        return XchainOuterClass.AddressStatus.newBuilder()
+                .setHeader(Common.newHeader())
+                .setAddress(account)
+                .addBcs(XchainOuterClass.TokenDetail.newBuilder().setBcname(bcname).build())
+                .build();
+    }
+
+    static BigInteger balanceOf(XchainOuterClass.AddressStatus response, String bcname) {
+        // the node answers the chains of request in the same order, so the only one is checked first
+        if (response.getBcsCount() > 0 && response.getBcs(0).getBcname().equals(bcname)) {
+            return new BigInteger(response.getBcs(0).getBalance());
+        }
+        for (XchainOuterClass.TokenDetail bc : response.getBcsList()) {
+            if (bc.getBcname().equals(bcname)) {
+                return new BigInteger(bc.getBalance());
+            }
+        }
+        Common.checkResponseHeader(response.getHeader(), "query balance");
+        return BigInteger.ZERO;
+    }
+
+    public static class Result {
+        private final Map<String, BigInteger> balances;
+        private final Map<String, Throwable> errors;
+
+        Result(Map<String, BigInteger> balances, Map<String, Throwable> errors) {
+            this.balances = balances;
+            this.errors = errors;
+        }
+
+        /**
+         * @return the balances of accounts queried successfully
+         */
+        public Map<String, BigInteger> getBalances() {
+            return balances;
+        }
+
+        /**
+         * @return the errors of accounts failed to query
+         */
+        public Map<String, Throwable> getErrors() {
+            return errors;
+        }
+
+        public boolean isSuccess() {
+            return errors.isEmpty();
+        }
+    }
+}
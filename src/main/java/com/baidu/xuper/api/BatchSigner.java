@@ -0,0 +1,144 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.config.Config;
+import com.baidu.xuper.crypto.Crypto;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * sign many transactions on all cores.
+ * Digests and signatures are computed in chunks on the executor, the signatures are attached
+ * afterwards on the caller thread in the order of input.
+ */
+public class BatchSigner {
+    private final Executor executor;
+    private final int parallelism;
+
+    public BatchSigner() {
+        this(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @param executor    the executor to sign on, like Executors.newVirtualThreadPerTaskExecutor()
+     * @param parallelism the count of chunks a batch is split into
+     */
+    public BatchSigner(Executor executor, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * sign each transaction by its initiator.
+     *
+     * @param txs the unsigned transactions
+     * @return txs
+     */
+    public List<Transaction> signAll(List<Transaction> txs) {
+        List<Account> signers = new ArrayList<>(txs.size());
+        for (Transaction tx : txs) {
+            signers.add(tx.getInitiator());
+        }
+        signAll(txs, signers);
+        return txs;
+    }
+
+    /**
+     * sign txs.get(i) by signers.get(i), a transaction may appear several times to be signed by several accounts.
+     *
+     * @param txs     the transactions
+     * @param signers the accounts, one for each transaction
+     */
+    public void signAll(List<Transaction> txs, List<Account> signers) {
+        if (txs.size() != signers.size()) {
+            throw new IllegalArgumentException("txs and signers have different size");
+        }
+        // one digest for each distinct transaction, signatures are not part of digest.
+        Map<Transaction, byte[]> digests = Collections.synchronizedMap(new IdentityHashMap<>());
+        List<Transaction> distinct = new ArrayList<>();
+        for (Transaction tx : txs) {
+            if (digests.put(tx, new byte[0]) == null) {
+                distinct.add(tx);
+            }
+        }
+        parallel(distinct.size(), i -> digests.put(distinct.get(i), distinct.get(i).digest()));
+
+        // each transaction is signed by the crypto of the config it was built with
+        List<byte[]> sigs = signDigests(mapDigests(txs, digests), mapKeys(signers), i -> txs.get(i).getCrypto());
+        for (int i = 0; i < txs.size(); i++) {
+            txs.get(i).addSignature(signers.get(i), sigs.get(i));
+        }
+    }
+
+    /**
+     * sign digests.get(i) by privateKeys.get(i).
+     *
+     * @param digests     the digests to sign
+     * @param privateKeys the private keys, one for each digest
+     * @return the signatures in the order of digests
+     */
+    public List<byte[]> signDigests(List<byte[]> digests, List<BigInteger> privateKeys) {
+        return signDigests(digests, privateKeys, Config.getInstance());
+    }
+
+    /**
+     * sign digests.get(i) by privateKeys.get(i) with the crypto of config.
+     *
+     * @param digests     the digests to sign
+     * @param privateKeys the private keys, one for each digest
+     * @param config      the config, like XuperClient.getConfig()
+     * @return the signatures in the order of digests
+     */
+    public List<byte[]> signDigests(List<byte[]> digests, List<BigInteger> privateKeys, Config config) {
+        Crypto crypto = CryptoClient.getCryptoClient(config);
+        return signDigests(digests, privateKeys, i -> crypto);
+    }
+
+    private List<byte[]> signDigests(List<byte[]> digests, List<BigInteger> privateKeys, IntFunction<Crypto> cryptos) {
+        if (digests.size() != privateKeys.size()) {
+            throw new IllegalArgumentException("digests and privateKeys have different size");
+        }
+        byte[][] sigs = new byte[digests.size()][];
+        parallel(digests.size(), i -> {
+            try {
+                sigs[i] = cryptos.apply(i).signECDSA(digests.get(i), privateKeys.get(i));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        List<byte[]> result = new ArrayList<>(sigs.length);
+        Collections.addAll(result, sigs);
+        return result;
+    }
+
+    private void parallel(int n, IntConsumer task) {
+        Parallel.forEach(executor, parallelism, n, task);
+    }
+
+    private static List<byte[]> mapDigests(List<Transaction> txs, Map<Transaction, byte[]> digests) {
+        List<byte[]> result = new ArrayList<>(txs.size());
+        for (Transaction tx : txs) {
+            result.add(digests.get(tx));
+        }
+        return result;
+    }
+
+    private static List<BigInteger> mapKeys(List<Account> signers) {
+        List<BigInteger> result = new ArrayList<>(signers.size());
+        for (Account signer : signers) {
+            result.add(signer.getKeyPair().getPrivateKey());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,453 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * an append-only local store of blocks of one chain.
+ * Blocks of consecutive heights are written as length prefixed protobuf bytes into memory mapped segment files,
+ * and read back from the mapping without a copy to the heap. The files in the directory are:
+ * <ul>
+ * <li>NNNNNNNN.seg, the blocks, every segment is mapped with segmentSize bytes</li>
+ * <li>height.idx, the first height followed by the location of each block</li>
+ * <li>id.idx, the blockid and txids of each block with its height, in the order of append</li>
+ * <li>id.hash, a memory mapped hash table of the ids in id.idx, the ids of blocks not in it are added on open</li>
+ * </ul>
+ * <pre>
+ * try (BlockArchive archive = BlockArchive.open(Paths.get("/data/xuper"))) {
+ *     archive.sync(client);
+ *     XchainOuterClass.InternalBlock block = archive.getBlockByHeight(100);
+ * }
+ * </pre>
+ */
+public class BlockArchive implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    private static final byte KIND_BLOCK = 0;
+    private static final byte KIND_TX = 1;
+    private static final int READ_CHUNK = 64 * 1024;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final FileChannel heightIndex;
+    private final FileChannel idIndex;
+    private final IdHashIndex ids;
+
+    // location of block i is segment << 32 | offset
+    private volatile long[] locations = new long[1024];
+    private volatile int count;
+    private volatile long firstHeight = -1;
+    private int writePosition;
+    private long idHeight = -1;
+    private volatile long depth = -1;
+
+    private BlockArchive(Path dir, int segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(dir);
+        heightIndex = FileChannel.open(dir.resolve("height.idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        idIndex = FileChannel.open(dir.resolve("id.idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Path hash = dir.resolve("id.hash");
+        IdHashIndex index = IdHashIndex.open(hash);
+        if (index.logPosition() > idIndex.size()) {
+            // id.idx is shorter than when id.hash was flushed, index it all again
+            Files.delete(hash);
+            index = IdHashIndex.open(hash);
+        }
+        ids = index;
+        load();
+    }
+
+    /**
+     * @param dir the directory of archive, created if not exists
+     * @return the archive
+     */
+    public static BlockArchive open(Path dir) throws IOException {
+        return open(dir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param dir         the directory of archive, created if not exists
+     * @param segmentSize the size of each segment file, must be the same for an existing archive
+     * @return the archive
+     */
+    public static BlockArchive open(Path dir, int segmentSize) throws IOException {
+        return new BlockArchive(dir, segmentSize);
+    }
+
+    private void load() throws IOException {
+        long size = heightIndex.size();
+        if (size >= 8) {
+            ByteBuffer head = ByteBuffer.allocate(8);
+            readFully(heightIndex, head, 0);
+            firstHeight = head.getLong(0);
+            long entries = (size - 8) / 8;
+            if (entries > Integer.MAX_VALUE - 8) {
+                throw new IOException("height.idx has too many entries: " + entries);
+            }
+            int n = (int) entries;
+            long[] locs = new long[Math.max(1024, n)];
+            ByteBuffer buf = ByteBuffer.allocate(READ_CHUNK);
+            for (int i = 0; i < n; ) {
+                buf.clear().limit((int) Math.min(READ_CHUNK, (n - i) * 8L));
+                readFully(heightIndex, buf, 8 + i * 8L);
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    locs[i++] = buf.getLong();
+                }
+            }
+            locations = locs;
+            count = n;
+            if (size != 8 + n * 8L) {
+                // drop a partly written entry
+                heightIndex.truncate(8 + n * 8L);
+            }
+        }
+        if (count > 0) {
+            long last = locations[count - 1];
+            int seg = (int) (last >>> 32);
+            for (int i = 0; i <= seg; i++) {
+                segment(i);
+            }
+            int offset = (int) last;
+            writePosition = offset + 4 + segments.get(seg).getInt(offset);
+        }
+
+        // id.hash covers id.idx up to its last flush, index the records after it
+        long idSize = idIndex.size();
+        idHeight = ids.logHeight();
+        long read = ids.logPosition();
+        long valid = read;
+        ByteBuffer buf = ByteBuffer.allocate(READ_CHUNK);
+        buf.flip();
+        boolean stop = false;
+        while (!stop && (read < idSize || buf.hasRemaining())) {
+            buf.compact();
+            buf.limit((int) Math.min(buf.capacity(), buf.position() + (idSize - read)));
+            read += readFully(idIndex, buf, read);
+            buf.flip();
+            boolean end = read == idSize;
+            while (true) {
+                if (buf.remaining() < 2) {
+                    stop = end;
+                    break;
+                }
+                int start = buf.position();
+                byte kind = buf.get();
+                int len = buf.get() & 0xff;
+                if (buf.remaining() < len + 8) {
+                    buf.position(start);
+                    stop = end;
+                    break;
+                }
+                byte[] id = new byte[len];
+                buf.get(id);
+                long height = buf.getLong();
+                if (height > lastHeight()) {
+                    // the ids of a block whose append did not finish
+                    stop = true;
+                    break;
+                }
+                ids.put(kind, ByteString.copyFrom(id), height);
+                idHeight = height;
+                valid += buf.position() - start;
+            }
+        }
+        if (valid != idSize) {
+            idIndex.truncate(valid);
+        }
+        idIndex.position(valid);
+
+        // id.idx is not forced before height.idx, add the ids of blocks it lost in a crash
+        if (count > 0) {
+            for (long h = Math.max(idHeight, firstHeight); h <= lastHeight(); h++) {
+                indexIds(getBlockByHeight(h), h == idHeight);
+            }
+        }
+    }
+
+    /**
+     * read from ch at position until buf is full.
+     *
+     * @return the count of bytes read
+     */
+    private static int readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        int total = 0;
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position + total);
+            if (n < 0) {
+                throw new IOException("unexpected end of file at " + (position + total));
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private MappedByteBuffer segment(int i) throws IOException {
+        while (segments.size() <= i) {
+            Path p = dir.resolve(String.format("%08d.seg", segments.size()));
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the mapping stays valid after the channel is closed
+                segments.add(ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            }
+        }
+        return segments.get(i);
+    }
+
+    /**
+     * @param depth how many blocks below the trunk height sync stops when the consensus has no irreversible height,
+     *              -1 to archive nothing then
+     * @return this archive
+     */
+    public BlockArchive setDepth(long depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * @return the height of the first archived block, -1 if empty
+     */
+    public long firstHeight() {
+        return count == 0 ? -1 : firstHeight;
+    }
+
+    /**
+     * @return the height of the last archived block, -1 if empty
+     */
+    public long lastHeight() {
+        int n = count;
+        return n == 0 ? -1 : firstHeight + n - 1;
+    }
+
+    /**
+     * append a block, its height must follow the last one.
+     *
+     * @param block the block with transactions
+     */
+    public synchronized void append(XchainOuterClass.InternalBlock block) throws IOException {
+        if (count > 0 && block.getHeight() != firstHeight + count) {
+            throw new IllegalArgumentException("expect block " + (firstHeight + count) + " but got " + block.getHeight());
+        }
+        int len = block.getSerializedSize();
+        if (len + 4 > segmentSize) {
+            throw new IllegalArgumentException("block " + block.getHeight() + " is larger than segment");
+        }
+        int seg = segments.isEmpty() ? 0 : segments.size() - 1;
+        if (writePosition + 4 + len > segmentSize) {
+            seg++;
+            writePosition = 0;
+        }
+        ByteBuffer out = segment(seg).duplicate();
+        out.position(writePosition);
+        out.putInt(len);
+        CodedOutputStream cos = CodedOutputStream.newInstance(out.slice(writePosition + 4, len));
+        block.writeTo(cos);
+        cos.flush();
+        // the block is on disk before an index points at it
+        segment(seg).force(writePosition, 4 + len);
+        long location = (long) seg << 32 | writePosition;
+        writePosition += 4 + len;
+
+        indexIds(block, false);
+
+        if (count == 0) {
+            firstHeight = block.getHeight();
+            heightIndex.truncate(0);
+            heightIndex.write(ByteBuffer.allocate(8).putLong(0, firstHeight), 0);
+        }
+        heightIndex.write(ByteBuffer.allocate(8).putLong(0, location), 8 + count * 8L);
+        if (count == locations.length) {
+            locations = Arrays.copyOf(locations, count * 2);
+        }
+        locations[count] = location;
+        count++;
+    }
+
+    /**
+     * append the ids of block to id.idx and id.hash.
+     *
+     * @param onlyMissing whether to skip the ids already in id.hash, for a block whose ids may be partly written
+     */
+    private void indexIds(XchainOuterClass.InternalBlock block, boolean onlyMissing) throws IOException {
+        long height = block.getHeight();
+        int idSize = 2 + block.getBlockid().size() + 8;
+        for (XchainOuterClass.Transaction tx : block.getTransactionsList()) {
+            idSize += 2 + tx.getTxid().size() + 8;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(idSize);
+        if (!onlyMissing || !hasId(KIND_BLOCK, block.getBlockid(), height)) {
+            putId(buf, KIND_BLOCK, block.getBlockid(), height);
+            ids.put(KIND_BLOCK, block.getBlockid(), height);
+        }
+        for (XchainOuterClass.Transaction tx : block.getTransactionsList()) {
+            if (!onlyMissing || !hasId(KIND_TX, tx.getTxid(), height)) {
+                putId(buf, KIND_TX, tx.getTxid(), height);
+                ids.put(KIND_TX, tx.getTxid(), height);
+            }
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            idIndex.write(buf);
+        }
+        idHeight = height;
+    }
+
+    private boolean hasId(byte kind, ByteString id, long height) {
+        boolean[] found = new boolean[1];
+        ids.find(kind, id, h -> found[0] = h == height);
+        return found[0];
+    }
+
+    private static void putId(ByteBuffer buf, byte kind, ByteString id, long height) {
+        if (id.size() > 255) {
+            throw new IllegalArgumentException("id too long");
+        }
+        buf.put(kind).put((byte) id.size());
+        id.copyTo(buf);
+        buf.putLong(height);
+    }
+
+    /**
+     * @param height the height of block
+     * @return the serialized block as a read only view of the mapped segment, null if not archived
+     */
+    public ByteBuffer getRawBlock(long height) {
+        // count is written after the location, so the location of any height below it is visible
+        int n = count;
+        long[] locs = locations;
+        long first = firstHeight;
+        if (n == 0 || height < first || height >= first + n) {
+            return null;
+        }
+        long location = locs[(int) (height - first)];
+        ByteBuffer seg = segments.get((int) (location >>> 32));
+        int offset = (int) location;
+        int len = seg.getInt(offset);
+        return seg.slice(offset + 4, len).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param height the height of block
+     * @return the block, null if not archived
+     */
+    public XchainOuterClass.InternalBlock getBlockByHeight(long height) {
+        ByteBuffer raw = getRawBlock(height);
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return XchainOuterClass.InternalBlock.parseFrom(raw);
+        } catch (InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param blockid the hex of blockid
+     * @return the block, null if not archived
+     */
+    public XchainOuterClass.InternalBlock getBlock(String blockid) {
+        ByteString id = ByteString.copyFrom(Hex.decode(blockid));
+        XchainOuterClass.InternalBlock[] found = new XchainOuterClass.InternalBlock[1];
+        // a slot of the same fingerprint may belong to another id
+        ids.find(KIND_BLOCK, id, height -> {
+            XchainOuterClass.InternalBlock block = getBlockByHeight(height);
+            if (block != null && block.getBlockid().equals(id)) {
+                found[0] = block;
+                return true;
+            }
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * @param txid the hex of txid
+     * @return the transaction, null if not archived
+     */
+    public XchainOuterClass.Transaction getTx(String txid) {
+        ByteString id = ByteString.copyFrom(Hex.decode(txid));
+        XchainOuterClass.Transaction[] found = new XchainOuterClass.Transaction[1];
+        ids.find(KIND_TX, id, height -> {
+            XchainOuterClass.InternalBlock block = getBlockByHeight(height);
+            if (block == null) {
+                return false;
+            }
+            for (XchainOuterClass.Transaction tx : block.getTransactionsList()) {
+                if (tx.getTxid().equals(id)) {
+                    found[0] = tx;
+                    return true;
+                }
+            }
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * append the blocks after the last archived one, up to the irreversible height of node. When the consensus has
+     * no irreversible height, up to depth blocks below the trunk height, or nothing if depth is not set.
+     *
+     * @param client the client of node
+     * @return the count of blocks appended
+     */
+    public long sync(XuperClient client) throws IOException {
+        XchainOuterClass.BCStatus status = client.getBlockchainStatus(client.getChainName());
+        long to = status.getUtxoMeta().getIrreversibleBlockHeight();
+        if (to <= 0) {
+            long d = depth;
+            if (d < 0) {
+                return 0;
+            }
+            to = status.getMeta().getTrunkHeight() - d;
+        }
+        long from = lastHeight() + 1;
+        if (from > to) {
+            return 0;
+        }
+        try (Stream<XchainOuterClass.InternalBlock> blocks = client.queryBlocksByHeight(from, to)) {
+            Iterator<XchainOuterClass.InternalBlock> it = blocks.iterator();
+            while (it.hasNext()) {
+                append(it.next());
+            }
+        }
+        return to - from + 1;
+    }
+
+    /**
+     * write the mapped segments and indexes to disk.
+     */
+    public synchronized void flush() throws IOException {
+        for (MappedByteBuffer seg : segments) {
+            seg.force();
+        }
+        idIndex.force(false);
+        heightIndex.force(false);
+        ids.flush(idIndex.position(), idHeight);
+    }
+
+    public synchronized void close() throws IOException {
+        flush();
+        idIndex.close();
+        heightIndex.close();
+    }
+}
@@ -0,0 +1,353 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * a pull based stream of block events over EventService.subscribe.
+ * At most bufferSize events are requested from the node ahead of the consumer, a slow consumer slows
+ * the stream down instead of buffering the chain in memory. After an error the stream subscribes again from
+ * the height after the last received block, so no block is lost or delivered twice. A stream with range.end
+ * ends when the node completes the subscription.
+ * <pre>
+ * BlockEventStream stream = client.getXEventServiceListener().subscribeBlocks(filter);
+ * for (BlockEventStream.BlockEvent e; (e = stream.take()) != null; ) {
+ *     handle(e.getBlock());
+ * }
+ * </pre>
+ */
+public class BlockEventStream {
+    public static final int DEFAULT_BUFFER_SIZE = 64;
+
+    private static final BlockEvent END = new BlockEvent(ByteString.EMPTY);
+
+    // one daemon thread for the resubscriptions of all streams, a stream that ends or is dropped holds no thread
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "xuper-block-event-stream");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final BiConsumer<EventOuterClass.SubscribeRequest, StreamObserver<EventOuterClass.Event>> subscriber;
+    private final EventOuterClass.BlockFilter filter;
+    private final BlockingQueue<BlockEvent> queue = new LinkedBlockingQueue<>();
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private long minBackoffMillis = 1000;
+    private long maxBackoffMillis = 30000;
+
+    private final Object lock = new Object();
+    private Call current;
+    private ScheduledFuture<?> pending;
+    private long backoffMillis;
+    private long lastReceivedHeight = -1;
+    private volatile long lastDeliveredHeight = -1;
+    private volatile Throwable lastError;
+    private boolean started;
+    private boolean closed;
+
+    /**
+     * @param listener the event service of node
+     * @param filter   the block filter, range.start is the first height, empty means the latest block
+     */
+    public BlockEventStream(XEventServiceListener listener, EventOuterClass.BlockFilter filter) {
+        this(listener::subscribe, filter);
+    }
+
+    BlockEventStream(BiConsumer<EventOuterClass.SubscribeRequest, StreamObserver<EventOuterClass.Event>> subscriber,
+                     EventOuterClass.BlockFilter filter) {
+        this.subscriber = subscriber;
+        this.filter = filter;
+    }
+
+    /**
+     * @param bufferSize the max count of events received ahead of the consumer
+     * @return this stream
+     */
+    public BlockEventStream setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * @param min the delay of the first resubscription after an error
+     * @param max the max delay, the delay doubles on each failed attempt
+     * @param unit the unit of min and max
+     * @return this stream
+     */
+    public BlockEventStream setBackoff(long min, long max, TimeUnit unit) {
+        this.minBackoffMillis = unit.toMillis(min);
+        this.maxBackoffMillis = unit.toMillis(max);
+        return this;
+    }
+
+    /**
+     * @return this stream, subscribed
+     */
+    public BlockEventStream start() {
+        synchronized (lock) {
+            if (started) {
+                return this;
+            }
+            started = true;
+            backoffMillis = minBackoffMillis;
+            subscribe();
+        }
+        return this;
+    }
+
+    /**
+     * wait for the next block.
+     *
+     * @return the next block, null if the stream is closed or reached the end of range
+     */
+    public BlockEvent take() throws InterruptedException {
+        return delivered(queue.take());
+    }
+
+    /**
+     * @param timeout how long to wait
+     * @param unit    the unit of timeout
+     * @return the next block, null if timeout, the stream is closed or reached the end of range
+     */
+    public BlockEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+        BlockEvent e = queue.poll(timeout, unit);
+        if (e == null) {
+            return null;
+        }
+        return delivered(e);
+    }
+
+    /**
+     * @return the height of the last block returned by take or poll, -1 if none. Persist it to resume
+     * a new stream from the next height after a restart.
+     */
+    public long getLastHeight() {
+        return lastDeliveredHeight;
+    }
+
+    /**
+     * @return the last error of subscription, null if none
+     */
+    public Throwable getLastError() {
+        return lastError;
+    }
+
+    public void close() {
+        Call call;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            call = current;
+            current = null;
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+        if (call != null) {
+            call.cancel();
+        }
+        queue.offer(END);
+    }
+
+    private BlockEvent delivered(BlockEvent e) {
+        if (e == END) {
+            // let other consumers see the end too
+            queue.offer(END);
+            return null;
+        }
+        lastDeliveredHeight = e.getHeight();
+        Call call;
+        synchronized (lock) {
+            call = current;
+        }
+        if (call != null) {
+            call.request();
+        }
+        return e;
+    }
+
+    // called with lock held
+    private void subscribe() {
+        EventOuterClass.BlockFilter.Builder f = filter.toBuilder();
+        if (lastReceivedHeight >= 0) {
+            f.setRange(filter.getRange().toBuilder().setStart(String.valueOf(lastReceivedHeight + 1)));
+        }
+        EventOuterClass.SubscribeRequest request = EventOuterClass.SubscribeRequest.newBuilder()
+                .setType(EventOuterClass.SubscribeType.BLOCK)
+                .setFilter(f.build().toByteString())
+                .build();
+        // the events already queued are requested again as the consumer takes them
+        Call call = new Call(Math.max(1, bufferSize - queue.size()));
+        current = call;
+        try {
+            subscriber.accept(request, call);
+        } catch (RuntimeException e) {
+            call.onError(e);
+        }
+    }
+
+    private class Call implements ClientResponseObserver<EventOuterClass.SubscribeRequest, EventOuterClass.Event> {
+        private final int initialRequest;
+        private volatile ClientCallStreamObserver<EventOuterClass.SubscribeRequest> requestStream;
+
+        Call(int initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<EventOuterClass.SubscribeRequest> requestStream) {
+            this.requestStream = requestStream;
+            requestStream.disableAutoRequestWithInitial(initialRequest);
+        }
+
+        void request() {
+            ClientCallStreamObserver<EventOuterClass.SubscribeRequest> s = requestStream;
+            if (s != null) {
+                s.request(1);
+            }
+        }
+
+        void cancel() {
+            ClientCallStreamObserver<EventOuterClass.SubscribeRequest> s = requestStream;
+            if (s != null) {
+                s.cancel("closed", null);
+            }
+        }
+
+        @Override
+        public void onNext(EventOuterClass.Event value) {
+            BlockEvent e = new BlockEvent(value.getPayload());
+            long height = e.getHeight();
+            synchronized (lock) {
+                if (current != this || height <= lastReceivedHeight) {
+                    return;
+                }
+                lastReceivedHeight = height;
+                backoffMillis = minBackoffMillis;
+            }
+            queue.offer(e);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            lastError = t;
+            retry();
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (lock) {
+                // the node completes a bounded range after its last block, which the filter may have excluded
+                if (current == this && !filter.getRange().getEnd().isEmpty()) {
+                    current = null;
+                    closed = true;
+                    queue.offer(END);
+                    return;
+                }
+            }
+            retry();
+        }
+
+        private void retry() {
+            synchronized (lock) {
+                if (current != this || closed) {
+                    return;
+                }
+                current = null;
+                long delay = backoffMillis;
+                backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+                pending = SCHEDULER.schedule(() -> {
+                    synchronized (lock) {
+                        pending = null;
+                        if (!closed && current == null) {
+                            subscribe();
+                        }
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * a block event, the payload is parsed when getBlock is called.
+     */
+    public static class BlockEvent {
+        private final ByteString payload;
+        private long height = -1;
+        private EventOuterClass.FilteredBlock block;
+
+        BlockEvent(ByteString payload) {
+            this.payload = payload;
+        }
+
+        /**
+         * @return the block height, read without parsing the transactions
+         */
+        public long getHeight() {
+            if (height < 0) {
+                height = scanHeight(payload);
+            }
+            return height;
+        }
+
+        /**
+         * @return the filtered block
+         */
+        public EventOuterClass.FilteredBlock getBlock() {
+            if (block == null) {
+                try {
+                    block = EventOuterClass.FilteredBlock.parseFrom(payload);
+                } catch (InvalidProtocolBufferException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return block;
+        }
+
+        public ByteString getPayload() {
+            return payload;
+        }
+
+        private static long scanHeight(ByteString payload) {
+            try {
+                CodedInputStream in = payload.newCodedInput();
+                while (true) {
+                    int tag = in.readTag();
+                    if (tag == 0) {
+                        return 0;
+                    }
+                    if (WireFormat.getTagFieldNumber(tag) == EventOuterClass.FilteredBlock.BLOCK_HEIGHT_FIELD_NUMBER) {
+                        return in.readInt64();
+                    }
+                    in.skipField(tag);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import io.grpc.Status;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * fetch the blocks of a height range with many getBlockByHeight calls in flight.
+ * Heights are spread over the clients round robin, at most concurrency blocks are requested ahead of the consumer
+ * and the blocks are delivered in height order. A call failed with UNAVAILABLE, DEADLINE_EXCEEDED, RESOURCE_EXHAUSTED
+ * or ABORTED is retried on the next client after a backoff.
+ * <pre>
+ * try (Stream&lt;XchainOuterClass.InternalBlock&gt; blocks = new BlockRangeFetcher(client1, client2).stream(0, 100000)) {
+ *     blocks.forEach(b -&gt; index(b));
+ * }
+ * </pre>
+ */
+public class BlockRangeFetcher {
+    public static final int DEFAULT_CONCURRENCY = 32;
+
+    private final List<Source> sources;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private int maxRetries = 5;
+    private long backoffMillis = 200;
+    private long timeoutMillis = 30000;
+
+    /**
+     * @param clients the clients of nodes of the same chain
+     */
+    public BlockRangeFetcher(XuperClient... clients) {
+        this(Arrays.asList(clients));
+    }
+
+    /**
+     * @param clients the clients of nodes of the same chain
+     */
+    public BlockRangeFetcher(List<XuperClient> clients) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("no client");
+        }
+        this.sources = new ArrayList<>(clients.size());
+        for (XuperClient client : clients) {
+            sources.add(height -> {
+                XchainOuterClass.BlockHeight request = XchainOuterClass.BlockHeight.newBuilder()
+                        .setHeader(Common.newHeader())
+                        .setBcname(client.getChainName())
+                        .setHeight(height)
+                        .build();
+                return FutureObserver.call(client.getAsyncClient()
+                        .withDeadlineAfter(timeoutMillis, TimeUnit.MILLISECONDS)::getBlockByHeight, request);
+            });
+        }
+    }
+
+    BlockRangeFetcher(Source... sources) {
+        this.sources = Arrays.asList(sources);
+    }
+
+    /**
+     * @param concurrency the max count of blocks requested ahead of the consumer
+     * @return this fetcher
+     */
+    public BlockRangeFetcher setConcurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param maxRetries    the max retries of one block
+     * @param backoffMillis the delay of first retry, doubled on each retry
+     * @return this fetcher
+     */
+    public BlockRangeFetcher setRetry(int maxRetries, long backoffMillis) {
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        return this;
+    }
+
+    /**
+     * @param timeoutMillis the deadline of each getBlockByHeight call
+     * @return this fetcher
+     */
+    public BlockRangeFetcher setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param from the first height
+     * @param to   the last height, inclusive
+     * @return the blocks in height order, close the stream to cancel the calls in flight
+     */
+    public Stream<XchainOuterClass.InternalBlock> stream(long from, long to) {
+        RangeIterator it = new RangeIterator(from, to);
+        Spliterator<XchainOuterClass.InternalBlock> s = Spliterators.spliterator(it, Math.max(0, to - from + 1),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        return StreamSupport.stream(s, false).onClose(it::close);
+    }
+
+    /**
+     * @param from the first height
+     * @param to   the last height, inclusive
+     * @return the blocks in height order
+     */
+    public Iterator<XchainOuterClass.InternalBlock> iterator(long from, long to) {
+        return new RangeIterator(from, to);
+    }
+
+    private CompletableFuture<XchainOuterClass.InternalBlock> fetch(long height) {
+        CompletableFuture<XchainOuterClass.InternalBlock> result = new CompletableFuture<>();
+        fetch(height, 0, result);
+        return result;
+    }
+
+    private void fetch(long height, int attempt, CompletableFuture<XchainOuterClass.InternalBlock> result) {
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<XchainOuterClass.Block> f;
+        try {
+            f = sources.get((int) ((height + attempt) % sources.size())).getBlock(height);
+        } catch (RuntimeException e) {
+            f = CompletableFuture.failedFuture(e);
+        }
+        // cancelling the result cancels the call in flight
+        CompletableFuture<XchainOuterClass.Block> call = f;
+        result.whenComplete((b, t) -> call.cancel(false));
+        f.whenComplete((response, t) -> {
+            if (t == null) {
+                try {
+                    Common.checkResponseHeader(response.getHeader(), "query block " + height);
+                    if (response.getStatus() == XchainOuterClass.Block.EBlockStatus.NOEXIST) {
+                        throw new RuntimeException("block " + height + " does not exist");
+                    }
+                    result.complete(response.getBlock());
+                    return;
+                } catch (RuntimeException e) {
+                    t = e;
+                }
+            }
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (attempt >= maxRetries || !isTransient(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long delay = backoffMillis << Math.min(attempt, 10);
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> fetch(height, attempt + 1, result));
+        });
+    }
+
+    private static boolean isTransient(Throwable t) {
+        switch (Status.fromThrowable(t).getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case RESOURCE_EXHAUSTED:
+            case ABORTED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    interface Source {
+        CompletableFuture<XchainOuterClass.Block> getBlock(long height);
+    }
+
+    private class RangeIterator implements Iterator<XchainOuterClass.InternalBlock> {
+        private final long to;
+        private final ArrayDeque<CompletableFuture<XchainOuterClass.InternalBlock>> window = new ArrayDeque<>();
+        private long next;
+        private long launched;
+
+        RangeIterator(long from, long to) {
+            this.to = to;
+            this.next = from;
+            this.launched = from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next <= to;
+        }
+
+        @Override
+        public XchainOuterClass.InternalBlock next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            fill();
+            CompletableFuture<XchainOuterClass.InternalBlock> f = window.poll();
+            next++;
+            try {
+                return f.join();
+            } catch (CompletionException e) {
+                close();
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        private void fill() {
+            while (launched <= to && window.size() < concurrency) {
+                window.add(fetch(launched++));
+            }
+        }
+
+        void close() {
+            for (CompletableFuture<XchainOuterClass.InternalBlock> f : window) {
+                f.cancel(false);
+            }
+            window.clear();
+            next = to + 1;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * complete the futures of transactions once they are confirmed, see Transaction.awaitConfirmation.
+ * One block subscription is shared by all waiting transactions and the txids in each block are matched against them.
+ * Only the transactions still not seen in a block after timeout are queried by queryTx, at most maxPolls of them
+ * every pollInterval, to cover blocks produced before the subscription or missed by it. A queried transaction
+ * at least depth blocks deep is completed with the height of its block, the others wait for the block stream
+ * as the distance is counted from the tip of the node, not from the blocks received.
+ */
+public class ConfirmationTracker implements AutoCloseable {
+    private final String bcname;
+    private final Function<EventOuterClass.BlockFilter, BlockEventStream> streams;
+    private final Function<String, CompletableFuture<XchainOuterClass.TxStatus>> queryTx;
+    private final Function<ByteString, CompletableFuture<Long>> blockHeight;
+    private long timeoutMillis = 10000;
+    private long pollIntervalMillis = 3000;
+    private int maxPolls = 64;
+
+    private final Map<String, List<Pending>> waiting = new HashMap<>();
+    private final Set<Pending> included = new LinkedHashSet<>();
+    private final Set<String> polling = new LinkedHashSet<>();
+    private long tip = -1;
+    private ScheduledExecutorService scheduler;
+    private Thread dispatcher;
+    private BlockEventStream stream;
+    private boolean closed;
+
+    /**
+     * @param client the client of node, its event service is subscribed
+     */
+    public ConfirmationTracker(XuperClient client) {
+        this(client.getChainName(), f -> client.getXEventServiceListener().subscribeBlocks(f), txid -> {
+            XchainOuterClass.TxStatus request = XchainOuterClass.TxStatus.newBuilder()
+                    .setHeader(Common.newHeader())
+                    .setBcname(client.getChainName())
+                    .setTxid(ByteString.copyFrom(Hex.decode(txid)))
+                    .build();
+            return FutureObserver.call(client.getAsyncClient()::queryTx, request);
+        }, blockid -> {
+            XchainOuterClass.BlockID request = XchainOuterClass.BlockID.newBuilder()
+                    .setHeader(Common.newHeader())
+                    .setBcname(client.getChainName())
+                    .setBlockid(blockid)
+                    .setNeedContent(true)
+                    .build();
+            return FutureObserver.call(client.getAsyncClient()::getBlock, request).thenApply(block -> {
+                Common.checkResponseHeader(block.getHeader(), "GetBlock");
+                return block.getBlock().getHeight();
+            });
+        });
+    }
+
+    /**
+     * @param queryTx     the status of a transaction by its hex txid
+     * @param blockHeight the height of a block by its id
+     */
+    ConfirmationTracker(String bcname, Function<EventOuterClass.BlockFilter, BlockEventStream> streams,
+                        Function<String, CompletableFuture<XchainOuterClass.TxStatus>> queryTx,
+                        Function<ByteString, CompletableFuture<Long>> blockHeight) {
+        this.bcname = bcname;
+        this.streams = streams;
+        this.queryTx = queryTx;
+        this.blockHeight = blockHeight;
+    }
+
+    /**
+     * @param timeout how long to wait for a transaction in blocks before querying it
+     * @param unit    the unit of timeout
+     * @return this tracker
+     */
+    public ConfirmationTracker setTimeout(long timeout, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * @param interval how often the timed out transactions are queried
+     * @param unit     the unit of interval
+     * @param maxPolls the max count of queryTx calls in flight
+     * @return this tracker
+     */
+    public ConfirmationTracker setPolling(long interval, TimeUnit unit, int maxPolls) {
+        this.pollIntervalMillis = unit.toMillis(interval);
+        this.maxPolls = maxPolls;
+        return this;
+    }
+
+    /**
+     * wait for a transaction to be confirmed. Use orTimeout of the future to give up, the transaction
+     * is not tracked any more once the future is done.
+     *
+     * @param txid  the hex of txid
+     * @param depth the count of blocks on top of the block of transaction, 0 to complete once it is in a block
+     * @return the future completed with the height of the block containing the transaction
+     */
+    public CompletableFuture<Long> await(String txid, int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth must not be negative");
+        }
+        Pending p = new Pending(txid, depth);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("tracker is closed");
+            }
+            start();
+            waiting.computeIfAbsent(txid, k -> new ArrayList<>()).add(p);
+        }
+        p.future.whenComplete((h, t) -> remove(p));
+        return p.future;
+    }
+
+    /**
+     * @return the count of transactions waiting for confirmation
+     */
+    public synchronized int pending() {
+        int n = 0;
+        for (List<Pending> ps : waiting.values()) {
+            n += ps.size();
+        }
+        return n;
+    }
+
+    public void close() {
+        List<Pending> ps = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (List<Pending> l : waiting.values()) {
+                ps.addAll(l);
+            }
+            if (dispatcher != null) {
+                dispatcher.interrupt();
+                scheduler.shutdownNow();
+            }
+        }
+        for (Pending p : ps) {
+            p.future.completeExceptionally(new IllegalStateException("tracker is closed"));
+        }
+    }
+
+    // called with lock held
+    private void start() {
+        if (dispatcher != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "xuper-confirmation-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        stream = streams.apply(EventOuterClass.BlockFilter.newBuilder()
+                .setBcname(bcname)
+                .setExcludeTxEvent(true)
+                .build());
+        dispatcher = new Thread(this::dispatch, "xuper-confirmation-tracker");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void dispatch() {
+        try {
+            for (BlockEventStream.BlockEvent e; (e = stream.take()) != null; ) {
+                onBlock(e.getBlock());
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            stream.close();
+        }
+    }
+
+    void onBlock(EventOuterClass.FilteredBlock block) {
+        List<Pending> done = new ArrayList<>();
+        synchronized (this) {
+            long height = block.getBlockHeight();
+            tip = Math.max(tip, height);
+            for (EventOuterClass.FilteredTransaction tx : block.getTxsList()) {
+                List<Pending> ps = waiting.get(tx.getTxid());
+                if (ps != null) {
+                    for (Pending p : ps) {
+                        p.height = height;
+                        included.add(p);
+                    }
+                }
+            }
+            collect(done);
+        }
+        complete(done);
+    }
+
+    // called with lock held
+    private void collect(List<Pending> done) {
+        for (Pending p : included) {
+            if (tip - p.height >= p.depth) {
+                done.add(p);
+            }
+        }
+    }
+
+    private static void complete(List<Pending> done) {
+        for (Pending p : done) {
+            p.future.complete(p.height);
+        }
+    }
+
+    private synchronized void remove(Pending p) {
+        included.remove(p);
+        List<Pending> ps = waiting.get(p.txid);
+        if (ps != null && ps.remove(p) && ps.isEmpty()) {
+            waiting.remove(p.txid);
+        }
+    }
+
+    private void poll() {
+        List<String> txids = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, List<Pending>> e : waiting.entrySet()) {
+                if (polling.size() >= maxPolls) {
+                    break;
+                }
+                if (polling.contains(e.getKey())) {
+                    continue;
+                }
+                for (Pending p : e.getValue()) {
+                    if (p.height < 0 && now - p.since >= timeoutMillis) {
+                        polling.add(e.getKey());
+                        txids.add(e.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+        for (String txid : txids) {
+            CompletableFuture<XchainOuterClass.TxStatus> f;
+            try {
+                f = queryTx.apply(txid);
+            } catch (RuntimeException e) {
+                f = CompletableFuture.failedFuture(e);
+            }
+            f.whenComplete((status, t) -> onStatus(txid, t == null ? status : null));
+        }
+    }
+
+    private void onStatus(String txid, XchainOuterClass.TxStatus status) {
+        List<Pending> deep = new ArrayList<>();
+        synchronized (this) {
+            polling.remove(txid);
+            List<Pending> ps = waiting.get(txid);
+            if (status == null || ps == null || status.getStatus() != XchainOuterClass.TransactionStatus.CONFIRM) {
+                return;
+            }
+            // the distance is counted from the tip of the node, which may be ahead of the blocks received,
+            // so a transaction not deep enough yet waits for the block stream to tell its height
+            for (Pending p : ps) {
+                if (p.height < 0 && status.getDistance() >= p.depth) {
+                    deep.add(p);
+                }
+            }
+        }
+        if (deep.isEmpty()) {
+            return;
+        }
+        CompletableFuture<Long> f;
+        try {
+            f = blockHeight.apply(status.getTx().getBlockid());
+        } catch (RuntimeException e) {
+            f = CompletableFuture.failedFuture(e);
+        }
+        // on failure the transaction is queried again by the next poll
+        f.thenAccept(height -> {
+            for (Pending p : deep) {
+                p.height = height;
+            }
+            complete(deep);
+        });
+    }
+
+    private static class Pending {
+        final String txid;
+        final int depth;
+        final long since = System.currentTimeMillis();
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        volatile long height = -1;
+
+        Pending(String txid, int depth) {
+            this.txid = txid;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.baidu.xuper.pb.XchainOuterClass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * dispatch contract events of many listeners over a few block streams.
+ * Listeners with the same initiator, auth_require, from_addr and to_addr share one BlockEventStream, their contract
+ * and event name patterns are merged into the filter of that stream and checked again on the client.
+ * Handlers run on the executor, the events of one listener are handled one by one in block order. At most
+ * maxPending events wait for handlers, a slow handler slows the streams down instead of piling up events.
+ * <pre>
+ * ContractEventHub hub = new ContractEventHub(client.getXEventServiceListener(), "xuper");
+ * hub.subscribe(new ContractEventHub.Filter().setContract("counter").setEventName("increase"),
+ *         e -> System.out.println(e.getTxid() + " " + e.getEvent().getBody().toStringUtf8()));
+ * </pre>
+ */
+public class ContractEventHub implements AutoCloseable {
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    private final Function<EventOuterClass.BlockFilter, BlockEventStream> streams;
+    private final String bcname;
+    private final Executor executor;
+    private final Semaphore pending;
+    private final Map<List<String>, Group> groups = new HashMap<>();
+    private volatile BiConsumer<Event, Throwable> errorHandler = (e, t) -> {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+    };
+    private boolean closed;
+
+    /**
+     * @param listener the event service of node
+     * @param bcname   the chain name
+     */
+    public ContractEventHub(XEventServiceListener listener, String bcname) {
+        this(listener, bcname, ForkJoinPool.commonPool(), DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param listener   the event service of node
+     * @param bcname     the chain name
+     * @param executor   the executor to run handlers on
+     * @param maxPending the max count of events waiting for handlers
+     */
+    public ContractEventHub(XEventServiceListener listener, String bcname, Executor executor, int maxPending) {
+        this(f -> new BlockEventStream(listener, f).start(), bcname, executor, maxPending);
+    }
+
+    ContractEventHub(Function<EventOuterClass.BlockFilter, BlockEventStream> streams, String bcname,
+                     Executor executor, int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending must be positive");
+        }
+        this.streams = streams;
+        this.bcname = bcname;
+        this.executor = executor;
+        this.pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * @param errorHandler called with the event and the exception when a handler throws, by default the exception goes to
+     *                     the uncaught exception handler of the thread
+     * @return this hub
+     */
+    public ContractEventHub setErrorHandler(BiConsumer<Event, Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /**
+     * @param filter  which events to handle, events after the subscription are delivered
+     * @param handler the handler of events
+     * @return the subscription, close it to stop receiving events
+     */
+    public Subscription subscribe(Filter filter, Handler handler) {
+        Listener l = new Listener(filter, handler);
+        List<String> key = filter.streamKey();
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("hub is closed");
+            }
+            Group g = groups.get(key);
+            boolean created = g == null;
+            if (created) {
+                g = new Group(key);
+                groups.put(key, g);
+            }
+            g.listeners.add(l);
+            g.dirty = true;
+            if (created) {
+                g.thread.start();
+            }
+            l.group = g;
+        }
+        return new Subscription(l);
+    }
+
+    /**
+     * @return the count of block streams opened
+     */
+    public synchronized int streamCount() {
+        return groups.size();
+    }
+
+    public void close() {
+        List<Group> gs;
+        synchronized (this) {
+            closed = true;
+            gs = new ArrayList<>(groups.values());
+            groups.clear();
+        }
+        for (Group g : gs) {
+            for (Listener l : g.listeners) {
+                l.cancelled = true;
+            }
+            g.thread.interrupt();
+        }
+    }
+
+    private void unsubscribe(Listener l) {
+        synchronized (this) {
+            Group g = l.group;
+            l.cancelled = true;
+            if (g.listeners.remove(l)) {
+                g.dirty = true;
+            }
+        }
+    }
+
+    // contract and event name patterns of the listeners, an empty pattern matches all
+    private static String merge(Set<String> patterns) {
+        if (patterns.contains("")) {
+            return "";
+        }
+        if (patterns.size() == 1) {
+            return patterns.iterator().next();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String p : patterns) {
+            sb.append(sb.length() == 0 ? "" : "|").append("(?:").append(p).append(')');
+        }
+        return sb.toString();
+    }
+
+    private class Group implements Runnable {
+        // initiator, auth_require, from_addr, to_addr
+        final List<String> key;
+        final List<Listener> listeners = new CopyOnWriteArrayList<>();
+        final Thread thread;
+        volatile boolean dirty;
+        private EventOuterClass.BlockFilter filter;
+        private BlockEventStream stream;
+        private long lastHeight = -1;
+
+        Group(List<String> key) {
+            this.key = key;
+            this.thread = new Thread(this, "xuper-contract-event-hub");
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    synchronized (ContractEventHub.this) {
+                        if (closed || listeners.isEmpty()) {
+                            groups.remove(key, this);
+                            return;
+                        }
+                    }
+                    if (dirty) {
+                        dirty = false;
+                        reopen();
+                    }
+                    BlockEventStream.BlockEvent e = stream.poll(100, TimeUnit.MILLISECONDS);
+                    if (e != null) {
+                        dispatch(e.getBlock());
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } finally {
+                if (stream != null) {
+                    stream.close();
+                }
+            }
+        }
+
+        private void reopen() {
+            Set<String> contracts = new LinkedHashSet<>();
+            Set<String> names = new LinkedHashSet<>();
+            for (Listener l : listeners) {
+                contracts.add(l.contract);
+                names.add(l.eventName);
+            }
+            EventOuterClass.BlockFilter f = EventOuterClass.BlockFilter.newBuilder()
+                    .setBcname(bcname)
+                    .setContract(merge(contracts))
+                    .setEventName(merge(names))
+                    .setInitiator(key.get(0))
+                    .setAuthRequire(key.get(1))
+                    .setFromAddr(key.get(2))
+                    .setToAddr(key.get(3))
+                    .build();
+            if (f.equals(filter)) {
+                return;
+            }
+            if (stream != null) {
+                lastHeight = Math.max(lastHeight, stream.getLastHeight());
+                stream.close();
+            }
+            filter = f;
+            if (lastHeight >= 0) {
+                // continue from the next block so the old listeners miss nothing
+                f = f.toBuilder().setRange(EventOuterClass.BlockRange.newBuilder()
+                        .setStart(String.valueOf(lastHeight + 1))).build();
+            }
+            stream = streams.apply(f);
+        }
+
+        private void dispatch(EventOuterClass.FilteredBlock block) throws InterruptedException {
+            for (EventOuterClass.FilteredTransaction tx : block.getTxsList()) {
+                for (XchainOuterClass.ContractEvent ce : tx.getEventsList()) {
+                    Event event = null;
+                    for (Listener l : listeners) {
+                        if (!l.matches(ce)) {
+                            continue;
+                        }
+                        if (event == null) {
+                            event = new Event(block, tx.getTxid(), ce);
+                        }
+                        pending.acquire();
+                        l.enqueue(event);
+                    }
+                }
+            }
+        }
+    }
+
+    private class Listener {
+        final String contract;
+        final String eventName;
+        final Pattern contractPattern;
+        final Pattern eventNamePattern;
+        final Handler handler;
+        final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean running = new AtomicBoolean();
+        volatile boolean cancelled;
+        Group group;
+
+        Listener(Filter filter, Handler handler) {
+            this.contract = filter.contract;
+            this.eventName = filter.eventName;
+            this.contractPattern = Pattern.compile(contract);
+            this.eventNamePattern = Pattern.compile(eventName);
+            this.handler = handler;
+        }
+
+        // same as the node, a pattern matches if it is found in the string
+        boolean matches(XchainOuterClass.ContractEvent e) {
+            return contractPattern.matcher(e.getContract()).find() && eventNamePattern.matcher(e.getName()).find();
+        }
+
+        void enqueue(Event e) {
+            queue.add(e);
+            if (running.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        // events of one listener are handled by one task at a time
+        void drain() {
+            boolean idle = false;
+            try {
+                while (true) {
+                    Event e = queue.poll();
+                    if (e == null) {
+                        running.set(false);
+                        idle = true;
+                        if (queue.isEmpty() || !running.compareAndSet(false, true)) {
+                            return;
+                        }
+                        idle = false;
+                        continue;
+                    }
+                    try {
+                        if (!cancelled) {
+                            handler.onEvent(e);
+                        }
+                    } catch (RuntimeException t) {
+                        errorHandler.accept(e, t);
+                    } finally {
+                        pending.release();
+                    }
+                }
+            } finally {
+                // an Error or a throwing errorHandler ends this task, another one handles the rest
+                if (!idle) {
+                    running.set(false);
+                    if (!queue.isEmpty() && running.compareAndSet(false, true)) {
+                        executor.execute(this::drain);
+                    }
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        void onEvent(Event event);
+    }
+
+    public class Subscription implements AutoCloseable {
+        private final Listener listener;
+
+        Subscription(Listener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * stop receiving events, the events already waiting are dropped.
+         */
+        public void close() {
+            unsubscribe(listener);
+        }
+    }
+
+    /**
+     * the filter of contract events, each field is a regular expression and an empty one matches all.
+     * initiator, authRequire, fromAddr and toAddr are checked by the node only.
+     */
+    public static class Filter {
+        private String contract = "";
+        private String eventName = "";
+        private String initiator = "";
+        private String authRequire = "";
+        private String fromAddr = "";
+        private String toAddr = "";
+
+        public Filter setContract(String contract) {
+            this.contract = Objects.requireNonNull(contract);
+            return this;
+        }
+
+        public Filter setEventName(String eventName) {
+            this.eventName = Objects.requireNonNull(eventName);
+            return this;
+        }
+
+        public Filter setInitiator(String initiator) {
+            this.initiator = Objects.requireNonNull(initiator);
+            return this;
+        }
+
+        public Filter setAuthRequire(String authRequire) {
+            this.authRequire = Objects.requireNonNull(authRequire);
+            return this;
+        }
+
+        public Filter setFromAddr(String fromAddr) {
+            this.fromAddr = Objects.requireNonNull(fromAddr);
+            return this;
+        }
+
+        public Filter setToAddr(String toAddr) {
+            this.toAddr = Objects.requireNonNull(toAddr);
+            return this;
+        }
+
+        List<String> streamKey() {
+            List<String> key = new ArrayList<>(4);
+            key.add(initiator);
+            key.add(authRequire);
+            key.add(fromAddr);
+            key.add(toAddr);
+            return key;
+        }
+
+    }
+
+    public static class Event {
+        private final EventOuterClass.FilteredBlock block;
+        private final String txid;
+        private final XchainOuterClass.ContractEvent event;
+
+        Event(EventOuterClass.FilteredBlock block, String txid, XchainOuterClass.ContractEvent event) {
+            this.block = block;
+            this.txid = txid;
+            this.event = event;
+        }
+
+        public long getBlockHeight() {
+            return block.getBlockHeight();
+        }
+
+        public String getBlockid() {
+            return block.getBlockid();
+        }
+
+        public String getTxid() {
+            return txid;
+        }
+
+        public XchainOuterClass.ContractEvent getEvent() {
+            return event;
+        }
+    }
+}
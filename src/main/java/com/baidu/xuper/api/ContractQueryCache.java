@@ -0,0 +1,321 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * a cache of preExec responses of read-only contract calls, used by queryContract and queryEVMContract.
+ * A response is keyed by chain, contract, module, method, initiator and the args sorted by name, and is dropped
+ * when a transaction calling the contract is seen in a block, after ttl, or after maxBlocks blocks.
+ * Blocks are subscribed with a contract filter of the cached contracts from the event service of the client.
+ * A transaction without events is queried to find the contracts it calls and the ones whose state it writes,
+ * a contract changed by another one without an event or a written key is not seen, ttl bounds how stale it can be.
+ * <pre>
+ * client.setContractQueryCache(new ContractQueryCache(16 * 1024 * 1024).setTtl(30, TimeUnit.SECONDS));
+ * </pre>
+ */
+public class ContractQueryCache implements AutoCloseable {
+    private final QueryCache cache;
+    private volatile long ttlMillis = 60000;
+    private volatile long maxBlocks;
+
+    // the cached contracts, the version is bumped on each invalidation so a response loaded before it is not cached
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Map<String, Long> validUntil = new ConcurrentHashMap<>();
+    private volatile long tip = -1;
+
+    private String bcname;
+    private Function<EventOuterClass.BlockFilter, BlockEventStream> streams;
+    private Function<String, XchainOuterClass.Transaction> queryTx;
+    private volatile Thread watcher;
+    private volatile boolean dirty;
+    private boolean closed;
+
+    /**
+     * @param maxWeight the max total serialized size of cached responses in bytes
+     */
+    public ContractQueryCache(long maxWeight) {
+        this.cache = new QueryCache(maxWeight);
+    }
+
+    /**
+     * @param ttl  how long a response is cached, 0 for no limit
+     * @param unit the unit of ttl
+     * @return this cache
+     */
+    public ContractQueryCache setTtl(long ttl, TimeUnit unit) {
+        this.ttlMillis = unit.toMillis(ttl);
+        return this;
+    }
+
+    /**
+     * @param maxBlocks a response cached at height N is valid until height N + maxBlocks, 0 for no limit
+     * @return this cache
+     */
+    public ContractQueryCache setMaxBlocks(long maxBlocks) {
+        this.maxBlocks = maxBlocks;
+        return this;
+    }
+
+    /**
+     * watch the blocks of a chain, called by XuperClient.setContractQueryCache.
+     */
+    synchronized void attach(String bcname, Function<EventOuterClass.BlockFilter, BlockEventStream> streams,
+                             Function<String, XchainOuterClass.Transaction> queryTx) {
+        if (this.streams != null) {
+            throw new IllegalStateException("cache is used by another client");
+        }
+        this.bcname = bcname;
+        this.streams = streams;
+        this.queryTx = queryTx;
+    }
+
+    /**
+     * get the cached response of a preExec request or send it.
+     *
+     * @param request the request of a read-only call
+     * @param loader  send the request to node
+     * @return the response
+     */
+    XchainOuterClass.InvokeRPCResponse get(XchainOuterClass.InvokeRPCRequest request,
+                                           Supplier<XchainOuterClass.InvokeRPCResponse> loader) {
+        if (request.getRequestsCount() != 1) {
+            return loader.get();
+        }
+        String contract = request.getRequests(0).getContractName();
+        AtomicLong version = versions.computeIfAbsent(contract, c -> {
+            dirty = true;
+            return new AtomicLong();
+        });
+        long v = version.get();
+        long height = tip;
+        if (watcher == null) {
+            start();
+        }
+        String key = key(request);
+        XchainOuterClass.InvokeRPCResponse response = cache.get(key, loader, r -> {
+            if (r.getHeader().getError() != XchainOuterClass.XChainErrorEnum.SUCCESS || version.get() != v) {
+                return 0;
+            }
+            long blocks = maxBlocks;
+            if (blocks > 0) {
+                if (height < 0) {
+                    // no block seen yet to count from
+                    return 0;
+                }
+                validUntil.put(key, height + blocks);
+            }
+            long ttl = ttlMillis;
+            return ttl == 0 ? Long.MAX_VALUE : ttl;
+        });
+        if (version.get() != v) {
+            // invalidated between the check above and the put, drop what may have been put after it
+            cache.invalidate(key::equals);
+            validUntil.remove(key);
+        }
+        return response;
+    }
+
+    static String key(XchainOuterClass.InvokeRPCRequest request) {
+        XchainOuterClass.InvokeRequest r = request.getRequests(0);
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        // the args map keeps the order of insertion, sort it so the same args give the same key
+        for (Map.Entry<String, ByteString> e : new TreeMap<>(r.getArgsMap()).entrySet()) {
+            byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+            md.update(ByteBuffer.allocate(4).putInt(name.length).array());
+            md.update(name);
+            md.update(ByteBuffer.allocate(4).putInt(e.getValue().size()).array());
+            md.update(e.getValue().asReadOnlyByteBuffer());
+        }
+        return prefix(request.getBcname(), r.getContractName()) + r.getModuleName() + "/" + r.getMethodName() + "/"
+                + request.getInitiator() + "/" + Hex.toHexString(md.digest());
+    }
+
+    private static String prefix(String bcname, String contract) {
+        return bcname + "/contract/" + contract + "/";
+    }
+
+    /**
+     * drop the cached responses of a contract.
+     *
+     * @param contract the contract name
+     */
+    public void invalidate(String contract) {
+        AtomicLong version = versions.get(contract);
+        if (version != null) {
+            version.incrementAndGet();
+        }
+        Predicate<String> keys;
+        synchronized (this) {
+            // not attached to a client, drop the contract of every chain
+            String part = bcname == null ? "/contract/" + contract + "/" : prefix(bcname, contract);
+            keys = bcname == null ? k -> k.contains(part) : k -> k.startsWith(part);
+        }
+        cache.invalidate(keys);
+        validUntil.keySet().removeIf(keys);
+    }
+
+    public void invalidateAll() {
+        for (AtomicLong version : versions.values()) {
+            version.incrementAndGet();
+        }
+        cache.invalidateAll();
+        validUntil.clear();
+    }
+
+    /**
+     * @return the counters of cache
+     */
+    public QueryCache.Stats stats() {
+        return cache.stats();
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (watcher != null) {
+                watcher.interrupt();
+            }
+        }
+        invalidateAll();
+    }
+
+    private synchronized void start() {
+        if (watcher != null || streams == null || closed) {
+            return;
+        }
+        watcher = new Thread(this::watch, "xuper-contract-query-cache");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
+        BlockEventStream stream = null;
+        long lastHeight = -1;
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                }
+                if (dirty) {
+                    dirty = false;
+                    if (stream != null) {
+                        lastHeight = Math.max(lastHeight, stream.getLastHeight());
+                        stream.close();
+                    }
+                    // continue from the next block, the blocks after the responses of new contracts were loaded are seen
+                    stream = streams.apply(newFilter(lastHeight));
+                }
+                BlockEventStream.BlockEvent e = stream.poll(100, TimeUnit.MILLISECONDS);
+                if (e != null) {
+                    onBlock(e.getBlock());
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+    private EventOuterClass.BlockFilter newFilter(long lastHeight) {
+        StringBuilder sb = new StringBuilder();
+        for (String contract : versions.keySet()) {
+            sb.append(sb.length() == 0 ? "^(?:" : "|").append("\\Q").append(contract).append("\\E");
+        }
+        EventOuterClass.BlockFilter.Builder f = EventOuterClass.BlockFilter.newBuilder()
+                .setBcname(bcname)
+                .setContract(sb.append(")$").toString());
+        if (lastHeight >= 0) {
+            f.setRange(EventOuterClass.BlockRange.newBuilder().setStart(String.valueOf(lastHeight + 1)));
+        }
+        return f.build();
+    }
+
+    void onBlock(EventOuterClass.FilteredBlock block) {
+        tip = Math.max(tip, block.getBlockHeight());
+        for (EventOuterClass.FilteredTransaction tx : block.getTxsList()) {
+            boolean known = false;
+            for (XchainOuterClass.ContractEvent ce : tx.getEventsList()) {
+                if (versions.containsKey(ce.getContract())) {
+                    invalidate(ce.getContract());
+                    known = true;
+                }
+            }
+            if (!known) {
+                // the transaction called a cached contract without an event telling which one
+                Set<String> contracts = invokedContracts(tx.getTxid());
+                for (String contract : contracts == null ? versions.keySet() : contracts) {
+                    if (versions.containsKey(contract)) {
+                        invalidate(contract);
+                    }
+                }
+            }
+        }
+        if (!validUntil.isEmpty()) {
+            Set<String> expired = new HashSet<>();
+            for (Map.Entry<String, Long> e : validUntil.entrySet()) {
+                if (e.getValue() <= tip) {
+                    expired.add(e.getKey());
+                }
+            }
+            cache.invalidate(expired::contains);
+            validUntil.keySet().removeAll(expired);
+        }
+    }
+
+    // the contracts called by a transaction and the buckets it writes, null if it can not be queried
+    private Set<String> invokedContracts(String txid) {
+        Function<String, XchainOuterClass.Transaction> q;
+        synchronized (this) {
+            q = queryTx;
+        }
+        if (q == null) {
+            return null;
+        }
+        XchainOuterClass.Transaction tx;
+        try {
+            tx = q.apply(txid);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (tx.getTxid().isEmpty()) {
+            return null;
+        }
+        Set<String> contracts = new HashSet<>();
+        for (XchainOuterClass.InvokeRequest r : tx.getContractRequestsList()) {
+            contracts.add(r.getContractName());
+        }
+        // a contract called by another one writes its state under a bucket of its name
+        for (XchainOuterClass.TxOutputExt o : tx.getTxOutputsExtList()) {
+            contracts.add(o.getBucket());
+        }
+        return contracts;
+    }
+}
@@ -5,14 +5,40 @@ import com.baidu.xuper.crypto.Crypto;
 import com.baidu.xuper.crypto.gm.GmCryptoClient;
 import com.baidu.xuper.crypto.xchain.XChainCryptoClient;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 public class CryptoClient {
+    // the crypto clients are stateless, one instance of each kind is shared by all threads.
+    private static final ConcurrentMap<String, Crypto> clients = new ConcurrentHashMap<>();
+
     /**
      * 读取配置文件，获取加密方式
      *
      * @return CryptoClient
      */
     public static Crypto getCryptoClient() {
-        if (Config.CRYPTO_GM.equals(Config.getInstance().getCrypto())) {
+        return getCryptoClient(Config.getInstance());
+    }
+
+    /**
+     * @param config the config, like XuperClient.getConfig()
+     * @return the crypto client of config
+     */
+    public static Crypto getCryptoClient(Config config) {
+        String crypto = Config.CRYPTO_GM.equals(config.getCrypto()) ? Config.CRYPTO_GM : Config.CRYPTO_CHAIN;
+        return clients.computeIfAbsent(crypto, CryptoClient::newCryptoClient);
+    }
+
+    /**
+     * drop the cached crypto clients, the next getCryptoClient creates them again.
+     */
+    public static void invalidate() {
+        clients.clear();
+    }
+
+    private static Crypto newCryptoClient(String crypto) {
+        if (Config.CRYPTO_GM.equals(crypto)) {
             return new GmCryptoClient();
         }
         return new XChainCryptoClient();
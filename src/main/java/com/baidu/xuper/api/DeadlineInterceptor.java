@@ -0,0 +1,46 @@
+package com.baidu.xuper.api;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * set a deadline on calls without one, by the rpc method name like QueryTx or the default.
+ */
+class DeadlineInterceptor implements ClientInterceptor {
+    private final Map<String, Long> methodNanos = new ConcurrentHashMap<>();
+    private volatile long defaultNanos;
+
+    /**
+     * @param method  the rpc method name, null for the default of all methods
+     * @param timeout the timeout, 0 for no deadline
+     * @param unit    the unit of timeout
+     */
+    void set(String method, long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        if (method == null) {
+            defaultNanos = nanos;
+        } else {
+            methodNanos.put(method, nanos);
+        }
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        if (callOptions.getDeadline() == null) {
+            Long nanos = methodNanos.get(method.getBareMethodName());
+            long timeout = nanos != null ? nanos : defaultNanos;
+            if (timeout > 0) {
+                callOptions = callOptions.withDeadlineAfter(timeout, TimeUnit.NANOSECONDS);
+            }
+        }
+        return next.newCall(method, callOptions);
+    }
+}
@@ -0,0 +1,59 @@
+package com.baidu.xuper.api;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * adapt a unary grpc call on an async stub to a CompletableFuture, cancelling the future cancels the call.
+ *
+ * @param <Req> the request type
+ * @param <T>   the response type
+ */
+class FutureObserver<Req, T> implements ClientResponseObserver<Req, T> {
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    /**
+     * @param method  the method of async stub, like client.getAsyncClient()::postTx
+     * @param request the request message
+     * @return the future completed by the response
+     */
+    static <Req, Resp> CompletableFuture<Resp> call(BiConsumer<Req, StreamObserver<Resp>> method, Req request) {
+        FutureObserver<Req, Resp> observer = new FutureObserver<>();
+        try {
+            method.accept(request, observer);
+        } catch (Exception e) {
+            observer.future.completeExceptionally(e);
+        }
+        return observer.future;
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<Req> requestStream) {
+        future.whenComplete((response, t) -> {
+            if (future.isCancelled()) {
+                requestStream.cancel("cancelled", null);
+            }
+        });
+    }
+
+    @Override
+    public void onNext(T value) {
+        future.complete(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        future.completeExceptionally(t);
+    }
+
+    @Override
+    public void onCompleted() {
+        if (!future.isDone()) {
+            future.completeExceptionally(new RuntimeException("call completed without response"));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.baidu.xuper.api;
+
+import io.grpc.Context;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * run an idempotent blocking read, and the same read on a backup if the first one has not answered after a delay
+ * or failed with UNAVAILABLE, DEADLINE_EXCEEDED or RESOURCE_EXHAUSTED. The first answer wins and the other call
+ * is cancelled through its grpc Context.
+ */
+class HedgedCall<T> {
+    private final Executor executor;
+    private final BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+    private final List<Context.CancellableContext> contexts = new ArrayList<>();
+
+    private HedgedCall(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param executor   the executor to run the calls on, both of them block a thread
+     * @param primary    the first call
+     * @param backup     the hedged call, null for none
+     * @param delayNanos how long to wait for the first call before starting the backup
+     * @return the first answer
+     */
+    static <T> T run(Executor executor, Supplier<T> primary, Supplier<T> backup, long delayNanos) throws InterruptedException {
+        return new HedgedCall<T>(executor).run(primary, backup, delayNanos);
+    }
+
+    private T run(Supplier<T> primary, Supplier<T> backup, long delayNanos) throws InterruptedException {
+        try {
+            launch(primary);
+            int launched = 1;
+            int failed = 0;
+            RuntimeException last = null;
+            long hedgeAt = System.nanoTime() + delayNanos;
+            while (true) {
+                Outcome<T> o;
+                if (backup != null && launched == 1) {
+                    o = outcomes.poll(hedgeAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (o == null) {
+                        launch(backup);
+                        launched++;
+                        continue;
+                    }
+                } else {
+                    o = outcomes.take();
+                }
+                if (o.error == null) {
+                    return o.value;
+                }
+                failed++;
+                last = o.error;
+                if (backup != null && launched == 1 && isTransient(o.error)) {
+                    // fail over at once instead of waiting for the delay
+                    launch(backup);
+                    launched++;
+                } else if (failed == launched) {
+                    throw last;
+                }
+            }
+        } finally {
+            synchronized (contexts) {
+                for (Context.CancellableContext c : contexts) {
+                    c.cancel(null);
+                }
+            }
+        }
+    }
+
+    private void launch(Supplier<T> call) {
+        Context.CancellableContext ctx = Context.current().withCancellation();
+        synchronized (contexts) {
+            contexts.add(ctx);
+        }
+        executor.execute(() -> ctx.run(() -> {
+            try {
+                outcomes.add(new Outcome<>(call.get(), null));
+            } catch (RuntimeException e) {
+                outcomes.add(new Outcome<>(null, e));
+            }
+        }));
+    }
+
+    static boolean isTransient(Throwable t) {
+        switch (Status.fromThrowable(t).getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case RESOURCE_EXHAUSTED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static class Outcome<T> {
+        final T value;
+        final RuntimeException error;
+
+        Outcome(T value, RuntimeException error) {
+            this.value = value;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.baidu.xuper.api;
+
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongPredicate;
+
+/**
+ * a hash table from block ids and txids to heights in a memory mapped file, so the ids of millions of blocks
+ * take no heap. A slot keeps a 64 bit fingerprint of the id and the height + 1, 0 for an empty slot. The caller
+ * checks that the block at a found height really has the id, so a fingerprint collision costs one more probe.
+ * The slots are written through the mapping, flush records how much of id.idx they cover and the rest of id.idx
+ * is indexed again on open.
+ */
+class IdHashIndex {
+    private static final long MAGIC = 0x7875706572696478L;
+    private static final int HEADER = 64;
+    private static final int SLOT = 16;
+    private static final int PAGE_SHIFT = 30;
+    private static final long PAGE = 1L << PAGE_SHIFT;
+    private static final long MIN_CAPACITY = 1024;
+
+    private final Path file;
+    private volatile Table table;
+    private long size;
+    private long logPosition;
+    private long logHeight = -1;
+
+    private IdHashIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file the file of hash table, created or created again if it is not a valid one
+     * @return the index
+     */
+    static IdHashIndex open(Path file) throws IOException {
+        IdHashIndex index = new IdHashIndex(file);
+        long length = Files.exists(file) ? Files.size(file) : 0;
+        if (length >= HEADER) {
+            Table t = map(file, (length - HEADER) / SLOT);
+            long capacity = t.getLong(8);
+            if (t.getLong(0) == MAGIC && capacity >= MIN_CAPACITY && Long.bitCount(capacity) == 1
+                    && length == HEADER + capacity * SLOT) {
+                index.table = t;
+                index.size = t.getLong(16);
+                index.logPosition = t.getLong(24);
+                index.logHeight = t.getLong(32);
+                return index;
+            }
+        }
+        Files.deleteIfExists(file);
+        index.table = map(file, MIN_CAPACITY);
+        index.writeHeader(index.table);
+        index.table.force();
+        return index;
+    }
+
+    private static Table map(Path p, long capacity) throws IOException {
+        long length = HEADER + capacity * SLOT;
+        MappedByteBuffer[] pages = new MappedByteBuffer[(int) ((length + PAGE - 1) >>> PAGE_SHIFT)];
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < pages.length; i++) {
+                // the mapping stays valid after the channel is closed, and extends the file with zeros
+                pages[i] = ch.map(FileChannel.MapMode.READ_WRITE, i * PAGE, Math.min(PAGE, length - i * PAGE));
+            }
+        }
+        return new Table(pages, capacity);
+    }
+
+    /**
+     * @return the length of id.idx covered by the last flush
+     */
+    long logPosition() {
+        return logPosition;
+    }
+
+    /**
+     * @return the height of the last id.idx record covered by the last flush, -1 if none
+     */
+    long logHeight() {
+        return logHeight;
+    }
+
+    /**
+     * @param kind   the kind of id, block or transaction
+     * @param id     the id
+     * @param height the height of block
+     */
+    void put(byte kind, ByteString id, long height) throws IOException {
+        if ((size + 1) * 2 > table.capacity) {
+            grow();
+        }
+        // the records after the last flush are counted even if found, as the size is the one of that flush
+        size++;
+        insert(table, fingerprint(kind, id), height + 1, true);
+    }
+
+    private static void insert(Table t, long fp, long value, boolean dedup) {
+        long mask = t.capacity - 1;
+        for (long i = fp & mask; ; i = (i + 1) & mask) {
+            long off = HEADER + i * SLOT;
+            long v = t.getLong(off + 8);
+            if (v == 0) {
+                t.putLong(off, fp);
+                t.putLong(off + 8, value);
+                return;
+            }
+            if (dedup && v == value && t.getLong(off) == fp) {
+                // indexed again after a crash
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param kind  the kind of id, block or transaction
+     * @param id    the id
+     * @param visit called with the height of each slot of the same fingerprint until it returns true
+     */
+    void find(byte kind, ByteString id, LongPredicate visit) {
+        Table t = table;
+        long fp = fingerprint(kind, id);
+        long mask = t.capacity - 1;
+        for (long i = fp & mask, n = 0; n < t.capacity; i = (i + 1) & mask, n++) {
+            long off = HEADER + i * SLOT;
+            long v = t.getLong(off + 8);
+            if (v == 0) {
+                return;
+            }
+            if (t.getLong(off) == fp && visit.test(v - 1)) {
+                return;
+            }
+        }
+    }
+
+    // rehash into a table of double capacity written aside, then replace the file with it
+    private void grow() throws IOException {
+        Table old = table;
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        Table t = map(tmp, old.capacity * 2);
+        long n = 0;
+        for (long i = 0; i < old.capacity; i++) {
+            long off = HEADER + i * SLOT;
+            long v = old.getLong(off + 8);
+            if (v != 0) {
+                insert(t, old.getLong(off), v, false);
+                n++;
+            }
+        }
+        size = n;
+        writeHeader(t);
+        t.force();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        table = t;
+    }
+
+    /**
+     * write the slots to disk, then record that they cover id.idx up to logPosition.
+     *
+     * @param logPosition the length of id.idx indexed
+     * @param logHeight   the height of the last record of id.idx, -1 if none
+     */
+    void flush(long logPosition, long logHeight) {
+        Table t = table;
+        t.force();
+        this.logPosition = logPosition;
+        this.logHeight = logHeight;
+        writeHeader(t);
+        t.force();
+    }
+
+    private void writeHeader(Table t) {
+        t.putLong(0, MAGIC);
+        t.putLong(8, t.capacity);
+        t.putLong(16, size);
+        t.putLong(24, logPosition);
+        t.putLong(32, logHeight);
+    }
+
+    static long fingerprint(byte kind, ByteString id) {
+        // FNV-1a, then the finalizer of murmur3 to spread the bits used as slot index
+        long h = 0xcbf29ce484222325L ^ kind;
+        for (int i = 0; i < id.size(); i++) {
+            h ^= id.byteAt(i) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Table {
+        final MappedByteBuffer[] pages;
+        final long capacity;
+
+        Table(MappedByteBuffer[] pages, long capacity) {
+            this.pages = pages;
+            this.capacity = capacity;
+        }
+
+        // a slot never spans two pages, as the page size and offsets are multiples of the slot size
+        long getLong(long off) {
+            return pages[(int) (off >>> PAGE_SHIFT)].getLong((int) (off & (PAGE - 1)));
+        }
+
+        void putLong(long off, long v) {
+            pages[(int) (off >>> PAGE_SHIFT)].putLong((int) (off & (PAGE - 1)), v);
+        }
+
+        void force() {
+            for (MappedByteBuffer p : pages) {
+                p.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,671 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * parse the json of endorser responses in one pass over the UTF-8 bytes, straight into protobuf builders.
+ * Bytes fields are decoded from base64 into arrays wrapped by ByteString without another copy.
+ * Field names are matched like fastjson did, ignoring case, '_' and '-', and unknown fields are skipped.
+ */
+final class JsonReader {
+    private static final byte[] BASE64 = new byte[128];
+
+    static {
+        java.util.Arrays.fill(BASE64, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = (byte) i;
+        }
+        // url safe alphabet
+        BASE64['-'] = 62;
+        BASE64['_'] = 63;
+    }
+
+    private final ByteBuffer in;
+    private int pos;
+    private final int end;
+    private final StringBuilder chars = new StringBuilder();
+
+    private JsonReader(ByteBuffer in) {
+        this.in = in;
+        this.pos = in.position();
+        this.end = in.limit();
+    }
+
+    /**
+     * @param json the response data of PreExecWithFee
+     * @return the response
+     */
+    static XchainOuterClass.PreExecWithSelectUTXOResponse preExecWithSelectUTXOResponse(ByteString json) {
+        JsonReader r = new JsonReader(json.asReadOnlyByteBuffer());
+        XchainOuterClass.PreExecWithSelectUTXOResponse.Builder builder = XchainOuterClass.PreExecWithSelectUTXOResponse.newBuilder();
+        r.expect('{');
+        if (!r.endOf('}')) {
+            do {
+                switch (r.name()) {
+                    case "header":
+                        if (!r.isNull()) {
+                            builder.setHeader(r.header());
+                        }
+                        break;
+                    case "bcname":
+                        r.string(builder::setBcname);
+                        break;
+                    case "response":
+                        if (!r.isNull()) {
+                            builder.setResponse(r.invokeResponse());
+                        }
+                        break;
+                    case "utxooutput":
+                        if (!r.isNull()) {
+                            builder.setUtxoOutput(r.utxoOutput());
+                        }
+                        break;
+                    default:
+                        r.skip();
+                }
+            } while (r.next('}'));
+        }
+        return builder.build();
+    }
+
+    private XchainOuterClass.Header header() {
+        XchainOuterClass.Header.Builder b = XchainOuterClass.Header.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "logid":
+                    string(b::setLogid);
+                    break;
+                case "fromnode":
+                    string(b::setFromNode);
+                    break;
+                case "error":
+                    b.setErrorValue(int32());
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private XchainOuterClass.InvokeResponse invokeResponse() {
+        XchainOuterClass.InvokeResponse.Builder b = XchainOuterClass.InvokeResponse.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "inputs":
+                    array(() -> b.addInputs(txInputExt()));
+                    break;
+                case "outputs":
+                    array(() -> b.addOutputs(txOutputExt()));
+                    break;
+                case "response":
+                    array(() -> b.addResponse(bytesOrEmpty()));
+                    break;
+                case "gasused":
+                    b.setGasUsed(number());
+                    break;
+                case "requests":
+                    array(() -> b.addRequests(invokeRequest()));
+                    break;
+                case "responses":
+                    array(() -> b.addResponses(contractResponse()));
+                    break;
+                case "utxoinputs":
+                    array(() -> b.addUtxoInputs(txInput()));
+                    break;
+                case "utxooutputs":
+                    array(() -> b.addUtxoOutputs(txOutput()));
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private XchainOuterClass.TxInputExt txInputExt() {
+        XchainOuterClass.TxInputExt.Builder b = XchainOuterClass.TxInputExt.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "bucket":
+                    string(b::setBucket);
+                    break;
+                case "key":
+                    b.setKey(bytesOrEmpty());
+                    break;
+                case "reftxid":
+                    b.setRefTxid(bytesOrEmpty());
+                    break;
+                case "refoffset":
+                    b.setRefOffset(int32());
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private XchainOuterClass.TxOutputExt txOutputExt() {
+        XchainOuterClass.TxOutputExt.Builder b = XchainOuterClass.TxOutputExt.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "bucket":
+                    string(b::setBucket);
+                    break;
+                case "key":
+                    b.setKey(bytesOrEmpty());
+                    break;
+                case "value":
+                    b.setValue(bytesOrEmpty());
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private XchainOuterClass.InvokeRequest invokeRequest() {
+        XchainOuterClass.InvokeRequest.Builder b = XchainOuterClass.InvokeRequest.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "modulename":
+                    string(b::setModuleName);
+                    break;
+                case "contractname":
+                    string(b::setContractName);
+                    break;
+                case "methodname":
+                    string(b::setMethodName);
+                    break;
+                case "amount":
+                    string(b::setAmount);
+                    break;
+                case "args":
+                    if (!isNull()) {
+                        // the keys are not field names, read them as they are
+                        expect('{');
+                        if (!endOf('}')) {
+                            do {
+                                String key = string();
+                                expect(':');
+                                b.putArgs(key, bytesOrEmpty());
+                            } while (next('}'));
+                        }
+                    }
+                    break;
+                case "resourcelimits":
+                    array(() -> {
+                        XchainOuterClass.ResourceLimit.Builder rl = XchainOuterClass.ResourceLimit.newBuilder();
+                        object(n -> {
+                            switch (n) {
+                                case "type":
+                                    rl.setTypeValue(int32());
+                                    break;
+                                case "limit":
+                                    rl.setLimit(number());
+                                    break;
+                                default:
+                                    skip();
+                            }
+                        });
+                        b.addResourceLimits(rl.build());
+                    });
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private XchainOuterClass.ContractResponse contractResponse() {
+        XchainOuterClass.ContractResponse.Builder b = XchainOuterClass.ContractResponse.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "status":
+                    b.setStatus(int32());
+                    break;
+                case "message":
+                    string(b::setMessage);
+                    break;
+                case "body":
+                    b.setBody(bytesOrEmpty());
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private XchainOuterClass.TxInput txInput() {
+        XchainOuterClass.TxInput.Builder b = XchainOuterClass.TxInput.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "reftxid":
+                    b.setRefTxid(bytesOrEmpty());
+                    break;
+                case "refoffset":
+                    b.setRefOffset(int32());
+                    break;
+                case "fromaddr":
+                    b.setFromAddr(bytesOrEmpty());
+                    break;
+                case "amount":
+                    b.setAmount(bytesOrEmpty());
+                    break;
+                case "frozenheight":
+                    b.setFrozenHeight(number());
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private XchainOuterClass.TxOutput txOutput() {
+        XchainOuterClass.TxOutput.Builder b = XchainOuterClass.TxOutput.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "amount":
+                    b.setAmount(bytesOrEmpty());
+                    break;
+                case "toaddr":
+                    b.setToAddr(bytesOrEmpty());
+                    break;
+                case "frozenheight":
+                    b.setFrozenHeight(number());
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private XchainOuterClass.UtxoOutput utxoOutput() {
+        XchainOuterClass.UtxoOutput.Builder b = XchainOuterClass.UtxoOutput.newBuilder();
+        object(name -> {
+            switch (name) {
+                case "header":
+                    if (!isNull()) {
+                        b.setHeader(header());
+                    }
+                    break;
+                case "totalselected":
+                    string(b::setTotalSelected);
+                    break;
+                case "utxolist":
+                    array(() -> {
+                        XchainOuterClass.Utxo.Builder u = XchainOuterClass.Utxo.newBuilder();
+                        object(n -> {
+                            switch (n) {
+                                case "amount":
+                                    u.setAmount(bytesOrEmpty());
+                                    break;
+                                case "toaddr":
+                                    u.setToAddr(bytesOrEmpty());
+                                    break;
+                                case "topubkey":
+                                    u.setToPubkey(bytesOrEmpty());
+                                    break;
+                                case "reftxid":
+                                    u.setRefTxid(bytesOrEmpty());
+                                    break;
+                                case "refoffset":
+                                    u.setRefOffset(int32());
+                                    break;
+                                default:
+                                    skip();
+                            }
+                        });
+                        b.addUtxoList(u.build());
+                    });
+                    break;
+                default:
+                    skip();
+            }
+        });
+        return b.build();
+    }
+
+    private interface Field {
+        void read(String name);
+    }
+
+    // read the fields of an object, a null object reads nothing
+    private void object(Field field) {
+        if (isNull()) {
+            return;
+        }
+        expect('{');
+        if (endOf('}')) {
+            return;
+        }
+        do {
+            field.read(name());
+        } while (next('}'));
+    }
+
+    // read the elements of an array, a null array reads nothing
+    private void array(Runnable element) {
+        if (isNull()) {
+            return;
+        }
+        expect('[');
+        if (endOf(']')) {
+            return;
+        }
+        do {
+            element.run();
+        } while (next(']'));
+    }
+
+    // read a field name and the colon after it, lower cased without '_' and '-'
+    private String name() {
+        String s = string();
+        expect(':');
+        StringBuilder sb = chars;
+        sb.setLength(0);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '_' && c != '-') {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private void string(java.util.function.Consumer<String> setter) {
+        if (!isNull()) {
+            setter.accept(string());
+        }
+    }
+
+    private String string() {
+        expect('"');
+        int start = pos;
+        // fast path, no escape
+        while (pos < end) {
+            byte c = in.get(pos);
+            if (c == '"') {
+                String s = utf8(start, pos);
+                pos++;
+                return s;
+            }
+            if (c == '\\') {
+                break;
+            }
+            pos++;
+        }
+        StringBuilder sb = chars;
+        sb.setLength(0);
+        sb.append(utf8(start, pos));
+        while (true) {
+            if (pos >= end) {
+                throw error("unterminated string");
+            }
+            byte c = in.get(pos);
+            if (c == '"') {
+                pos++;
+                return sb.toString();
+            }
+            if (c != '\\') {
+                int from = pos;
+                while (pos < end && in.get(pos) != '"' && in.get(pos) != '\\') {
+                    pos++;
+                }
+                sb.append(utf8(from, pos));
+                continue;
+            }
+            if (pos + 1 >= end) {
+                throw error("unterminated string");
+            }
+            byte e = in.get(pos + 1);
+            pos += 2;
+            switch (e) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > end) {
+                        throw error("bad escape");
+                    }
+                    int v = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int d = Character.digit(in.get(pos++), 16);
+                        if (d < 0) {
+                            throw error("bad escape");
+                        }
+                        v = v << 4 | d;
+                    }
+                    sb.append((char) v);
+                    break;
+                default:
+                    sb.append((char) e);
+            }
+        }
+    }
+
+    private String utf8(int from, int to) {
+        if (in.hasArray()) {
+            return new String(in.array(), in.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] b = new byte[to - from];
+        in.get(from, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // decode a base64 string, null as empty
+    private ByteString bytesOrEmpty() {
+        if (isNull()) {
+            return ByteString.EMPTY;
+        }
+        expect('"');
+        int start = pos;
+        while (pos < end && in.get(pos) != '"') {
+            pos++;
+        }
+        if (pos >= end) {
+            throw error("unterminated string");
+        }
+        int stop = pos;
+        pos++;
+        while (stop > start && in.get(stop - 1) == '=') {
+            stop--;
+        }
+        int n = stop - start;
+        if (n == 0) {
+            return ByteString.EMPTY;
+        }
+        if (n % 4 == 1) {
+            throw error("bad base64");
+        }
+        byte[] out = new byte[n / 4 * 3 + (n % 4 == 0 ? 0 : n % 4 - 1)];
+        int o = 0;
+        int bits = 0;
+        int count = 0;
+        for (int i = start; i < stop; i++) {
+            byte c = in.get(i);
+            int d = c >= 0 ? BASE64[c] : -1;
+            if (d < 0) {
+                throw error("bad base64");
+            }
+            bits = bits << 6 | d;
+            if (++count == 4) {
+                out[o++] = (byte) (bits >> 16);
+                out[o++] = (byte) (bits >> 8);
+                out[o++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 3) {
+            out[o++] = (byte) (bits >> 10);
+            out[o] = (byte) (bits >> 2);
+        } else if (count == 2) {
+            out[o] = (byte) (bits >> 4);
+        }
+        // the array is not shared, wrap it without a copy
+        return UnsafeByteOperations.unsafeWrap(out);
+    }
+
+    // read an integer, also from a string like "123" as int64 may be quoted
+    private long number() {
+        if (isNull()) {
+            return 0;
+        }
+        ws();
+        boolean quoted = pos < end && in.get(pos) == '"';
+        if (quoted) {
+            pos++;
+        }
+        boolean negative = pos < end && in.get(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+        int start = pos;
+        // accumulate negative, so Long.MIN_VALUE is read too
+        long v = 0;
+        try {
+            while (pos < end) {
+                byte c = in.get(pos);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                v = Math.subtractExact(Math.multiplyExact(v, 10), c - '0');
+                pos++;
+            }
+            if (!negative) {
+                v = Math.negateExact(v);
+            }
+        } catch (ArithmeticException e) {
+            throw error("number overflow");
+        }
+        if (pos == start || (in.get(start) == '0' && pos - start > 1)) {
+            throw error("bad number");
+        }
+        if (quoted) {
+            if (pos >= end || in.get(pos) != '"') {
+                throw error("bad number");
+            }
+            pos++;
+        } else if (pos < end) {
+            // a fraction, an exponent or a trailing letter
+            byte c = in.get(pos);
+            if (c != ',' && c != '}' && c != ']' && c > ' ') {
+                throw error("bad number");
+            }
+        }
+        return v;
+    }
+
+    private int int32() {
+        long v = number();
+        if (v != (int) v) {
+            throw error("number overflow");
+        }
+        return (int) v;
+    }
+
+    // skip a value of any type
+    private void skip() {
+        ws();
+        if (pos >= end) {
+            throw error("unexpected end");
+        }
+        byte c = in.get(pos);
+        if (c == '"') {
+            expect('"');
+            while (pos < end && in.get(pos) != '"') {
+                pos += in.get(pos) == '\\' ? 2 : 1;
+            }
+            pos++;
+        } else if (c == '{') {
+            object(name -> skip());
+        } else if (c == '[') {
+            array(this::skip);
+        } else {
+            while (pos < end && (c = in.get(pos)) != ',' && c != '}' && c != ']' && c > ' ') {
+                pos++;
+            }
+        }
+    }
+
+    private boolean isNull() {
+        ws();
+        if (pos + 4 <= end && in.get(pos) == 'n' && in.get(pos + 1) == 'u' && in.get(pos + 2) == 'l' && in.get(pos + 3) == 'l') {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    // true and consumed if the next token is the closing c of an empty object or array
+    private boolean endOf(char c) {
+        ws();
+        if (pos < end && in.get(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    // after a member, true if a comma follows, false if the closing c does
+    private boolean next(char c) {
+        ws();
+        if (pos < end) {
+            byte b = in.get(pos++);
+            if (b == ',') {
+                return true;
+            }
+            if (b == c) {
+                return false;
+            }
+        }
+        throw error("expect ',' or '" + c + "'");
+    }
+
+    private void expect(char c) {
+        ws();
+        if (pos >= end || in.get(pos) != c) {
+            throw error("expect '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void ws() {
+        while (pos < end) {
+            byte c = in.get(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private RuntimeException error(String msg) {
+        return new RuntimeException("invalid json at " + pos + ": " + msg);
+    }
+}
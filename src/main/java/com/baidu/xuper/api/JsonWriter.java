@@ -0,0 +1,540 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * write the json of endorser requests straight from protobuf messages into a UTF-8 buffer reused by the thread.
+ * The output is byte for byte the one of the fastjson object graphs used before: bytes as base64, strings escaped
+ * as fastjson does, the fields of PreExecWithFee in request order, and the fields of ComplianceCheck sorted by
+ * name with nulls written and zero numbers and false skipped.
+ */
+final class JsonWriter {
+    private static final ThreadLocal<JsonWriter> WRITERS = ThreadLocal.withInitial(JsonWriter::new);
+    // a larger buffer is dropped after use instead of kept by the thread
+    private static final int MAX_RETAINED = 1024 * 1024;
+    private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    private byte[] buf = new byte[4096];
+    private int len;
+    private boolean comma;
+
+    private JsonWriter() {
+    }
+
+    private static JsonWriter get() {
+        JsonWriter w = WRITERS.get();
+        w.len = 0;
+        w.comma = false;
+        return w;
+    }
+
+    private ByteString done() {
+        ByteString out = ByteString.copyFrom(buf, 0, len);
+        if (buf.length > MAX_RETAINED) {
+            buf = new byte[4096];
+        }
+        return out;
+    }
+
+    /**
+     * @param request the request from Proposal.newPreExecWithSelectUTXORequest
+     * @return the json of PreExecWithFee request data
+     */
+    static ByteString preExecWithFee(XchainOuterClass.PreExecWithSelectUTXORequest request) {
+        JsonWriter w = get();
+        w.beginObject();
+        if (!request.getBcname().isEmpty()) {
+            w.name("bcname").value(request.getBcname());
+        }
+        if (!request.getAddress().isEmpty()) {
+            w.name("address").value(request.getAddress());
+        }
+        w.name("totalAmount").value(request.getTotalAmount());
+
+        XchainOuterClass.InvokeRPCRequest r = request.getRequest();
+        w.name("request").beginObject();
+        if (!request.getBcname().isEmpty()) {
+            w.name("bcname").value(request.getBcname());
+        }
+        w.name("initiator").value(r.getInitiator());
+        w.name("auth_require").strings(r.getAuthRequireList());
+        if (r.getRequestsCount() > 0) {
+            w.name("requests").beginArray();
+            for (XchainOuterClass.InvokeRequest ir : r.getRequestsList()) {
+                w.beginObject();
+                if (!ir.getModuleName().isEmpty()) {
+                    w.name("module_name").value(ir.getModuleName());
+                }
+                if (!ir.getContractName().isEmpty()) {
+                    w.name("contract_name").value(ir.getContractName());
+                }
+                if (!ir.getMethodName().isEmpty()) {
+                    w.name("method_name").value(ir.getMethodName());
+                }
+                if (ir.getArgsCount() > 0) {
+                    w.name("args").beginObject();
+                    for (Map.Entry<String, ByteString> e : ir.getArgsMap().entrySet()) {
+                        w.name(e.getKey()).value(e.getValue());
+                    }
+                    w.endObject();
+                }
+                if (!ir.getAmount().isEmpty()) {
+                    w.name("amount").value(ir.getAmount());
+                }
+                w.endObject();
+            }
+            w.endArray();
+        }
+        w.endObject();
+        w.endObject();
+        return w.done();
+    }
+
+    /**
+     * @param txStatus the tx status holding the transaction to check
+     * @return the json of ComplianceCheck request data
+     */
+    static ByteString txStatus(XchainOuterClass.TxStatus txStatus) {
+        JsonWriter w = get();
+        w.beginObject();
+        w.name("bcname").value(txStatus.getBcname());
+        if (txStatus.getDistance() != 0) {
+            w.name("distance").value(txStatus.getDistance());
+        }
+        w.name("header");
+        if (txStatus.hasHeader()) {
+            XchainOuterClass.Header h = txStatus.getHeader();
+            w.beginObject();
+            if (h.getErrorValue() != 0) {
+                w.name("error").value(h.getErrorValue());
+            }
+            w.name("from_node").value(h.getFromNode());
+            w.name("logid").value(h.getLogid());
+            w.endObject();
+        } else {
+            w.nullValue();
+        }
+        if (txStatus.getStatusValue() != 0) {
+            w.name("status").value(txStatus.getStatusValue());
+        }
+        w.name("tx");
+        w.transaction(txStatus.getTx());
+        w.name("txid").bytesOrNull(txStatus.getTxid());
+        w.endObject();
+        return w.done();
+    }
+
+    private void transaction(XchainOuterClass.Transaction t) {
+        beginObject();
+        name("auth_require").strings(t.getAuthRequireList());
+        name("auth_require_signs").signatures(t.getAuthRequireSignsList());
+        name("blockid").bytesOrNull(t.getBlockid());
+        if (t.getCoinbase()) {
+            name("coinbase").value(true);
+        }
+        name("contract_requests");
+        if (t.getContractRequestsCount() > 0) {
+            beginArray();
+            for (XchainOuterClass.InvokeRequest ir : t.getContractRequestsList()) {
+                invokeRequest(ir);
+            }
+            endArray();
+        } else {
+            nullValue();
+        }
+        name("desc").bytesOrNull(t.getDesc());
+        name("initiator").value(t.getInitiator());
+        name("initiator_signs").signatures(t.getInitiatorSignsList());
+        name("modify_block");
+        if (t.hasModifyBlock()) {
+            XchainOuterClass.ModifyBlock mb = t.getModifyBlock();
+            beginObject();
+            if (mb.getEffectiveHeight() > 0) {
+                name("effective_height").value(mb.getEffectiveHeight());
+            }
+            name("effective_txid").stringOrNull(mb.getEffectiveTxid());
+            if (mb.getMarked()) {
+                name("marked").value(true);
+            }
+            name("public_key").stringOrNull(mb.getPublicKey());
+            name("sign").stringOrNull(mb.getSign());
+            endObject();
+        } else {
+            nullValue();
+        }
+        name("nonce").stringOrNull(t.getNonce());
+        if (t.getReceivedTimestamp() != 0) {
+            name("received_timestamp").value(t.getReceivedTimestamp());
+        }
+        if (t.getTimestamp() != 0) {
+            name("timestamp").value(t.getTimestamp());
+        }
+        name("tx_inputs");
+        if (t.getTxInputsCount() > 0) {
+            beginArray();
+            for (XchainOuterClass.TxInput ti : t.getTxInputsList()) {
+                beginObject();
+                name("amount").value(ti.getAmount());
+                name("from_addr").value(ti.getFromAddr());
+                if (ti.getFrozenHeight() != 0) {
+                    name("frozen_height").value(ti.getFrozenHeight());
+                }
+                if (ti.getRefOffset() != 0) {
+                    name("ref_offset").value(ti.getRefOffset());
+                }
+                name("ref_txid").value(ti.getRefTxid());
+                endObject();
+            }
+            endArray();
+        } else {
+            nullValue();
+        }
+        name("tx_inputs_ext");
+        if (t.getTxInputsExtCount() > 0) {
+            beginArray();
+            for (XchainOuterClass.TxInputExt tie : t.getTxInputsExtList()) {
+                beginObject();
+                name("bucket").stringOrNull(tie.getBucket());
+                name("key").bytesOrNull(tie.getKey());
+                if (tie.getRefOffset() != 0) {
+                    name("ref_offset").value(tie.getRefOffset());
+                }
+                name("ref_txid").bytesOrNull(tie.getRefTxid());
+                endObject();
+            }
+            endArray();
+        } else {
+            nullValue();
+        }
+        name("tx_outputs");
+        if (t.getTxOutputsCount() > 0) {
+            beginArray();
+            for (XchainOuterClass.TxOutput to : t.getTxOutputsList()) {
+                beginObject();
+                name("amount").value(to.getAmount());
+                if (to.getFrozenHeight() != 0) {
+                    name("frozen_height").value(to.getFrozenHeight());
+                }
+                name("to_addr").value(to.getToAddr());
+                endObject();
+            }
+            endArray();
+        } else {
+            nullValue();
+        }
+        name("tx_outputs_ext");
+        if (t.getTxOutputsExtCount() > 0) {
+            beginArray();
+            for (XchainOuterClass.TxOutputExt toe : t.getTxOutputsExtList()) {
+                beginObject();
+                name("bucket").stringOrNull(toe.getBucket());
+                name("key").bytesOrNull(toe.getKey());
+                name("value").bytesOrNull(toe.getValue());
+                endObject();
+            }
+            endArray();
+        } else {
+            nullValue();
+        }
+        name("txid").value(t.getTxid());
+        if (t.getVersion() != 0) {
+            name("version").value(t.getVersion());
+        }
+        name("xuper_sign");
+        if (t.hasXuperSign()) {
+            XchainOuterClass.XuperSignature xs = t.getXuperSign();
+            beginObject();
+            name("public_keys").beginArray();
+            for (ByteString pk : xs.getPublicKeysList()) {
+                value(pk);
+            }
+            endArray();
+            name("signature").value(xs.getSignature());
+            endObject();
+        } else {
+            nullValue();
+        }
+        endObject();
+    }
+
+    private void invokeRequest(XchainOuterClass.InvokeRequest ir) {
+        beginObject();
+        name("amount").stringOrNull(ir.getAmount());
+        name("args");
+        if (ir.getArgsCount() > 0) {
+            // the order of a default sized HashMap filled one by one, as the args were copied into one before
+            Map<String, ByteString> args = new HashMap<>();
+            for (Map.Entry<String, ByteString> e : ir.getArgsMap().entrySet()) {
+                args.put(e.getKey(), e.getValue());
+            }
+            beginObject();
+            for (Map.Entry<String, ByteString> e : args.entrySet()) {
+                name(e.getKey()).bytesOrNull(e.getValue());
+            }
+            endObject();
+        } else {
+            nullValue();
+        }
+        name("contract_name").stringOrNull(ir.getContractName());
+        name("method_name").stringOrNull(ir.getMethodName());
+        name("module_name").stringOrNull(ir.getModuleName());
+        name("resource_limits");
+        if (ir.getResourceLimitsCount() > 0) {
+            beginArray();
+            for (XchainOuterClass.ResourceLimit rl : ir.getResourceLimitsList()) {
+                beginObject();
+                if (rl.getLimit() != 0) {
+                    name("limit").value(rl.getLimit());
+                }
+                if (rl.getTypeValue() != 0) {
+                    name("type").value(rl.getTypeValue());
+                }
+                endObject();
+            }
+            endArray();
+        } else {
+            nullValue();
+        }
+        endObject();
+    }
+
+    private void signatures(List<XchainOuterClass.SignatureInfo> signs) {
+        if (signs.isEmpty()) {
+            nullValue();
+            return;
+        }
+        beginArray();
+        for (XchainOuterClass.SignatureInfo s : signs) {
+            beginObject();
+            name("PublicKey").value(s.getPublicKey());
+            name("Sign").value(s.getSign());
+            endObject();
+        }
+        endArray();
+    }
+
+    private JsonWriter beginObject() {
+        separate();
+        put((byte) '{');
+        comma = false;
+        return this;
+    }
+
+    private void endObject() {
+        put((byte) '}');
+        comma = true;
+    }
+
+    private JsonWriter beginArray() {
+        separate();
+        put((byte) '[');
+        comma = false;
+        return this;
+    }
+
+    private void endArray() {
+        put((byte) ']');
+        comma = true;
+    }
+
+    private JsonWriter name(String name) {
+        separate();
+        string(name);
+        put((byte) ':');
+        comma = false;
+        return this;
+    }
+
+    private void separate() {
+        if (comma) {
+            put((byte) ',');
+        }
+    }
+
+    private void value(String s) {
+        separate();
+        string(s);
+        comma = true;
+    }
+
+    private void stringOrNull(String s) {
+        if (s.isEmpty()) {
+            nullValue();
+        } else {
+            value(s);
+        }
+    }
+
+    private void strings(List<String> l) {
+        beginArray();
+        for (String s : l) {
+            value(s);
+        }
+        endArray();
+    }
+
+    private void value(long n) {
+        separate();
+        if (n == Long.MIN_VALUE) {
+            ascii("-9223372036854775808");
+        } else {
+            if (n < 0) {
+                put((byte) '-');
+                n = -n;
+            }
+            int digits = 1;
+            for (long x = n; x >= 10; x /= 10) {
+                digits++;
+            }
+            ensure(digits);
+            for (int i = len + digits - 1; i >= len; i--) {
+                buf[i] = (byte) ('0' + n % 10);
+                n /= 10;
+            }
+            len += digits;
+        }
+        comma = true;
+    }
+
+    private void value(boolean b) {
+        separate();
+        ascii(b ? "true" : "false");
+        comma = true;
+    }
+
+    private void nullValue() {
+        separate();
+        ascii("null");
+        comma = true;
+    }
+
+    private void bytesOrNull(ByteString bs) {
+        if (bs.isEmpty()) {
+            nullValue();
+        } else {
+            value(bs);
+        }
+    }
+
+    private void value(ByteString bs) {
+        separate();
+        int n = bs.size();
+        ensure((n + 2) / 3 * 4 + 2);
+        buf[len++] = '"';
+        ByteString.ByteIterator it = bs.iterator();
+        for (int i = 0; i + 3 <= n; i += 3) {
+            int v = (it.nextByte() & 0xff) << 16 | (it.nextByte() & 0xff) << 8 | (it.nextByte() & 0xff);
+            buf[len++] = BASE64[v >>> 18];
+            buf[len++] = BASE64[v >>> 12 & 0x3f];
+            buf[len++] = BASE64[v >>> 6 & 0x3f];
+            buf[len++] = BASE64[v & 0x3f];
+        }
+        int rest = n % 3;
+        if (rest > 0) {
+            int v = (it.nextByte() & 0xff) << 16 | (rest == 2 ? (it.nextByte() & 0xff) << 8 : 0);
+            buf[len++] = BASE64[v >>> 18];
+            buf[len++] = BASE64[v >>> 12 & 0x3f];
+            buf[len++] = rest == 2 ? BASE64[v >>> 6 & 0x3f] : (byte) '=';
+            buf[len++] = '=';
+        }
+        buf[len++] = '"';
+        comma = true;
+    }
+
+    private void string(String s) {
+        int n = s.length();
+        ensure(n + 2);
+        buf[len++] = '"';
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80 && c >= 0x20 && c != '"' && c != '\\' && c != 0x7f) {
+                ensure(1);
+                buf[len++] = (byte) c;
+            } else if (c == '"' || c == '\\') {
+                ensure(2);
+                buf[len++] = '\\';
+                buf[len++] = (byte) c;
+            } else if (c < 0x20 || (c >= 0x7f && c <= 0x9f) || c == 0x2028 || c == 0x2029) {
+                escape(c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buf[len++] = (byte) (0xc0 | c >> 6);
+                buf[len++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    ensure(4);
+                    buf[len++] = (byte) (0xf0 | cp >> 18);
+                    buf[len++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                    buf[len++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                    buf[len++] = (byte) (0x80 | cp & 0x3f);
+                } else {
+                    // an unpaired surrogate is encoded as '?' like String.getBytes
+                    ensure(1);
+                    buf[len++] = '?';
+                }
+            } else {
+                ensure(3);
+                buf[len++] = (byte) (0xe0 | c >> 12);
+                buf[len++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buf[len++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        ensure(1);
+        buf[len++] = '"';
+    }
+
+    private void escape(char c) {
+        ensure(6);
+        buf[len++] = '\\';
+        switch (c) {
+            case '\b':
+                buf[len++] = 'b';
+                return;
+            case '\t':
+                buf[len++] = 't';
+                return;
+            case '\n':
+                buf[len++] = 'n';
+                return;
+            case '\f':
+                buf[len++] = 'f';
+                return;
+            case '\r':
+                buf[len++] = 'r';
+                return;
+            default:
+                buf[len++] = 'u';
+                buf[len++] = HEX[c >> 12 & 0xf];
+                buf[len++] = HEX[c >> 8 & 0xf];
+                buf[len++] = HEX[c >> 4 & 0xf];
+                buf[len++] = HEX[c & 0xf];
+        }
+    }
+
+    private void ascii(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buf[len++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        buf[len++] = b;
+    }
+
+    private void ensure(int n) {
+        if (len + n > buf.length) {
+            byte[] b = new byte[Math.max(buf.length * 2, len + n)];
+            System.arraycopy(buf, 0, b, 0, len);
+            buf = b;
+        }
+    }
+}
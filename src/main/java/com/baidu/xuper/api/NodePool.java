@@ -0,0 +1,400 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * clients of several nodes of one chain with latency aware routing.
+ * Every call on a node updates the EWMA latency of that node, and the blockchain status of every node is probed
+ * periodically to know how far it lags behind the highest one. Reads go to the healthy node of lowest
+ * latency * (in flight + 1), writes to the same among the write nodes. hedgedRead sends the read to a second
+ * node when the first one is slower than its p95 latency. A node failed with UNAVAILABLE,
+ * DEADLINE_EXCEEDED or RESOURCE_EXHAUSTED maxFailures times in a row is ejected, and readmitted by the first
+ * successful probe or call after ejectMillis.
+ * <pre>
+ * NodePool pool = new NodePool(Arrays.asList("10.0.0.1:37101", "10.0.0.2:37101", "10.0.0.3:37101"));
+ * BigInteger balance = pool.read(c -&gt; c.getBalance("XC1111111111111111@xuper"));
+ * Transaction tx = pool.write(c -&gt; c.transfer(account, to, amount, "0"));
+ * </pre>
+ */
+public final class NodePool implements AutoCloseable {
+    private static final double ALPHA = 0.3;
+
+    private final List<Node> nodes;
+    private final ScheduledExecutorService scheduler;
+    private volatile String chainName = "xuper";
+    private volatile long maxLag = 3;
+    private volatile int maxFailures = 3;
+    private volatile long ejectMillis = 30000;
+    private volatile long minHedgeDelayMillis = 5;
+    private volatile long defaultHedgeDelayMillis = 100;
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param targets the addresses of nodes, like 127.0.0.1:37101. All of them take writes.
+     */
+    public NodePool(List<String> targets) {
+        this(targets, targets);
+    }
+
+    /**
+     * @param targets      the addresses of nodes
+     * @param writeTargets the addresses in targets which take writes first
+     */
+    public NodePool(List<String> targets, List<String> writeTargets) {
+        this(targets, writeTargets, 5000);
+    }
+
+    /**
+     * @param targets         the addresses of nodes
+     * @param writeTargets    the addresses in targets which take writes first
+     * @param probeIntervalMs how often the blockchain status of nodes is queried, 0 to not probe
+     */
+    public NodePool(List<String> targets, List<String> writeTargets, long probeIntervalMs) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("no target");
+        }
+        List<Node> ns = new ArrayList<>(targets.size());
+        for (String target : targets) {
+            ns.add(new Node(target, writeTargets.contains(target)));
+        }
+        this.nodes = Collections.unmodifiableList(ns);
+        if (probeIntervalMs > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "xuper-node-pool");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::probe, 0, probeIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @param name name of chain, set to the client of every node
+     * @return this pool
+     */
+    public NodePool setChainName(String name) {
+        this.chainName = name;
+        for (Node n : nodes) {
+            n.client.setChainName(name);
+        }
+        return this;
+    }
+
+    /**
+     * @param maxLag the max count of blocks a node may be behind the highest one to take calls
+     * @return this pool
+     */
+    public NodePool setMaxLag(long maxLag) {
+        this.maxLag = maxLag;
+        return this;
+    }
+
+    /**
+     * @param maxFailures the count of failed calls in a row to eject a node
+     * @param ejectMillis how long an ejected node is not used at least
+     * @return this pool
+     */
+    public NodePool setEjection(int maxFailures, long ejectMillis) {
+        this.maxFailures = maxFailures;
+        this.ejectMillis = ejectMillis;
+        return this;
+    }
+
+    /**
+     * @param minDelayMillis     the min delay before a hedged request
+     * @param defaultDelayMillis the delay before a hedged request while the node has few latency samples
+     * @return this pool
+     */
+    public NodePool setHedgeDelay(long minDelayMillis, long defaultDelayMillis) {
+        this.minHedgeDelayMillis = minDelayMillis;
+        this.defaultHedgeDelayMillis = defaultDelayMillis;
+        return this;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the client of node for reads
+     */
+    public XuperClient forRead() {
+        return select(false, null).client;
+    }
+
+    /**
+     * @return the client of node for writes
+     */
+    public XuperClient forWrite() {
+        return select(true, null).client;
+    }
+
+    /**
+     * run a read on the best node, retried on the next best one if the node is unavailable.
+     *
+     * @param call the call, like c -&gt; c.queryTx(txid)
+     * @return the result of call
+     */
+    public <T> T read(Function<XuperClient, T> call) {
+        List<Node> tried = new ArrayList<>();
+        while (true) {
+            Node n = select(false, tried);
+            try {
+                return call.apply(n.client);
+            } catch (RuntimeException e) {
+                tried.add(n);
+                if (!isTransient(e) || tried.size() >= nodes.size()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * run an idempotent read on the best node, and the same read on the next best node if no answer comes
+     * within the p95 latency of the first node. The first answer is returned and the other call is cancelled.
+     * Use it for queryTx, queryBlock*, getBalance* and preExec based queries, never for writes.
+     *
+     * @param call the call, like c -&gt; c.getBalance(address)
+     * @return the result of call
+     */
+    public <T> T hedgedRead(Function<XuperClient, T> call) {
+        Node first = select(false, null);
+        Node second = nodes.size() > 1 ? select(false, Collections.singletonList(first)) : null;
+        try {
+            return HedgedCall.run(hedgeExecutor, () -> call.apply(first.client),
+                    second == null ? null : () -> call.apply(second.client), first.hedgeDelayNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * run a write on the best write node. It is not retried because the node may have taken it.
+     *
+     * @param call the call, like c -&gt; c.transfer(account, to, amount, fee)
+     * @return the result of call
+     */
+    public <T> T write(Function<XuperClient, T> call) {
+        return call.apply(select(true, null).client);
+    }
+
+    /**
+     * @param tx the signed transaction
+     * @return tx
+     */
+    public Transaction send(Transaction tx) {
+        return write(tx::send);
+    }
+
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        hedgeExecutor.shutdownNow();
+        for (Node n : nodes) {
+            n.client.close();
+        }
+    }
+
+    Node select(boolean write, List<Node> exclude) {
+        long now = System.currentTimeMillis();
+        long top = 0;
+        for (Node n : nodes) {
+            top = Math.max(top, n.height);
+        }
+        Node best = null;
+        int bestRank = Integer.MAX_VALUE;
+        double bestScore = Double.MAX_VALUE;
+        for (Node n : nodes) {
+            if (exclude != null && exclude.contains(n)) {
+                continue;
+            }
+            // prefer in order: caught up write node for writes, caught up node, lagging node,
+            // ejected node whose time has passed, ejected node
+            int rank;
+            long ejectedUntil = n.ejectedUntil;
+            boolean caughtUp = n.height < 0 || top - n.height <= maxLag;
+            if (ejectedUntil == 0) {
+                rank = caughtUp ? (write && !n.write ? 1 : 0) : 2;
+            } else {
+                rank = ejectedUntil <= now ? 3 : 4;
+            }
+            double score = n.latencyNanos * (n.inFlight.get() + 1);
+            if (rank < bestRank || rank == bestRank && score < bestScore) {
+                best = n;
+                bestRank = rank;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            throw new IllegalStateException("no node to call");
+        }
+        return best;
+    }
+
+    private void probe() {
+        for (Node n : nodes) {
+            try {
+                XchainOuterClass.BCStatus status = n.client.getBlockchainStatus(chainName);
+                onProbe(n, status.getMeta().getTrunkHeight());
+            } catch (RuntimeException e) {
+                // the failure is counted by the interceptor
+            }
+        }
+    }
+
+    void onProbe(Node n, long height) {
+        n.height = height;
+        n.readmit();
+    }
+
+    private static boolean isTransient(Throwable t) {
+        return HedgedCall.isTransient(t);
+    }
+
+    public class Node {
+        private final String target;
+        private final boolean write;
+        private final XuperClient client;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double latencyNanos;
+        private final long[] samples = new long[256];
+        // the count of samples, at most samples.length, and the slot of the next one
+        private int sampleCount;
+        private int sampleIndex;
+        private int sinceSort;
+        private long p95Nanos;
+        private volatile long height = -1;
+        // 0 if admitted, else the time since which the node may be readmitted
+        private volatile long ejectedUntil;
+        private int failures;
+
+        Node(String target, boolean write) {
+            this.target = target;
+            this.write = write;
+            this.client = new XuperClient(target, Integer.MAX_VALUE, true, null, new Tracker());
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public XuperClient getClient() {
+            return client;
+        }
+
+        public double getLatencyMillis() {
+            return latencyNanos / 1e6;
+        }
+
+        /**
+         * @return the trunk height of last probe, -1 if not probed
+         */
+        public long getHeight() {
+            return height;
+        }
+
+        public boolean isEjected() {
+            return ejectedUntil != 0;
+        }
+
+        synchronized void record(long nanos, boolean ok) {
+            if (ok) {
+                latencyNanos = latencyNanos == 0 ? nanos : ALPHA * nanos + (1 - ALPHA) * latencyNanos;
+                samples[sampleIndex] = nanos;
+                sampleIndex = (sampleIndex + 1) % samples.length;
+                sampleCount = Math.min(sampleCount + 1, samples.length);
+                if (++sinceSort == 32) {
+                    sinceSort = 0;
+                    long[] sorted = Arrays.copyOf(samples, sampleCount);
+                    Arrays.sort(sorted);
+                    p95Nanos = sorted[(int) (sorted.length * 0.95)];
+                }
+                readmit();
+                return;
+            }
+            // a failure of an ejected node on trial ejects it again
+            if (++failures >= maxFailures || ejectedUntil != 0) {
+                ejectedUntil = System.currentTimeMillis() + ejectMillis;
+            }
+        }
+
+        /**
+         * @return the p95 latency of the last 256 calls, not less than the min hedge delay
+         */
+        synchronized long hedgeDelayNanos() {
+            long p95 = sampleCount < 32 ? TimeUnit.MILLISECONDS.toNanos(defaultHedgeDelayMillis) : p95Nanos;
+            return Math.max(p95, TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis));
+        }
+
+        synchronized void readmit() {
+            if (ejectedUntil == 0) {
+                failures = 0;
+            } else if (ejectedUntil <= System.currentTimeMillis()) {
+                ejectedUntil = 0;
+                failures = 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return target + "(latency=" + getLatencyMillis() + "ms, height=" + height + ", ejected=" + isEjected() + ")";
+        }
+
+        // measure every call on the channel of this node
+        private class Tracker implements ClientInterceptor {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions, Channel next) {
+                return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                        boolean unary = method.getType() == MethodDescriptor.MethodType.UNARY;
+                        long start = System.nanoTime();
+                        if (unary) {
+                            inFlight.incrementAndGet();
+                        }
+                        super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                            @Override
+                            public void onClose(Status status, Metadata trailers) {
+                                if (unary) {
+                                    inFlight.decrementAndGet();
+                                    if (status.isOk()) {
+                                        record(System.nanoTime() - start, true);
+                                    } else if (isTransient(status.asRuntimeException())) {
+                                        record(0, false);
+                                    }
+                                }
+                                super.onClose(status, trailers);
+                            }
+                        }, headers);
+                    }
+                };
+            }
+        }
+    }
+}
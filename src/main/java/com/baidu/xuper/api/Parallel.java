@@ -0,0 +1,45 @@
+package com.baidu.xuper.api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+
+/**
+ * run a task for indexes 0..n-1 in chunks on an executor and wait for all of them.
+ */
+class Parallel {
+    private Parallel() {
+    }
+
+    /**
+     * @param executor    the executor to run chunks on
+     * @param parallelism the expected parallelism of executor, a batch is split into 4 chunks per thread
+     * @param n           the count of indexes
+     * @param task        the task of one index
+     */
+    static void forEach(Executor executor, int parallelism, int n, IntConsumer task) {
+        if (n == 0) {
+            return;
+        }
+        int chunks = Math.min(n, parallelism * 4);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) n * c / chunks);
+            int to = (int) ((long) n * (c + 1) / chunks);
+            futures[c] = CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    task.accept(i);
+                }
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.baidu.xuper.api;
 
-import com.alibaba.fastjson.JSON;
 import com.baidu.xuper.config.Config;
 import com.baidu.xuper.crypto.Crypto;
 import com.baidu.xuper.crypto.xchain.hash.Hash;
@@ -77,7 +76,23 @@ public class Proposal {
         return this;
     }
 
+    /**
+     * run the contract call on the node without making a transaction, the response may come from the
+     * ContractQueryCache of client.
+     *
+     * @param client the client
+     * @return the transaction holding the contract response, not to be sent
+     */
     public Transaction preExec(XuperClient client) {
+        XchainOuterClass.InvokeRPCRequest request = newInvokeRPCRequest();
+        ContractQueryCache cache = client.getContractQueryCache();
+        XchainOuterClass.InvokeRPCResponse invokeRPCResponse = cache == null
+                ? client.getBlockingClient().preExec(request)
+                : cache.get(request, () -> client.getBlockingClient().preExec(request));
+        return new Transaction(invokeRPCResponse, this, client.getConfig());
+    }
+
+    XchainOuterClass.InvokeRPCRequest newInvokeRPCRequest() {
         ArrayList<XchainOuterClass.InvokeRequest> requests = new ArrayList<>();
         requests.add(XchainOuterClass.InvokeRequest.newBuilder()
                 .setModuleName(this.moduleName)
@@ -92,60 +107,47 @@ public class Proposal {
                 .setInitiator(this.initiator.getAKAddress())
                 .addAllAuthRequire(this.authRequire)
                 .build();
-        XchainOuterClass.InvokeRPCResponse invokeRPCResponse = client.getBlockingClient().preExec(request);
-        return new Transaction(invokeRPCResponse, this);
+        return request;
     }
 
     public Transaction build(XuperClient client) {
-        if (this.initiator == null) {
-            throw new RuntimeException("missing initiator");
-        }
-
-        XchainOuterClass.Header header = Common.newHeader();
-        XchainOuterClass.InvokeRequest.Builder invokeRequestBuilder = null;
-        if (moduleName != null && contractName != null && methodName != null && args != null) {
-            invokeRequestBuilder = XchainOuterClass.InvokeRequest.newBuilder();
-            invokeRequestBuilder.setModuleName(moduleName)
-                    .setMethodName(methodName)
-                    .setContractName(contractName)
-                    .putAllArgs(args);
-            // transfer to contract
-            if (Objects.equals(this.to, contractName)) {
-                invokeRequestBuilder.setAmount(this.amount.toString());
-            }
-        }
-        XchainOuterClass.InvokeRequest invokeRequest = null;
-        if (invokeRequestBuilder != null) {
-            invokeRequest = invokeRequestBuilder.build();
-        }
-
-        int extAmount = 0;
+        Config config = client.getConfig();
+        XchainOuterClass.PreExecWithSelectUTXORequest request = newPreExecWithSelectUTXORequest(config);
         try {
-            if (Config.getInstance().getComplianceCheck().isNeedComplianceCheck()) {
-                if (Config.getInstance().getComplianceCheck().isNeedComplianceCheckFee()) {
-                    extAmount = Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceFee();
-                }
+            XchainOuterClass.PreExecWithSelectUTXOResponse pr;
+            if (config.getComplianceCheck().isNeedComplianceCheck()) {
+                XendorserOuterClass.EndorserResponse r = client.requireXendorserClient(config).blockingEndorserCall(newPreExecWithFeeRequest(request));
+                pr = JsonReader.preExecWithSelectUTXOResponse(r.getResponseData());
+            } else {
+                pr = client.getBlockingClient().preExecWithSelectUTXO(request);
             }
+
+            Common.checkResponseHeader(pr.getHeader(), "PreExec");
+            return new Transaction(pr, this, client, config);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+    }
 
-        XchainOuterClass.InvokeRPCRequest.Builder invokeRPCBuilder = XchainOuterClass.InvokeRPCRequest.newBuilder()
-                .setHeader(header)
-                .setBcname(chainName)
-                .setInitiator(initiator.getAKAddress());
-
-        if (this.authRequire != null) {
-            invokeRPCBuilder.addAllAuthRequire(this.authRequire);
-        } else {
-            invokeRPCBuilder.addAuthRequire(this.initiator.getAuthRequireId());
+    /**
+     * build and sign the PreExecWithSelectUTXO request of this proposal, without sending it.
+     *
+     * @param config the config of client
+     * @return the request for preExecWithSelectUTXO
+     */
+    XchainOuterClass.PreExecWithSelectUTXORequest newPreExecWithSelectUTXORequest(Config config) {
+        if (this.initiator == null) {
+            throw new RuntimeException("missing initiator");
         }
 
-        if (invokeRequest != null) {
-            invokeRPCBuilder.addRequests(invokeRequest);
-        }
+        XchainOuterClass.Header header = Common.newHeader();
+        XchainOuterClass.InvokeRPCRequest invokeRPCRequest = newPreExecRequest(header);
 
-        XchainOuterClass.InvokeRPCRequest invokeRPCRequest = invokeRPCBuilder.build();
+        int extAmount = 0;
+        Config.ComplianceCheck complianceCheck = config.getComplianceCheck();
+        if (complianceCheck.isNeedComplianceCheck() && complianceCheck.isNeedComplianceCheckFee()) {
+            extAmount = complianceCheck.getComplianceCheckEndorseServiceFee();
+        }
 
         long amount = 0;
         if (this.amount != null) {
@@ -161,7 +163,7 @@ public class Proposal {
             byte[] hash = Hash.doubleSha256((chainName + initiator.getAKAddress() + amount + false).getBytes());
 
 //            byte[] sign = initiator.getKeyPair().sign(hash);
-            Crypto cli = CryptoClient.getCryptoClient();
+            Crypto cli = CryptoClient.getCryptoClient(config);
             byte[] sign = cli.signECDSA(hash, initiator.getKeyPair().getPrivateKey());
 
             XchainOuterClass.SignatureInfo signature = XchainOuterClass.SignatureInfo.newBuilder()
@@ -169,7 +171,7 @@ public class Proposal {
                     .setSign(ByteString.copyFrom(sign))
                     .build();
 
-            XchainOuterClass.PreExecWithSelectUTXORequest request = XchainOuterClass.PreExecWithSelectUTXORequest.newBuilder()
+            return XchainOuterClass.PreExecWithSelectUTXORequest.newBuilder()
                     .setHeader(header)
                     .setBcname(chainName)
                     .setAddress(initiator.getAKAddress())
@@ -177,81 +179,63 @@ public class Proposal {
                     .setSignInfo(signature)
                     .setRequest(invokeRPCRequest)
                     .build();
-
-            XchainOuterClass.PreExecWithSelectUTXOResponse pr;
-            if (Config.hasConfigFile() && Config.getInstance().getComplianceCheck().isNeedComplianceCheck()) {
-                XendorserOuterClass.EndorserResponse r = client.getXendorserClient().getBlockingClient().endorserCall(XendorserOuterClass.EndorserRequest.newBuilder()
-                        .setHeader(header)
-                        .setBcName(chainName)
-                        .setRequestData(ByteString.copyFrom(pb2JsonString(request).getBytes()))
-                        .setRequestName("PreExecWithFee")
-                        .build());
-
-                pr = JsonUtils.json2PreExecWithSelUTXO(new String(r.getResponseData().toByteArray()));
-            } else {
-                pr = client.getBlockingClient().preExecWithSelectUTXO(request);
-            }
-
-            Common.checkResponseHeader(pr.getHeader(), "PreExec");
-            return new Transaction(pr, this, client);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private String pb2JsonString(XchainOuterClass.PreExecWithSelectUTXORequest request) {
-        LinkedHashMap<String, Object> m = new LinkedHashMap<>();
-        if (!request.getBcname().isEmpty()) {
-            m.put("bcname", request.getBcname());
+    /**
+     * @param header the header of request
+     * @return the contract call of this proposal to preExec, with no request if it calls no contract
+     */
+    XchainOuterClass.InvokeRPCRequest newPreExecRequest(XchainOuterClass.Header header) {
+        XchainOuterClass.InvokeRequest.Builder invokeRequestBuilder = null;
+        if (moduleName != null && contractName != null && methodName != null && args != null) {
+            invokeRequestBuilder = XchainOuterClass.InvokeRequest.newBuilder();
+            invokeRequestBuilder.setModuleName(moduleName)
+                    .setMethodName(methodName)
+                    .setContractName(contractName)
+                    .putAllArgs(args);
+            // transfer to contract
+            if (Objects.equals(this.to, contractName)) {
+                invokeRequestBuilder.setAmount(this.amount.toString());
+            }
         }
-
-        if (!request.getAddress().isEmpty()) {
-            m.put("address", request.getAddress());
+        XchainOuterClass.InvokeRequest invokeRequest = null;
+        if (invokeRequestBuilder != null) {
+            invokeRequest = invokeRequestBuilder.build();
         }
 
-        m.put("totalAmount", request.getTotalAmount());
+        XchainOuterClass.InvokeRPCRequest.Builder invokeRPCBuilder = XchainOuterClass.InvokeRPCRequest.newBuilder()
+                .setHeader(header)
+                .setBcname(chainName)
+                .setInitiator(initiator.getAKAddress());
 
-        LinkedHashMap<String, Object> m1 = new LinkedHashMap<>();
-        if (!request.getBcname().isEmpty()) {
-            m1.put("bcname", request.getBcname());
+        if (this.authRequire != null) {
+            invokeRPCBuilder.addAllAuthRequire(this.authRequire);
+        } else {
+            invokeRPCBuilder.addAuthRequire(this.initiator.getAuthRequireId());
         }
 
-        m1.put("initiator", request.getRequest().getInitiator());
-        m1.put("auth_require", request.getRequest().getAuthRequireList());
-
-        ArrayList<Object> l = new ArrayList<>();
-        for (XchainOuterClass.InvokeRequest r : request.getRequest().getRequestsList()) {
-            LinkedHashMap<String, Object> m2 = new LinkedHashMap<>();
-            if (!r.getModuleName().isEmpty()) {
-                m2.put("module_name", r.getModuleName());
-            }
-            if (!r.getContractName().isEmpty()) {
-                m2.put("contract_name", r.getContractName());
-            }
-            if (!r.getMethodName().isEmpty()) {
-                m2.put("method_name", r.getMethodName());
-            }
-
-            if (r.getArgsMap().size() > 0) {
-                LinkedHashMap<String, Object> m3 = new LinkedHashMap<>();
-                for (Map.Entry<String, ByteString> entry : r.getArgsMap().entrySet()) {
-                    m3.put(entry.getKey(), entry.getValue().toByteArray());
-                }
-                m2.put("args", m3);
-            }
-
-            if (!r.getAmount().isEmpty()) {
-                m2.put("amount", r.getAmount());
-            }
-
-            l.add(m2);
+        if (invokeRequest != null) {
+            invokeRPCBuilder.addRequests(invokeRequest);
         }
 
-        if (l.size() > 0) {
-            m1.put("requests", l);
-        }
+        return invokeRPCBuilder.build();
+    }
 
-        m.put("request", m1);
-        return JSON.toJSONString(m);
+    /**
+     * wrap the PreExecWithSelectUTXO request into an endorser request for compliance check mode.
+     *
+     * @param request the request from newPreExecWithSelectUTXORequest
+     * @return the request for endorserCall
+     */
+    XendorserOuterClass.EndorserRequest newPreExecWithFeeRequest(XchainOuterClass.PreExecWithSelectUTXORequest request) {
+        return XendorserOuterClass.EndorserRequest.newBuilder()
+                .setHeader(request.getHeader())
+                .setBcName(chainName)
+                .setRequestData(JsonWriter.preExecWithFee(request))
+                .setRequestName("PreExecWithFee")
+                .build();
     }
 }
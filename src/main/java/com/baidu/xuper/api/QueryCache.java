@@ -0,0 +1,246 @@
+package com.baidu.xuper.api;
+
+import com.google.protobuf.MessageLite;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * a LRU cache of query responses bounded by their serialized size.
+ * Concurrent misses of the same key share one request to the node. XuperClient puts blocks below the irreversible
+ * height and transactions in them here forever, and the blockchain status for statusTtl.
+ * <pre>
+ * client.setQueryCache(new QueryCache(64 * 1024 * 1024));
+ * </pre>
+ */
+public class QueryCache {
+    // map entry, key and object headers
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<MessageLite>> loading = new ConcurrentHashMap<>();
+    private long weight;
+    private long statusTtlMillis = 1000;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxWeight the max total serialized size of cached responses in bytes
+     */
+    public QueryCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive");
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @param ttl  how long getBlockchainStatus is answered from cache
+     * @param unit the unit of ttl
+     * @return this cache
+     */
+    public QueryCache setStatusTtl(long ttl, TimeUnit unit) {
+        this.statusTtlMillis = unit.toMillis(ttl);
+        return this;
+    }
+
+    long getStatusTtlMillis() {
+        return statusTtlMillis;
+    }
+
+    /**
+     * get the cached response of key or load it. Concurrent callers of a missing key wait for the first one.
+     *
+     * @param key    the key
+     * @param loader send the request to node
+     * @param ttl    how long the loaded response is cached in milliseconds, 0 to not cache it
+     * @return the response
+     */
+    @SuppressWarnings("unchecked")
+    <V extends MessageLite> V get(String key, Supplier<V> loader, ToLongFunction<V> ttl) {
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null) {
+                if (e.expireAt > System.currentTimeMillis()) {
+                    hits.increment();
+                    return (V) e.value;
+                }
+                remove(key);
+            }
+        }
+        misses.increment();
+        CompletableFuture<MessageLite> mine = new CompletableFuture<>();
+        CompletableFuture<MessageLite> other = loading.putIfAbsent(key, mine);
+        if (other != null) {
+            coalesced.increment();
+            try {
+                return (V) other.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+        try {
+            V value = loader.get();
+            long millis = ttl.applyAsLong(value);
+            if (millis > 0) {
+                put(key, value, millis);
+            }
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private synchronized void put(String key, MessageLite value, long ttlMillis) {
+        long w = value.getSerializedSize() + key.length() * 2L + ENTRY_OVERHEAD;
+        if (w > maxWeight) {
+            return;
+        }
+        long expireAt = ttlMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + ttlMillis;
+        remove(key);
+        entries.put(key, new Entry(value, w, expireAt));
+        weight += w;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            weight -= it.next().getValue().weight;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key) {
+        Entry e = entries.remove(key);
+        if (e != null) {
+            weight -= e.weight;
+        }
+    }
+
+    /**
+     * @param keys the keys to remove
+     */
+    synchronized void invalidate(Predicate<String> keys) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (keys.test(e.getKey())) {
+                weight -= e.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return the counters of cache
+     */
+    public Stats stats() {
+        synchronized (this) {
+            return new Stats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(), entries.size(), weight);
+        }
+    }
+
+    private static class Entry {
+        final MessageLite value;
+        final long weight;
+        final long expireAt;
+
+        Entry(MessageLite value, long weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+    }
+
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long coalesced;
+        private final long evictions;
+        private final int size;
+        private final long weight;
+
+        Stats(long hits, long misses, long coalesced, long evictions, int size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.coalesced = coalesced;
+            this.evictions = evictions;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the count of lookups not found in cache, including the coalesced ones
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the count of misses which waited for the request of another caller
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * @return the count of requests sent to node
+         */
+        public long getLoads() {
+            return misses - coalesced;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the total weight of entries in bytes
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", coalesced=" + coalesced + ", evictions=" + evictions
+                    + ", size=" + size + ", weight=" + weight;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.crypto.Crypto;
+import com.baidu.xuper.crypto.xchain.sign.Ecc;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * verify xuper signatures, the hex of r(32 bytes) s(32) publicKeyX(32) publicKeyY(32) message.
+ * Validated public keys and their addresses are kept in a cache, so signatures of known signers
+ * skip point validation and address hashing. A lookup takes no lock, a full cache evicts by the clock
+ * algorithm: a key used since the hand last passed it is kept once more.
+ */
+public class SignatureVerifier {
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private final Executor executor;
+    private final int parallelism;
+    private final int maxKeys;
+    private final Map<String, PublicKey> keys = new ConcurrentHashMap<>();
+    private final Object evictLock = new Object();
+    private Iterator<PublicKey> hand;
+
+    public SignatureVerifier() {
+        this(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param executor    the executor to verify on
+     * @param parallelism the count of chunks a batch is split into
+     * @param cacheSize   the max count of cached public keys
+     */
+    public SignatureVerifier(Executor executor, int parallelism, int cacheSize) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.maxKeys = cacheSize;
+    }
+
+    /**
+     * @param chainAddress the address of signer
+     * @param sig          the hex of signature
+     * @param msg          the signed message, null to skip the comparison with the message in sig
+     * @return whether the signature is made by chainAddress over msg
+     */
+    public boolean verify(String chainAddress, String sig, String msg) {
+        return verify(chainAddress, sig, msg, CryptoClient.getCryptoClient());
+    }
+
+    /**
+     * @param crypto the crypto client to hash the address of public key with, like the one of XuperClient.getConfig()
+     */
+    boolean verify(String chainAddress, String sig, String msg, Crypto crypto) {
+        if (sig.length() < 256) {
+            throw new IllegalArgumentException("signature too short");
+        }
+        PublicKey key = publicKey(sig.substring(128, 256), crypto);
+        if (!key.address.equals(chainAddress)) {
+            return false;
+        }
+        byte[] signature = Hex.decode(sig);
+        byte[] data = Arrays.copyOfRange(signature, 128, signature.length);
+        if (msg != null && !msg.equals(new String(data, StandardCharsets.UTF_8))) {
+            return false;
+        }
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(signature, 0, 32));
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(signature, 32, 64));
+
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(false, key.params);
+        return signer.verifySignature(data, r, s);
+    }
+
+    /**
+     * verify signatures in parallel, a malformed signature is reported as false.
+     *
+     * @param items the signatures
+     * @return the results in the order of items
+     */
+    public List<Boolean> verifyAll(List<Item> items) {
+        return verifyAll(items, CryptoClient.getCryptoClient());
+    }
+
+    List<Boolean> verifyAll(List<Item> items, Crypto crypto) {
+        Boolean[] results = new Boolean[items.size()];
+        Parallel.forEach(executor, parallelism, items.size(), i -> {
+            Item item = items.get(i);
+            try {
+                results[i] = verify(item.chainAddress, item.sig, item.msg, crypto);
+            } catch (RuntimeException e) {
+                results[i] = false;
+            }
+        });
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * @return the count of cached public keys
+     */
+    public int cacheSize() {
+        return keys.size();
+    }
+
+    private PublicKey publicKey(String hex, Crypto cli) {
+        PublicKey key = keys.get(hex);
+        // the address is hashed again if it was cached with another crypto
+        if (key != null && key.crypto == cli) {
+            if (!key.used) {
+                key.used = true;
+            }
+            return key;
+        }
+        ECPublicKeyParameters params;
+        if (key != null) {
+            params = key.params;
+        } else {
+            byte[] xy = Hex.decode(hex);
+            BigInteger x = new BigInteger(1, Arrays.copyOfRange(xy, 0, 32));
+            BigInteger y = new BigInteger(1, Arrays.copyOfRange(xy, 32, 64));
+            // ECPublicKeyParameters validates the point is on curve
+            params = new ECPublicKeyParameters(Ecc.curve.getCurve().createPoint(x, y), Ecc.domain);
+        }
+        key = new PublicKey(params, cli, cli.getAddressFromPublicKey(params.getQ()));
+        keys.put(hex, key);
+        if (keys.size() > maxKeys) {
+            evict();
+        }
+        return key;
+    }
+
+    // only a miss of a full cache waits here, the lock keeps the hand and the bound exact
+    private void evict() {
+        synchronized (evictLock) {
+            while (keys.size() > maxKeys) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = keys.values().iterator();
+                }
+                PublicKey key = hand.next();
+                if (key.used) {
+                    key.used = false;
+                } else {
+                    hand.remove();
+                }
+            }
+        }
+    }
+
+    private static class PublicKey {
+        final ECPublicKeyParameters params;
+        final Crypto crypto;
+        final String address;
+        volatile boolean used;
+
+        PublicKey(ECPublicKeyParameters params, Crypto crypto, String address) {
+            this.params = params;
+            this.crypto = crypto;
+            this.address = address;
+        }
+    }
+
+    public static class Item {
+        private final String chainAddress;
+        private final String sig;
+        private final String msg;
+
+        /**
+         * @param chainAddress the address of signer
+         * @param sig          the hex of signature
+         * @param msg          the signed message, null to skip the comparison with the message in sig
+         */
+        public Item(String chainAddress, String sig, String msg) {
+            this.chainAddress = chainAddress;
+            this.sig = sig;
+            this.msg = msg;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class Transaction {
     private final Proposal proposal;
@@ -20,6 +21,11 @@ public class Transaction {
     private byte[] txdigest;
     private ContractResponse contractResponse;
     private long gasUsed;
+    private XuperClient client;
+    // the config read once when the transaction is made
+    private final Config config;
+    private XchainOuterClass.Transaction complianceCheckFee;
+    private boolean needComplianceSign;
 
     /**
      * used to build a transaction from a protobuf tx
@@ -32,10 +38,12 @@ public class Transaction {
         proposal = new Proposal().setChainName(chainName);
         txBuilder = tx.toBuilder();
         pbtx = tx;
+        config = Config.getInstance();
     }
 
-    Transaction(XchainOuterClass.InvokeRPCResponse rpcResponse, Proposal proposal) {
+    Transaction(XchainOuterClass.InvokeRPCResponse rpcResponse, Proposal proposal, Config config) {
         this.proposal = proposal;
+        this.config = config;
         this.gasUsed = rpcResponse.getResponse().getGasUsed();
         if (rpcResponse.getResponse().getResponseCount() != 0) {
             this.contractResponse = new ContractResponse(rpcResponse.getResponse().getResponses(rpcResponse.getResponse().getResponseCount() - 1));
@@ -47,9 +55,23 @@ public class Transaction {
         }
     }
 
-    Transaction(XchainOuterClass.PreExecWithSelectUTXOResponse response, Proposal proposal, XuperClient client) throws Exception {
+    Transaction(XchainOuterClass.PreExecWithSelectUTXOResponse response, Proposal proposal, XuperClient client,
+                Config config) throws Exception {
+        this(response, proposal, client, config, true);
+    }
+
+    /**
+     * @param config          the config the request was built with, the transaction is built under the same one
+     * @param complianceCheck whether to call the endorser for the compliance check signature, if false and
+     *                        compliance check is needed, the caller sends newComplianceCheckRequest and calls
+     *                        addComplianceSign with the response
+     */
+    Transaction(XchainOuterClass.PreExecWithSelectUTXOResponse response, Proposal proposal, XuperClient client,
+                Config config, boolean complianceCheck) throws Exception {
         XchainOuterClass.InvokeResponse invokeResponse = response.getResponse();
         this.proposal = proposal;
+        this.client = client;
+        this.config = config;
         this.gasUsed = invokeResponse.getGasUsed();
         if (invokeResponse.getResponseCount() != 0) {
             this.contractResponse = new ContractResponse(invokeResponse.getResponses(invokeResponse.getResponseCount() - 1));
@@ -60,13 +82,13 @@ public class Transaction {
             }
         }
         try {
-            if (!Config.hasConfigFile() || !Config.getInstance().getComplianceCheck().isNeedComplianceCheck()) {
+            if (!config.getComplianceCheck().isNeedComplianceCheck()) {
                 genRealTxOnly(response, proposal);
                 return;
             }
 
             XchainOuterClass.Transaction complianceCheckTx = null;
-            if (Config.getInstance().getComplianceCheck().isNeedComplianceCheckFee()) {
+            if (config.getComplianceCheck().isNeedComplianceCheckFee()) {
                 complianceCheckTx = genComplianceCheckTx(response);
                 genRealTx(response, complianceCheckTx);
             } else {
@@ -77,9 +99,12 @@ public class Transaction {
             byte[] txid = TxEncoder.makeTxID(t);
             txBuilder.setTxid(ByteString.copyFrom(txid));
             this.pbtx = this.txBuilder.build();
-            XchainOuterClass.SignatureInfo sigInfo = complianceCheck(this.pbtx, complianceCheckTx, client);
-            this.txBuilder.addAuthRequireSigns(sigInfo);
-            this.pbtx = this.txBuilder.build();
+            this.complianceCheckFee = complianceCheckTx;
+            this.needComplianceSign = true;
+            if (complianceCheck) {
+                XendorserOuterClass.EndorserResponse r = client.requireXendorserClient(config).blockingEndorserCall(newComplianceCheckRequest());
+                addComplianceSign(r.getEndorserSign());
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -94,7 +119,7 @@ public class Transaction {
         XchainOuterClass.Transaction.Builder txBuilder = XchainOuterClass.Transaction.newBuilder()
                 .setNonce(Common.newNonce())
                 .setTimestamp(Common.getTimestamp())
-                .setVersion(Config.getInstance().getTxVersion())
+                .setVersion(config.getTxVersion())
                 .setInitiator(initiator.getAKAddress());
 
         if (proposal.desc != null) {
@@ -163,7 +188,7 @@ public class Transaction {
 
         XchainOuterClass.Transaction.Builder txBuilder = XchainOuterClass.Transaction.newBuilder()
                 .setNonce(Common.newNonce())
-                .setVersion(Config.getInstance().getTxVersion())
+                .setVersion(config.getTxVersion())
                 .setCoinbase(false)
                 .setTimestamp(Common.getTimestamp())
                 .addAllTxInputs(Arrays.asList(txInputs))
@@ -242,29 +267,43 @@ public class Transaction {
         return txOutputs.toArray(new XchainOuterClass.TxOutput[txOutputs.size()]);
     }
 
-    private XchainOuterClass.SignatureInfo complianceCheck(XchainOuterClass.Transaction tx, XchainOuterClass.Transaction fee, XuperClient client) {
-        try {
-            XendorserOuterClass.EndorserRequest.Builder builder = XendorserOuterClass.EndorserRequest.newBuilder();
-            if (fee != null) {
-                builder.setFee(fee);
-            }
+    /**
+     * @return whether the compliance check signature of endorser is still to be added
+     */
+    boolean needComplianceSign() {
+        return needComplianceSign;
+    }
 
-            String gs = JsonUtils.TxStatus2Json(XchainOuterClass.TxStatus.newBuilder()
-                    .setBcname(this.proposal.chainName)
-                    .setTx(tx)
-                    .build());
+    /**
+     * @return the ComplianceCheck request of endorser for this transaction
+     */
+    XendorserOuterClass.EndorserRequest newComplianceCheckRequest() {
+        XendorserOuterClass.EndorserRequest.Builder builder = XendorserOuterClass.EndorserRequest.newBuilder();
+        if (complianceCheckFee != null) {
+            builder.setFee(complianceCheckFee);
+        }
 
-            XendorserOuterClass.EndorserResponse r = client.getXendorserClient().getBlockingClient().endorserCall(builder
-                    .setBcName(this.proposal.chainName)
-                    .setRequestData(ByteString.copyFrom(gs.getBytes()))
-                    .setRequestName("ComplianceCheck")
-                    .build());
+        ByteString gs = JsonWriter.txStatus(XchainOuterClass.TxStatus.newBuilder()
+                .setBcname(this.proposal.chainName)
+                .setTx(this.pbtx)
+                .build());
 
-            return r.getEndorserSign();
+        return builder
+                .setBcName(this.proposal.chainName)
+                .setRequestData(gs)
+                .setRequestName("ComplianceCheck")
+                .build();
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * @param sigInfo the signature of endorser from the ComplianceCheck response
+     * @return this transaction
+     */
+    Transaction addComplianceSign(XchainOuterClass.SignatureInfo sigInfo) {
+        this.txBuilder.addAuthRequireSigns(sigInfo);
+        this.pbtx = this.txBuilder.build();
+        this.needComplianceSign = false;
+        return this;
     }
 
     private XchainOuterClass.TxInput[] genTxInput(XchainOuterClass.UtxoOutput utxoOutputs) {
@@ -341,14 +380,15 @@ public class Transaction {
 
     private XchainOuterClass.Transaction genComplianceCheckTx(XchainOuterClass.PreExecWithSelectUTXOResponse response) {
         try {
-            BigInteger totalNeed = new BigInteger(Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceFee() + "");
+            Config.ComplianceCheck complianceCheck = config.getComplianceCheck();
+            BigInteger totalNeed = new BigInteger(complianceCheck.getComplianceCheckEndorseServiceFee() + "");
             XchainOuterClass.TxInput[] txInputs = genTxInput(response.getUtxoOutput());
             XchainOuterClass.TxOutput deltaTxOutput = getDeltaTxOutput(response.getUtxoOutput(), totalNeed, this.proposal.initiator.getAKAddress());
 
             XchainOuterClass.TxOutput[] txOutputs = genTxOutput(
-                    Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceFeeAddr(),
+                    complianceCheck.getComplianceCheckEndorseServiceFeeAddr(),
                     "0",
-                    Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceFee());
+                    complianceCheck.getComplianceCheckEndorseServiceFee());
 
             if (deltaTxOutput != null) {
                 List<XchainOuterClass.TxOutput> txOutputsTemp = Arrays.asList(txOutputs);
@@ -360,7 +400,7 @@ public class Transaction {
 
             XchainOuterClass.Transaction.Builder builder = XchainOuterClass.Transaction.newBuilder();
             builder.setNonce(Common.newNonce())
-                    .setVersion(Config.getInstance().getTxVersion())
+                    .setVersion(config.getTxVersion())
                     .setCoinbase(false)
                     .addAllTxInputs(Arrays.asList(txInputs))
                     .addAllTxOutputs(Arrays.asList(txOutputs))
@@ -372,7 +412,7 @@ public class Transaction {
 
 
 //            byte[] signBytes = this.proposal.initiator.getKeyPair().sign(bytes);
-            Crypto cli = CryptoClient.getCryptoClient();
+            Crypto cli = getCrypto();
             byte[] signBytes = cli.signECDSA(bytes, this.proposal.initiator.getKeyPair().getPrivateKey());
 
 
@@ -407,7 +447,7 @@ public class Transaction {
         // add utxo outputs
         BigInteger need = BigInteger.valueOf(gas);
         if (proposal.fee != null && !proposal.fee.isEmpty()) {
-            need = new BigInteger(proposal.fee);
+            need = need.add(new BigInteger(proposal.fee));
         }
         BigInteger total = new BigInteger(utxos.getTotalSelected());
         if (proposal.to != null && proposal.amount != null) {
@@ -452,47 +492,108 @@ public class Transaction {
 
     public Transaction sign(Account singer) {
         try {
-            txdigest = TxEncoder.makeTxDigest(pbtx);
             ECKeyPair keyPair = singer.getKeyPair();
 //            byte[] sig = keyPair.sign(txdigest);
-            Crypto cli = CryptoClient.getCryptoClient();
-            byte[] sig = cli.signECDSA(txdigest, keyPair.getPrivateKey());
-
-            XchainOuterClass.SignatureInfo siginfo = XchainOuterClass.SignatureInfo.newBuilder()
-                    .setPublicKey(keyPair.getJSONPublicKey())
-                    .setSign(ByteString.copyFrom(sig))
-                    .build();
-
-            txBuilder.addAuthRequireSigns(siginfo);
-            if (singer.getAKAddress().equals(pbtx.getInitiator())) {
-                txBuilder.addInitiatorSigns(siginfo);
-            }
-            pbtx = txBuilder.build();
-            return this;
+            Crypto cli = getCrypto();
+            byte[] sig = cli.signECDSA(digest(), keyPair.getPrivateKey());
+            return addSignature(singer, sig);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * compute the digest to sign, signatures are not part of it.
+     *
+     * @return the digest of transaction
+     */
+    byte[] digest() {
+        txdigest = TxEncoder.makeTxDigest(pbtx);
+        return txdigest;
+    }
+
+    /**
+     * attach a signature made over digest() by singer.
+     *
+     * @param singer the account which signed
+     * @param sig    the signature
+     * @return this transaction
+     */
+    Transaction addSignature(Account singer, byte[] sig) {
+        XchainOuterClass.SignatureInfo siginfo = XchainOuterClass.SignatureInfo.newBuilder()
+                .setPublicKey(singer.getKeyPair().getJSONPublicKey())
+                .setSign(ByteString.copyFrom(sig))
+                .build();
+
+        txBuilder.addAuthRequireSigns(siginfo);
+        if (singer.getAKAddress().equals(pbtx.getInitiator())) {
+            txBuilder.addInitiatorSigns(siginfo);
+        }
+        pbtx = txBuilder.build();
+        return this;
+    }
+
+    Account getInitiator() {
+        return proposal.initiator;
+    }
+
+    /**
+     * @return the crypto client of the config this transaction is built with
+     */
+    Crypto getCrypto() {
+        return CryptoClient.getCryptoClient(config);
+    }
+
     public Transaction debugPrint() {
         System.out.println(this.txBuilder.build().toString());
         return this;
     }
 
     public Transaction send(XuperClient client) {
+        XchainOuterClass.CommonReply response = client.getBlockingClient().postTx(newPostTxRequest());
+        Common.checkResponseHeader(response.getHeader(), "PostTx");
+        this.client = client;
+        return this;
+    }
+
+    /**
+     * wait for this transaction to be confirmed on the chain of the client it was built or sent with.
+     *
+     * @param depth the count of blocks on top of the block of transaction, 0 to complete once it is in a block
+     * @return the future completed with this transaction
+     */
+    public CompletableFuture<Transaction> awaitConfirmation(int depth) {
+        if (client == null) {
+            throw new IllegalStateException("transaction is not built or sent by a client");
+        }
+        return awaitConfirmation(client, depth);
+    }
+
+    /**
+     * @param client the client of chain, its ConfirmationTracker is used
+     * @param depth  the count of blocks on top of the block of transaction, 0 to complete once it is in a block
+     * @return the future completed with this transaction
+     */
+    public CompletableFuture<Transaction> awaitConfirmation(XuperClient client, int depth) {
+        return client.getConfirmationTracker().await(getTxid(), depth).thenApply(height -> this);
+    }
+
+    /**
+     * fill in the txid and build the PostTx request of this transaction, without sending it.
+     *
+     * @return the request for postTx
+     */
+    XchainOuterClass.TxStatus newPostTxRequest() {
         byte[] txid = TxEncoder.makeTxID(pbtx);
         txBuilder.setTxid(ByteString.copyFrom(txid));
         pbtx = txBuilder.build();
 
-        XchainOuterClass.TxStatus request = XchainOuterClass.TxStatus.newBuilder()
+        return XchainOuterClass.TxStatus.newBuilder()
                 .setHeader(Common.newHeader())
                 .setBcname(proposal.chainName)
                 .setTx(pbtx)
                 .setTxid(pbtx.getTxid())
                 .build();
-        XchainOuterClass.CommonReply response = client.getBlockingClient().postTx(request);
-        Common.checkResponseHeader(response.getHeader(), "PostTx");
-        return this;
     }
 
     public String getTxid() {
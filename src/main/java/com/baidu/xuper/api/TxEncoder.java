@@ -8,62 +8,55 @@ import com.google.protobuf.ByteString;
 import org.bouncycastle.util.encoders.Base64;
 
 import java.lang.reflect.Type;
-import java.util.LinkedHashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
+/**
+ * the json encoding of version 1 and 2 transactions, one json value per line.
+ * The json is written by hand as utf-8 straight into SHA-256, byte for byte the same as
+ * Gson with serializeNulls and disableHtmlEscaping. XuperSign and HDInfo are still written by Gson
+ * because their encoding is the reflection of the protobuf classes.
+ */
 class TxEncoder {
-    //private static int anInt;
     private static final Gson gson = new GsonBuilder()
             .serializeNulls()
             .registerTypeHierarchyAdapter(ByteString.class, new PbByteStringAdapter())
             .disableHtmlEscaping()
             .create();
-    private StringBuilder buffer;
+    private static final int SCRATCH_SIZE = 4096;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<TxEncoder> LOCAL = ThreadLocal.withInitial(TxEncoder::new);
+
+    private final MessageDigest digest = Hash.newDigest("SHA-256");
+    private final byte[] scratch = new byte[SCRATCH_SIZE];
+    private int pos;
 
     TxEncoder() {
-        buffer = new StringBuilder();
     }
 
     static byte[] makeTxDigest(XchainOuterClass.Transaction tx) {
         if (tx.getVersion() >= 3) {
-            TxEncoderV2 enc = new TxEncoderV2();
-            return enc.txDigestHashV2(tx, false);
+            return TxEncoderV2.get().txDigestHashV2(tx, false);
         }
-
-        TxEncoder enc = new TxEncoder();
-        return Hash.doubleSha256(enc.encodeTx(tx, false));
+        return LOCAL.get().txDigestHash(tx, false);
     }
 
     static byte[] makeTxID(XchainOuterClass.Transaction tx) {
         if (tx.getVersion() >= 3) {
-            TxEncoderV2 enc = new TxEncoderV2();
-            return enc.txDigestHashV2(tx, true);
+            return TxEncoderV2.get().txDigestHashV2(tx, true);
         }
-
-        TxEncoder enc = new TxEncoder();
-        return Hash.doubleSha256(enc.encodeTx(tx, true));
+        return LOCAL.get().txDigestHash(tx, true);
     }
 
-    private void encode(Object obj) {
-        String s = gson.toJson(obj);
-        buffer.append(s);
-        buffer.append("\n");
-    }
-
-    private void encode(ByteString bs) {
-        if (bs == null) {
-            String s = gson.toJson(null);
-            buffer.append(s);
-            buffer.append("\n");
-            return;
-        }
-        if (!bs.isEmpty()) {
-            encode(Base64.toBase64String(bs.toByteArray()));
-        }
-    }
+    byte[] txDigestHash(XchainOuterClass.Transaction tx, boolean needSign) {
+        pos = 0;
+        digest.reset();
 
-    byte[] encodeTx(XchainOuterClass.Transaction tx, boolean needSign) {
         for (TxInput input : tx.getTxInputsList()) {
             encode(input.getRefTxid());
             encode(input.getRefOffset());
@@ -71,14 +64,18 @@ class TxEncoder {
             encode(input.getAmount());
             encode(input.getFrozenHeight());
         }
-        Object[] txOutputs = new Object[tx.getTxOutputsCount()];
-        for (int i = 0; i < tx.getTxOutputsCount(); i++) {
-            txOutputs[i] = TxOutputBean.create(tx.getTxOutputs(i));
-        }
-        if (txOutputs.length > 0) {
-            encode(txOutputs);
+        if (tx.getTxOutputsCount() > 0) {
+            put('[');
+            for (int i = 0; i < tx.getTxOutputsCount(); i++) {
+                if (i > 0) {
+                    put(',');
+                }
+                writeTxOutput(tx.getTxOutputs(i));
+            }
+            put(']');
+            put('\n');
         } else {
-            encode(null);
+            encodeNull();
         }
 
         encode(tx.getDesc());
@@ -96,154 +93,359 @@ class TxEncoder {
             encode(output.getKey());
             encode(output.getValue());
         }
-        Object[] invokes = null;
         if (tx.getContractRequestsCount() != 0) {
-            invokes = new Object[tx.getContractRequestsCount()];
+            put('[');
             for (int i = 0; i < tx.getContractRequestsCount(); i++) {
-                invokes[i] = InvokeRequestBean.create(tx.getContractRequests(i));
+                if (i > 0) {
+                    put(',');
+                }
+                writeInvokeRequest(tx.getContractRequests(i));
             }
+            put(']');
+            put('\n');
+        } else {
+            encodeNull();
         }
-        encode(invokes);
 
         encode(tx.getInitiator());
         if (tx.getAuthRequireCount() > 0) {
-            encode(tx.getAuthRequireList().toArray());
+            put('[');
+            for (int i = 0; i < tx.getAuthRequireCount(); i++) {
+                if (i > 0) {
+                    put(',');
+                }
+                writeString(tx.getAuthRequire(i));
+            }
+            put(']');
+            put('\n');
         } else {
-            encode((Object) null);
+            encodeNull();
         }
 
         if (needSign) {
-            Object[] sigs = null;
-            if (tx.getInitiatorSignsCount() != 0) {
-                sigs = new Object[tx.getInitiatorSignsCount()];
-            }
-            for (int i = 0; i < tx.getInitiatorSignsCount(); i++) {
-                sigs[i] = SignatureInfoBean.create(tx.getInitiatorSigns(i));
-            }
-            encode(sigs);
-
-            sigs = null;
-            if (tx.getAuthRequireSignsCount() != 0) {
-                sigs = new Object[tx.getAuthRequireSignsCount()];
-            }
-            for (int i = 0; i < tx.getAuthRequireSignsCount(); i++) {
-                sigs[i] = SignatureInfoBean.create(tx.getAuthRequireSigns(i));
-            }
-            encode(sigs);
+            encodeSigns(tx.getInitiatorSignsList());
+            encodeSigns(tx.getAuthRequireSignsList());
             if (tx.hasXuperSign()) {
-                encode(tx.getXuperSign());
+                encodeByGson(tx.getXuperSign());
             }
         }
         encode(tx.getCoinbase());
         encode(tx.getAutogen());
         if (tx.getVersion() >= 2) {
             if (tx.hasHDInfo()) {
-                encode(tx.getHDInfo());
+                encodeByGson(tx.getHDInfo());
             } else {
-                encode(null);
+                encodeNull();
             }
         }
-//        try {
-//            anInt++;
-//            System.out.println("anInt:" + anInt);
-//            System.out.println("txID:" + Arrays.toString(tx.getTxid().toByteArray()));
-//            FileOutputStream f = new FileOutputStream("./tmp/tx" + anInt + ".pb");
-//            f.write(tx.toByteArray());
-//            f.close();
-//            f = new FileOutputStream("./tmp/tx" + anInt + "txt");
-//            f.write(buffer.toString().getBytes());
-//            f.close();
-//        } catch (Exception e) {
-//            throw new RuntimeException(e);
-//        }
-        return buffer.toString().getBytes();
+
+        flush();
+        try {
+            // double sha256, the first round goes into scratch
+            int n = digest.digest(scratch, 0, SCRATCH_SIZE);
+            digest.update(scratch, 0, n);
+            return digest.digest();
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private static class PbByteStringAdapter implements JsonSerializer<ByteString> {
-        public JsonElement serialize(ByteString src, Type typeOfSrc, JsonSerializationContext context) {
-            return new JsonPrimitive(Base64.toBase64String(src.toByteArray()));
+    // empty bytes are skipped, without a line.
+    private void encode(ByteString bs) {
+        if (!bs.isEmpty()) {
+            writeBase64(bs);
+            put('\n');
         }
     }
 
-    private static class TxOutputBean {
-        static Object create(TxOutput pb) {
-            LinkedHashMap<String, Object> m = new LinkedHashMap<>();
-            if (!pb.getAmount().isEmpty()) {
-                m.put("amount", pb.getAmount());
+    private void encode(String s) {
+        writeString(s);
+        put('\n');
+    }
+
+    private void encode(long v) {
+        writeLong(v);
+        put('\n');
+    }
+
+    private void encode(boolean v) {
+        writeAscii(v ? "true" : "false");
+        put('\n');
+    }
+
+    private void encodeNull() {
+        writeAscii("null");
+        put('\n');
+    }
+
+    private void encodeSigns(List<SignatureInfo> signs) {
+        if (signs.isEmpty()) {
+            encodeNull();
+            return;
+        }
+        put('[');
+        for (int i = 0; i < signs.size(); i++) {
+            if (i > 0) {
+                put(',');
             }
-            if (!pb.getToAddr().isEmpty()) {
-                m.put("to_addr", pb.getToAddr());
+            SignatureInfo pb = signs.get(i);
+            put('{');
+            boolean first = true;
+            if (!pb.getPublicKey().isEmpty()) {
+                first = writeName("PublicKey", first);
+                writeString(pb.getPublicKey());
             }
-            if (pb.getFrozenHeight() != 0) {
-                m.put("frozen_height", pb.getFrozenHeight());
+            if (!pb.getSign().isEmpty()) {
+                writeName("Sign", first);
+                writeBase64(pb.getSign());
             }
-            return m;
+            put('}');
         }
+        put(']');
+        put('\n');
     }
 
-    private static class InvokeRequestBean {
-        static Object create(InvokeRequest pb) {
-            LinkedHashMap<String, Object> m = new LinkedHashMap<>();
-            if (!pb.getMethodName().isEmpty()) {
-                m.put("module_name", pb.getModuleName());
-            }
-            if (!pb.getContractName().isEmpty()) {
-                m.put("contract_name", pb.getContractName());
-            }
-            if (!pb.getMethodName().isEmpty()) {
-                m.put("method_name", pb.getMethodName());
-            }
-            if (pb.getArgsCount() != 0) {
-                TreeMap<String, ByteString> margs = new TreeMap<>();
-                for (Map.Entry<String, ByteString> entry : pb.getArgsMap().entrySet()) {
-                    /*
-                    if (entry.getValue().isEmpty()) {
-                        margs.put(entry.getKey(), ByteString.copyFrom("".getBytes()));
-                    } else {
-                        margs.put(entry.getKey(), entry.getValue());
-                    }*/
-                    //修复 参数值为 ""时,设置了为null,造成签名和实际传输的数据不同,验签失败
-                    margs.put(entry.getKey(), entry.getValue());
+    private void encodeByGson(Object obj) {
+        byte[] b = gson.toJson(obj).getBytes(StandardCharsets.UTF_8);
+        if (b.length > SCRATCH_SIZE - pos) {
+            flush();
+            digest.update(b);
+        } else {
+            System.arraycopy(b, 0, scratch, pos, b.length);
+            pos += b.length;
+        }
+        put('\n');
+    }
+
+    private void writeTxOutput(TxOutput pb) {
+        put('{');
+        boolean first = true;
+        if (!pb.getAmount().isEmpty()) {
+            first = writeName("amount", first);
+            writeBase64(pb.getAmount());
+        }
+        if (!pb.getToAddr().isEmpty()) {
+            first = writeName("to_addr", first);
+            writeBase64(pb.getToAddr());
+        }
+        if (pb.getFrozenHeight() != 0) {
+            writeName("frozen_height", first);
+            writeLong(pb.getFrozenHeight());
+        }
+        put('}');
+    }
+
+    private void writeInvokeRequest(InvokeRequest pb) {
+        put('{');
+        boolean first = true;
+        // module_name is guarded by method_name, as it has always been
+        if (!pb.getMethodName().isEmpty()) {
+            first = writeName("module_name", first);
+            writeString(pb.getModuleName());
+        }
+        if (!pb.getContractName().isEmpty()) {
+            first = writeName("contract_name", first);
+            writeString(pb.getContractName());
+        }
+        if (!pb.getMethodName().isEmpty()) {
+            first = writeName("method_name", first);
+            writeString(pb.getMethodName());
+        }
+        if (pb.getArgsCount() != 0) {
+            first = writeName("args", first);
+            Map<String, ByteString> args = pb.getArgsMap();
+            String[] keys = args.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            put('{');
+            for (int i = 0; i < keys.length; i++) {
+                if (i > 0) {
+                    put(',');
                 }
-                m.put("args", margs);
+                writeString(keys[i]);
+                put(':');
+                writeBase64(args.get(keys[i]));
             }
-            if (pb.getResourceLimitsCount() != 0) {
-                Object[] resource_limits = new Object[pb.getResourceLimitsCount()];
-                for (int i = 0; i < pb.getResourceLimitsCount(); i++) {
-                    resource_limits[i] = ResourceLimitBean.create(pb.getResourceLimits(i));
+            put('}');
+        }
+        if (pb.getResourceLimitsCount() != 0) {
+            first = writeName("resource_limits", first);
+            put('[');
+            for (int i = 0; i < pb.getResourceLimitsCount(); i++) {
+                if (i > 0) {
+                    put(',');
                 }
-                m.put("resource_limits", resource_limits);
-            }
-            if (!pb.getAmount().isEmpty()) {
-                m.put("amount", pb.getAmount());
+                ResourceLimit limit = pb.getResourceLimits(i);
+                put('{');
+                boolean firstLimit = true;
+                if (limit.getType().getNumber() != 0) {
+                    firstLimit = writeName("type", firstLimit);
+                    writeLong(limit.getType().getNumber());
+                }
+                if (limit.getLimit() != 0) {
+                    writeName("limit", firstLimit);
+                    writeLong(limit.getLimit());
+                }
+                put('}');
             }
-            return m;
+            put(']');
+        }
+        if (!pb.getAmount().isEmpty()) {
+            writeName("amount", first);
+            writeString(pb.getAmount());
         }
+        put('}');
     }
 
-    private static class ResourceLimitBean {
-        static Object create(ResourceLimit pb) {
-            LinkedHashMap<String, Object> m = new LinkedHashMap<>();
-            if (pb.getType().getNumber() != 0) {
-                m.put("type", pb.getType().getNumber());
-            }
-            if (pb.getLimit() != 0) {
-                m.put("limit", pb.getLimit());
-            }
-            return m;
+    /**
+     * @return false, the value of first for the next member
+     */
+    private boolean writeName(String name, boolean first) {
+        if (!first) {
+            put(',');
         }
+        put('"');
+        writeAscii(name);
+        put('"');
+        put(':');
+        return false;
     }
 
-    private static class SignatureInfoBean {
-        static Object create(SignatureInfo pb) {
-            LinkedHashMap<String, Object> m = new LinkedHashMap<>();
-            if (!pb.getPublicKey().isEmpty()) {
-                m.put("PublicKey", pb.getPublicKey());
-            }
-            if (!pb.getSign().isEmpty()) {
-                m.put("Sign", pb.getSign());
+    private void writeAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            put(s.charAt(i));
+        }
+    }
+
+    private void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            writeAscii(Long.toString(v));
+            return;
+        }
+        if (v < 0) {
+            put('-');
+            v = -v;
+        }
+        if (SCRATCH_SIZE - pos < 19) {
+            flush();
+        }
+        int start = pos;
+        do {
+            scratch[pos++] = (byte) ('0' + (int) (v % 10));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = scratch[i];
+            scratch[i] = scratch[j];
+            scratch[j] = t;
+        }
+    }
+
+    private void writeBase64(ByteString bs) {
+        put('"');
+        int size = bs.size();
+        int i = 0;
+        for (; i + 3 <= size; i += 3) {
+            int n = (bs.byteAt(i) & 0xff) << 16 | (bs.byteAt(i + 1) & 0xff) << 8 | (bs.byteAt(i + 2) & 0xff);
+            put(BASE64[n >>> 18]);
+            put(BASE64[(n >>> 12) & 0x3f]);
+            put(BASE64[(n >>> 6) & 0x3f]);
+            put(BASE64[n & 0x3f]);
+        }
+        if (size - i == 1) {
+            int n = (bs.byteAt(i) & 0xff) << 16;
+            put(BASE64[n >>> 18]);
+            put(BASE64[(n >>> 12) & 0x3f]);
+            put('=');
+            put('=');
+        } else if (size - i == 2) {
+            int n = (bs.byteAt(i) & 0xff) << 16 | (bs.byteAt(i + 1) & 0xff) << 8;
+            put(BASE64[n >>> 18]);
+            put(BASE64[(n >>> 12) & 0x3f]);
+            put(BASE64[(n >>> 6) & 0x3f]);
+            put('=');
+        }
+        put('"');
+    }
+
+    // json string escaped like Gson without html escaping, encoded like String.getBytes(UTF_8)
+    private void writeString(String s) {
+        put('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    put('\\');
+                    put(c);
+                } else if (c >= 0x20) {
+                    put(c);
+                } else {
+                    put('\\');
+                    switch (c) {
+                        case '\t':
+                            put('t');
+                            break;
+                        case '\b':
+                            put('b');
+                            break;
+                        case '\n':
+                            put('n');
+                            break;
+                        case '\r':
+                            put('r');
+                            break;
+                        case '\f':
+                            put('f');
+                            break;
+                        default:
+                            put('u');
+                            put('0');
+                            put('0');
+                            put(HEX[c >> 4]);
+                            put(HEX[c & 0xf]);
+                    }
+                }
+            } else if (c < 0x800) {
+                put(0xc0 | (c >> 6));
+                put(0x80 | (c & 0x3f));
+            } else if (c == 0x2028 || c == 0x2029) {
+                writeAscii(c == 0x2028 ? "\\u2028" : "\\u2029");
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    put(0xf0 | (cp >> 18));
+                    put(0x80 | ((cp >> 12) & 0x3f));
+                    put(0x80 | ((cp >> 6) & 0x3f));
+                    put(0x80 | (cp & 0x3f));
+                } else {
+                    // malformed, replaced the same as String.getBytes
+                    put('?');
+                }
+            } else {
+                put(0xe0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3f));
+                put(0x80 | (c & 0x3f));
             }
-            return m;
+        }
+        put('"');
+    }
+
+    private void put(int b) {
+        if (pos == SCRATCH_SIZE) {
+            flush();
+        }
+        scratch[pos++] = (byte) b;
+    }
+
+    private void flush() {
+        if (pos > 0) {
+            digest.update(scratch, 0, pos);
+            pos = 0;
+        }
+    }
+
+    private static class PbByteStringAdapter implements JsonSerializer<ByteString> {
+        public JsonElement serialize(ByteString src, Type typeOfSrc, JsonSerializationContext context) {
+            return new JsonPrimitive(Base64.toBase64String(src.toByteArray()));
         }
     }
 }
@@ -3,47 +3,113 @@ package com.baidu.xuper.api;
 import com.baidu.xuper.crypto.xchain.hash.Hash;
 import com.baidu.xuper.pb.XchainOuterClass;
 import com.google.protobuf.ByteString;
-import org.apache.fluo.api.data.Bytes;
-import org.apache.fluo.api.data.Bytes.BytesBuilder;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Map;
 
 /**
  * 序列化
+ * Fields are written through a small scratch buffer straight into SHA-256, the encoded transaction
+ * is never materialized. One encoder is kept per thread, use TxEncoderV2.get().
  */
 public class TxEncoderV2 {
-    private final BytesBuilder buffer;
+    private static final int SCRATCH_SIZE = 4096;
+    private static final ThreadLocal<TxEncoderV2> LOCAL = ThreadLocal.withInitial(TxEncoderV2::new);
+
+    private final MessageDigest digest = Hash.newDigest("SHA-256");
+    private final byte[] scratch = new byte[SCRATCH_SIZE];
+    private int pos;
 
     TxEncoderV2() {
-        buffer = Bytes.builder();
+    }
+
+    /**
+     * @return the encoder of current thread
+     */
+    static TxEncoderV2 get() {
+        return LOCAL.get();
+    }
+
+    private void flush() {
+        if (pos > 0) {
+            digest.update(scratch, 0, pos);
+            pos = 0;
+        }
     }
 
     private void encode(int i) {
         encode((long) i);
-//        byte[] result = Common.intToBytes(i, 8);
-//        buffer.append(result);
     }
 
     private void encode(ByteString bs) {
-        encode((long) bs.size());
-        if (bs.size() == 0) {
+        int size = bs.size();
+        encode((long) size);
+        if (size == 0) {
             return;
         }
-        buffer.append(bs.toByteArray());
+        if (size > SCRATCH_SIZE - pos) {
+            flush();
+        }
+        // the pieces of a rope are read in place, no ByteString is made per chunk
+        for (ByteBuffer buf : bs.asReadOnlyByteBufferList()) {
+            while (buf.hasRemaining()) {
+                int n = Math.min(buf.remaining(), SCRATCH_SIZE - pos);
+                buf.get(scratch, pos, n);
+                pos += n;
+                if (pos == SCRATCH_SIZE) {
+                    flush();
+                }
+            }
+        }
     }
 
+    // the length is the count of chars while the content is utf-8, the same as the former encoder.
     private void encode(String s) {
-        encode(s.length());
-        if (s.length() == 0) {
+        int len = s.length();
+        encode(len);
+        if (len == 0) {
+            return;
+        }
+        if (len > SCRATCH_SIZE - pos) {
+            flush();
+        }
+        if (len <= SCRATCH_SIZE - pos) {
+            int start = pos;
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    pos = start;
+                    writeBytes(s.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                scratch[pos++] = (byte) c;
+            }
+            return;
+        }
+        writeBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(byte[] b) {
+        if (b.length > SCRATCH_SIZE - pos) {
+            flush();
+            digest.update(b);
             return;
         }
-        buffer.append(s.getBytes());
+        System.arraycopy(b, 0, scratch, pos, b.length);
+        pos += b.length;
     }
 
-    private void encode(long i) {
-        byte[] result = Common.longToBytes(i);
-        buffer.append(result);
+    private void encode(long v) {
+        if (SCRATCH_SIZE - pos < Long.BYTES) {
+            flush();
+        }
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            scratch[pos++] = (byte) (v >>> shift);
+        }
     }
 
     private void encode(boolean v) {
@@ -63,12 +129,7 @@ public class TxEncoderV2 {
         }
 
         // 遍历到string数组并排序
-        String[] strArray = new String[len];
-        int i = 0;
-        for (String s : maps.keySet()) {
-            strArray[i] = s;
-            i++;
-        }
+        String[] strArray = maps.keySet().toArray(new String[len]);
         Arrays.sort(strArray);
 
         for (String str : strArray) {
@@ -78,7 +139,10 @@ public class TxEncoderV2 {
     }
 
     byte[] txDigestHashV2(XchainOuterClass.Transaction tx, boolean needSign) {
-        encode(tx.getTxInputsList().size());
+        pos = 0;
+        digest.reset();
+
+        encode(tx.getTxInputsCount());
         for (XchainOuterClass.TxInput input : tx.getTxInputsList()) {
             encode(input.getRefTxid());
             encode(input.getRefOffset());
@@ -87,7 +151,7 @@ public class TxEncoderV2 {
             encode(input.getFrozenHeight());
         }
 
-        encode(tx.getTxOutputsList().size());
+        encode(tx.getTxOutputsCount());
         for (XchainOuterClass.TxOutput output : tx.getTxOutputsList()) {
             encode(output.getAmount());
             encode(output.getToAddr());
@@ -101,7 +165,7 @@ public class TxEncoderV2 {
         encode(tx.getVersion());
         encode(tx.getAutogen());
 
-        encode(tx.getTxInputsExtList().size());
+        encode(tx.getTxInputsExtCount());
         for (XchainOuterClass.TxInputExt input : tx.getTxInputsExtList()) {
             encode(input.getBucket());
             encode(input.getKey());
@@ -109,14 +173,14 @@ public class TxEncoderV2 {
             encode(input.getRefOffset());
         }
 
-        encode(tx.getTxOutputsExtList().size());
+        encode(tx.getTxOutputsExtCount());
         for (XchainOuterClass.TxOutputExt output : tx.getTxOutputsExtList()) {
             encode(output.getBucket());
             encode(output.getKey());
             encode(output.getValue());
         }
 
-        encode(tx.getContractRequestsList().size());
+        encode(tx.getContractRequestsCount());
 
         for (XchainOuterClass.InvokeRequest rep : tx.getContractRequestsList()) {
             encode(rep.getModuleName());
@@ -124,7 +188,7 @@ public class TxEncoderV2 {
             encode(rep.getMethodName());
             encode(rep.getArgsMap());
 
-            encode(rep.getResourceLimitsList().size());
+            encode(rep.getResourceLimitsCount());
             for (XchainOuterClass.ResourceLimit limit : rep.getResourceLimitsList()) {
                 encode(limit.getType().getNumber());
                 encode(limit.getLimit());
@@ -133,9 +197,9 @@ public class TxEncoderV2 {
         }
 
         encode(tx.getInitiator());
-        encode(tx.getAuthRequireList().size());
-        for (String addr : tx.getAuthRequireList()) {
-            encode(addr);
+        encode(tx.getAuthRequireCount());
+        for (int i = 0; i < tx.getAuthRequireCount(); i++) {
+            encode(tx.getAuthRequire(i));
         }
 
         if (needSign) {
@@ -152,7 +216,7 @@ public class TxEncoderV2 {
                 encode(tx.getAuthRequireSigns(i).getSign());
             }
 
-            encode(tx.getXuperSign().getPublicKeysList().size());
+            encode(tx.getXuperSign().getPublicKeysCount());
             for (int i = 0; i < tx.getXuperSign().getPublicKeysCount(); i++) {
                 encode(tx.getXuperSign().getPublicKeys(i));
             }
@@ -162,13 +226,14 @@ public class TxEncoderV2 {
         encode(tx.getHDInfo().getHdPublicKey());
         encode(tx.getHDInfo().getOriginalHash());
 
-        byte[] result = new byte[0];
+        flush();
         try {
-            result = buffer.toBytes().toArray();
-        } catch (Exception e) {
+            // double sha256, the first round goes into scratch
+            int n = digest.digest(scratch, 0, SCRATCH_SIZE);
+            digest.update(scratch, 0, n);
+            return digest.digest();
+        } catch (DigestException e) {
             throw new RuntimeException(e);
         }
-
-        return Hash.doubleSha256(result);
     }
 }
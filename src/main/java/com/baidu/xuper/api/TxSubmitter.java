@@ -0,0 +1,161 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * post signed transactions with a window of postTx calls in flight on the channel of one client.
+ * submit blocks the caller while the window is full, so a producer of transactions can not run ahead of the node.
+ */
+public class TxSubmitter {
+    public static final int DEFAULT_WINDOW = 256;
+
+    private final Function<XchainOuterClass.TxStatus, CompletableFuture<XchainOuterClass.CommonReply>> postTx;
+    private final Semaphore window;
+
+    /**
+     * @param client the client whose channel is used
+     */
+    public TxSubmitter(XuperClient client) {
+        this(client, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param client the client whose channel is used
+     * @param window the max count of postTx calls in flight
+     */
+    public TxSubmitter(XuperClient client, int window) {
+        this(request -> FutureObserver.call(client.getAsyncClient()::postTx, request), window);
+    }
+
+    /**
+     * @param postTx the async postTx call
+     * @param window the max count of postTx calls in flight
+     */
+    TxSubmitter(Function<XchainOuterClass.TxStatus, CompletableFuture<XchainOuterClass.CommonReply>> postTx, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.postTx = postTx;
+        this.window = new Semaphore(window);
+    }
+
+    /**
+     * post a signed transaction, waiting for a free slot of window first.
+     *
+     * @param tx the signed transaction
+     * @return the future of transaction, completed when the node accepted it
+     */
+    public CompletableFuture<Transaction> submit(Transaction tx) {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        CompletableFuture<XchainOuterClass.CommonReply> reply;
+        try {
+            reply = postTx.apply(tx.newPostTxRequest());
+        } catch (RuntimeException e) {
+            window.release();
+            throw e;
+        }
+        return reply.handle((response, t) -> {
+            window.release();
+            if (t != null) {
+                throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+            }
+            Common.checkResponseHeader(response.getHeader(), "PostTx");
+            return tx;
+        });
+    }
+
+    /**
+     * post signed transactions and wait for all of them.
+     *
+     * @param txs the signed transactions
+     * @return the results in the order of txs
+     */
+    public List<Result> submitAll(List<Transaction> txs) {
+        return submitAll(txs, null);
+    }
+
+    /**
+     * post signed transactions and wait for all of them, like UtxoPool.sendAll which gives the inputs of failed
+     * transactions back to pool.
+     *
+     * @param txs      the signed transactions
+     * @param onResult called with each transaction and its error, null on success, as soon as its post completes.
+     *                 All calls are done when submitAll returns. null for none
+     * @return the results in the order of txs
+     */
+    public List<Result> submitAll(List<Transaction> txs, BiConsumer<Transaction, Throwable> onResult) {
+        List<CompletableFuture<Throwable>> futures = new ArrayList<>(txs.size());
+        for (Transaction tx : txs) {
+            CompletableFuture<Transaction> f;
+            try {
+                f = submit(tx);
+            } catch (RuntimeException e) {
+                f = CompletableFuture.failedFuture(e);
+            }
+            futures.add(f.handle((r, t) -> {
+                Throwable error = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                if (onResult != null) {
+                    onResult.accept(tx, error);
+                }
+                return error;
+            }));
+        }
+        List<Result> results = new ArrayList<>(txs.size());
+        for (int i = 0; i < txs.size(); i++) {
+            Throwable error;
+            try {
+                error = futures.get(i).join();
+            } catch (CompletionException e) {
+                // onResult threw
+                error = e.getCause() != null ? e.getCause() : e;
+            }
+            results.add(new Result(txs.get(i), error));
+        }
+        return results;
+    }
+
+    /**
+     * @return the count of free slots of window
+     */
+    public int available() {
+        return window.availablePermits();
+    }
+
+    public static class Result {
+        private final Transaction transaction;
+        private final Throwable error;
+
+        Result(Transaction transaction, Throwable error) {
+            this.transaction = transaction;
+            this.error = error;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+
+        /**
+         * @return the error of posting, null if the node accepted the transaction
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
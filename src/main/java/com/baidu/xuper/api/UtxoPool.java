@@ -0,0 +1,412 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.config.Config;
+import com.baidu.xuper.crypto.Crypto;
+import com.baidu.xuper.crypto.xchain.hash.Hash;
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * client side utxo pool of one account.
+ * Utxos are seeded from selectUTXO/selectUTXOBySize, inputs of transfers are picked locally and
+ * the change outputs of sent transactions go back to the pool, so chained transfers of a hot account
+ * need no preExecWithSelectUTXO round trip.
+ * The pool assumes it is the only spender of the account, utxos spent elsewhere make the node reject the transaction.
+ * Contract invocations and compliance check mode still go through Proposal.build.
+ */
+public class UtxoPool {
+    // remember this many spent utxos, so a refill does not bring back inputs of unconfirmed transactions.
+    private static final int MAX_SPENT = 4096;
+
+    private final XuperClient client;
+    private final Account account;
+    private final String chainName;
+    private final ArrayDeque<XchainOuterClass.Utxo> available = new ArrayDeque<>();
+    private final Map<Transaction, List<XchainOuterClass.Utxo>> reserved = new IdentityHashMap<>();
+    private final LinkedHashSet<String> spent = new LinkedHashSet<>();
+    private BigInteger balance = BigInteger.ZERO;
+    private BigInteger refillAmount = BigInteger.ZERO;
+
+    /**
+     * @param client  the client to seed utxos and send transactions
+     * @param account the account whose utxos are pooled
+     */
+    public UtxoPool(XuperClient client, Account account) {
+        this(client, account, client.getChainName());
+    }
+
+    /**
+     * @param client    the client to seed utxos and send transactions
+     * @param account   the account whose utxos are pooled
+     * @param chainName name of chain
+     */
+    public UtxoPool(XuperClient client, Account account, String chainName) {
+        this.client = client;
+        this.account = account;
+        this.chainName = chainName;
+    }
+
+    /**
+     * @param amount the least amount selected from node each time the pool runs short, 0 means just the shortfall
+     * @return this pool
+     */
+    public UtxoPool setRefillAmount(BigInteger amount) {
+        this.refillAmount = amount;
+        return this;
+    }
+
+    /**
+     * @return the amount of unreserved utxos in pool
+     */
+    public synchronized BigInteger getBalance() {
+        return balance;
+    }
+
+    /**
+     * @return the count of unreserved utxos in pool
+     */
+    public synchronized int size() {
+        return available.size();
+    }
+
+    /**
+     * select utxos of at least totalNeed from node into the pool.
+     *
+     * @param totalNeed the amount to select
+     * @return the count of utxos added
+     */
+    public int seed(BigInteger totalNeed) {
+        return add(selectUTXO(totalNeed));
+    }
+
+    // the node may select utxos the pool already holds, add() drops them
+    List<XchainOuterClass.Utxo> selectUTXO(BigInteger totalNeed) {
+        XchainOuterClass.UtxoOutput out = client.getBlockingClient().selectUTXO(newUtxoInput(totalNeed));
+        Common.checkResponseHeader(out.getHeader(), "SelectUTXO");
+        return out.getUtxoListList();
+    }
+
+    /**
+     * select as many small utxos as the node allows into the pool, useful for an account with fragmented utxos.
+     *
+     * @return the count of utxos added
+     */
+    public int seedBySize() {
+        XchainOuterClass.UtxoOutput out = client.getBlockingClient().selectUTXOBySize(newUtxoInput(BigInteger.ZERO));
+        Common.checkResponseHeader(out.getHeader(), "SelectUTXOBySize");
+        return add(out.getUtxoListList());
+    }
+
+    /**
+     * build, sign and send a transfer with inputs from pool.
+     *
+     * @param to     to address
+     * @param amount transfer amount
+     * @param fee    fee
+     * @return the sent transaction
+     */
+    public Transaction transfer(String to, BigInteger amount, String fee) {
+        return transfer(to, amount, fee, null);
+    }
+
+    /**
+     * @param to     to address
+     * @param amount transfer amount
+     * @param fee    fee
+     * @param desc   transfer desc
+     * @return the sent transaction
+     */
+    public Transaction transfer(String to, BigInteger amount, String fee, String desc) {
+        Proposal p = new Proposal()
+                .setChainName(chainName)
+                .setFee(fee)
+                .setInitiator(account)
+                .transfer(to, amount);
+        if (desc != null && !desc.isEmpty()) {
+            p.setDesc(desc);
+        }
+        return send(build(p).sign());
+    }
+
+    /**
+     * build a proposal with inputs from pool, the inputs stay reserved until send or release.
+     * A contract call is preExec'd first and its gas is paid from the inputs too.
+     * Proposals which need compliance check fall back to Proposal.build.
+     *
+     * @param proposal the proposal, the initiator must be the account of pool
+     * @return the unsigned transaction
+     */
+    public Transaction build(Proposal proposal) {
+        Config config = config();
+        if (!isLocal(proposal, config)) {
+            return proposal.build(client);
+        }
+        BigInteger need = BigInteger.ZERO;
+        if (proposal.amount != null) {
+            need = need.add(proposal.amount);
+        }
+        if (proposal.fee != null && !proposal.fee.isEmpty()) {
+            need = need.add(new BigInteger(proposal.fee));
+        }
+        XchainOuterClass.InvokeResponse invokeResponse = XchainOuterClass.InvokeResponse.getDefaultInstance();
+        if (proposal.moduleName != null) {
+            XchainOuterClass.InvokeRPCResponse r = preExec(proposal.newPreExecRequest(Common.newHeader()));
+            Common.checkResponseHeader(r.getHeader(), "PreExec");
+            invokeResponse = r.getResponse();
+            need = need.add(BigInteger.valueOf(invokeResponse.getGasUsed()));
+        }
+
+        // seed outside the lock, asking for the utxos held by pool plus the shortfall, as the node may return
+        // utxos the pool already holds. Stop when a seed adds nothing, select then reports the shortage.
+        for (int i = 0; i < 3; i++) {
+            BigInteger totalNeed;
+            synchronized (this) {
+                if (balance.compareTo(need) >= 0) {
+                    break;
+                }
+                totalNeed = balance.add(reservedAmount()).add(need.subtract(balance).max(refillAmount));
+            }
+            if (seed(totalNeed) == 0) {
+                break;
+            }
+        }
+
+        synchronized (this) {
+            List<XchainOuterClass.Utxo> selected = select(need);
+            BigInteger total = BigInteger.ZERO;
+            for (XchainOuterClass.Utxo utxo : selected) {
+                total = total.add(new BigInteger(1, utxo.getAmount().toByteArray()));
+            }
+            XchainOuterClass.PreExecWithSelectUTXOResponse response = XchainOuterClass.PreExecWithSelectUTXOResponse.newBuilder()
+                    .setBcname(chainName)
+                    .setResponse(invokeResponse)
+                    .setUtxoOutput(XchainOuterClass.UtxoOutput.newBuilder()
+                            .addAllUtxoList(selected)
+                            .setTotalSelected(total.toString()))
+                    .build();
+            try {
+                Transaction tx = new Transaction(response, proposal, client, config);
+                reserved.put(tx, selected);
+                return tx;
+            } catch (Exception e) {
+                putBack(selected);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * send a transaction built by this pool, the change outputs are added to pool on success
+     * and the inputs are released on failure.
+     *
+     * @param tx the signed transaction
+     * @return the sent transaction
+     */
+    public Transaction send(Transaction tx) {
+        try {
+            tx.send(client);
+        } catch (RuntimeException e) {
+            release(tx);
+            throw e;
+        }
+        sent(tx);
+        return tx;
+    }
+
+    /**
+     * send transactions built by this pool with up to TxSubmitter.DEFAULT_WINDOW postTx calls in flight,
+     * the change outputs of each accepted one are added to pool and the inputs of each failed one are released.
+     *
+     * @param txs the signed transactions
+     * @return the results in the order of txs
+     */
+    public List<TxSubmitter.Result> sendAll(List<Transaction> txs) {
+        return sendAll(txs, TxSubmitter.DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param txs    the signed transactions
+     * @param window the max count of postTx calls in flight
+     * @return the results in the order of txs
+     */
+    public List<TxSubmitter.Result> sendAll(List<Transaction> txs, int window) {
+        return client.sendAll(txs, window, (tx, error) -> {
+            if (error == null) {
+                sent(tx);
+            } else {
+                release(tx);
+            }
+        });
+    }
+
+    /**
+     * mark a transaction built by this pool as accepted by node.
+     *
+     * @param tx the sent transaction
+     */
+    public synchronized void sent(Transaction tx) {
+        List<XchainOuterClass.Utxo> inputs = reserved.remove(tx);
+        if (inputs == null) {
+            return;
+        }
+        for (XchainOuterClass.Utxo utxo : inputs) {
+            markSpent(key(utxo.getRefTxid(), utxo.getRefOffset()));
+        }
+        XchainOuterClass.Transaction pbtx = tx.getRawTx();
+        ByteString self = ByteString.copyFromUtf8(account.getAKAddress());
+        List<XchainOuterClass.Utxo> change = new ArrayList<>();
+        for (int i = 0; i < pbtx.getTxOutputsCount(); i++) {
+            XchainOuterClass.TxOutput out = pbtx.getTxOutputs(i);
+            if (out.getToAddr().equals(self) && out.getFrozenHeight() == 0) {
+                change.add(XchainOuterClass.Utxo.newBuilder()
+                        .setAmount(out.getAmount())
+                        .setToAddr(out.getToAddr())
+                        .setRefTxid(pbtx.getTxid())
+                        .setRefOffset(i)
+                        .build());
+            }
+        }
+        add(change);
+    }
+
+    /**
+     * give the inputs of a transaction which was not sent back to pool.
+     *
+     * @param tx the transaction built by this pool
+     */
+    public synchronized void release(Transaction tx) {
+        List<XchainOuterClass.Utxo> inputs = reserved.remove(tx);
+        if (inputs != null) {
+            putBack(inputs);
+        }
+    }
+
+    /**
+     * drop all unreserved utxos, the next build selects from node again.
+     */
+    public synchronized void clear() {
+        available.clear();
+        balance = BigInteger.ZERO;
+    }
+
+    synchronized int add(List<XchainOuterClass.Utxo> utxos) {
+        Set<String> held = new LinkedHashSet<>();
+        for (XchainOuterClass.Utxo utxo : available) {
+            held.add(key(utxo.getRefTxid(), utxo.getRefOffset()));
+        }
+        for (List<XchainOuterClass.Utxo> inputs : reserved.values()) {
+            for (XchainOuterClass.Utxo utxo : inputs) {
+                held.add(key(utxo.getRefTxid(), utxo.getRefOffset()));
+            }
+        }
+        int n = 0;
+        for (XchainOuterClass.Utxo utxo : utxos) {
+            String k = key(utxo.getRefTxid(), utxo.getRefOffset());
+            if (spent.contains(k) || !held.add(k)) {
+                continue;
+            }
+            available.addLast(utxo);
+            balance = balance.add(new BigInteger(1, utxo.getAmount().toByteArray()));
+            n++;
+        }
+        return n;
+    }
+
+    private List<XchainOuterClass.Utxo> select(BigInteger need) {
+        if (balance.compareTo(need) < 0) {
+            throw new RuntimeException("insufficient utxo of " + account.getAKAddress() + ", need " + need + " but have " + balance);
+        }
+        List<XchainOuterClass.Utxo> selected = new ArrayList<>();
+        BigInteger total = BigInteger.ZERO;
+        Iterator<XchainOuterClass.Utxo> it = available.iterator();
+        // always take at least one utxo, a transaction without inputs has no unique txid.
+        while (it.hasNext() && (selected.isEmpty() || total.compareTo(need) < 0)) {
+            XchainOuterClass.Utxo utxo = it.next();
+            it.remove();
+            selected.add(utxo);
+            total = total.add(new BigInteger(1, utxo.getAmount().toByteArray()));
+        }
+        balance = balance.subtract(total);
+        return selected;
+    }
+
+    private BigInteger reservedAmount() {
+        BigInteger total = BigInteger.ZERO;
+        for (List<XchainOuterClass.Utxo> inputs : reserved.values()) {
+            for (XchainOuterClass.Utxo utxo : inputs) {
+                total = total.add(new BigInteger(1, utxo.getAmount().toByteArray()));
+            }
+        }
+        return total;
+    }
+
+    private void putBack(List<XchainOuterClass.Utxo> utxos) {
+        for (int i = utxos.size() - 1; i >= 0; i--) {
+            XchainOuterClass.Utxo utxo = utxos.get(i);
+            available.addFirst(utxo);
+            balance = balance.add(new BigInteger(1, utxo.getAmount().toByteArray()));
+        }
+    }
+
+    private void markSpent(String key) {
+        spent.add(key);
+        if (spent.size() > MAX_SPENT) {
+            Iterator<String> it = spent.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    private boolean isLocal(Proposal proposal, Config config) {
+        if (proposal.initiator == null
+                || !proposal.initiator.getAKAddress().equals(account.getAKAddress())
+                || !proposal.chainName.equals(chainName)) {
+            return false;
+        }
+        return !config.getComplianceCheck().isNeedComplianceCheck();
+    }
+
+    // the contract call of a proposal, run before selecting so its gas is known
+    XchainOuterClass.InvokeRPCResponse preExec(XchainOuterClass.InvokeRPCRequest request) {
+        return client.getBlockingClient().preExec(request);
+    }
+
+    private Config config() {
+        return client != null ? client.getConfig() : Config.getInstance();
+    }
+
+    private XchainOuterClass.UtxoInput newUtxoInput(BigInteger totalNeed) {
+        String address = account.getAKAddress();
+        try {
+            byte[] hash = Hash.doubleSha256((chainName + address + totalNeed + false).getBytes());
+            Crypto cli = CryptoClient.getCryptoClient(config());
+            byte[] sign = cli.signECDSA(hash, account.getKeyPair().getPrivateKey());
+            return XchainOuterClass.UtxoInput.newBuilder()
+                    .setHeader(Common.newHeader())
+                    .setBcname(chainName)
+                    .setAddress(address)
+                    .setPublickey(account.getKeyPair().getJSONPublicKey())
+                    .setTotalNeed(totalNeed.toString())
+                    .setUserSign(ByteString.copyFrom(sign))
+                    .setNeedLock(false)
+                    .build();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String key(ByteString txid, int offset) {
+        return Hex.toHexString(txid.toByteArray()) + "_" + offset;
+    }
+}
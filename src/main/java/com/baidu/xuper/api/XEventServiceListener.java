@@ -4,6 +4,7 @@ import com.baidu.xuper.pb.EventServiceGrpc;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 
@@ -12,16 +13,29 @@ public class XEventServiceListener {
     private final EventServiceGrpc.EventServiceStub eventServiceStub;
 
     public XEventServiceListener(String target,Integer maxInboundMessageSize) {
-        this.channel = ManagedChannelBuilder.forTarget(target)
+        this(target, maxInboundMessageSize, null);
+    }
+
+    /**
+     * @param target                the address of xchain node, like 127.0.0.1:37101
+     * @param maxInboundMessageSize Sets the maximum message size allowed to be received on the channel
+     * @param executor              the executor of channel callbacks, null means direct executor
+     */
+    public XEventServiceListener(String target, Integer maxInboundMessageSize, Executor executor) {
+        ManagedChannelBuilder<?> builder = ManagedChannelBuilder.forTarget(target)
                 .usePlaintext()
                 .maxInboundMessageSize(maxInboundMessageSize)
                 .maxInboundMessageSize(maxInboundMessageSize)
-                .directExecutor()
                 .enableRetry()
                 .defaultLoadBalancingPolicy("round_robin")
                 .keepAliveTime(10, TimeUnit.SECONDS)
-                .keepAliveTimeout(20, TimeUnit.SECONDS)
-                .build();
+                .keepAliveTimeout(20, TimeUnit.SECONDS);
+        if (executor != null) {
+            builder.executor(executor);
+        } else {
+            builder.directExecutor();
+        }
+        this.channel = builder.build();
         eventServiceStub = EventServiceGrpc.newStub(channel);
     }
 
@@ -36,4 +50,14 @@ public class XEventServiceListener {
                           io.grpc.stub.StreamObserver<com.baidu.xuper.pb.EventOuterClass.Event> responseObserver) {
         getEventServiceStub().subscribe(request,responseObserver);
     }
+
+    /**
+     * subscribe blocks with flow control and automatic resubscription, see BlockEventStream.
+     *
+     * @param filter the block filter
+     * @return the started stream, close it when done
+     */
+    public BlockEventStream subscribeBlocks(com.baidu.xuper.pb.EventOuterClass.BlockFilter filter) {
+        return new BlockEventStream(this, filter).start();
+    }
 }
@@ -1,33 +1,300 @@
 package com.baidu.xuper.api;
 
 import com.baidu.xuper.pb.XendorserGrpc;
+import com.baidu.xuper.pb.XendorserOuterClass;
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-
+/**
+ * client of one or more endorser services, like "10.0.0.1:37101,10.0.0.2:37101".
+ * Every call goes to the healthy endorser with the fewest calls in flight, then the lowest EWMA latency,
+ * and gets the deadline of its request name like PreExecWithFee or ComplianceCheck.
+ * An endorser whose channel is in TRANSIENT_FAILURE is used only if no other is ready. An endorser failed with
+ * UNAVAILABLE, DEADLINE_EXCEEDED or RESOURCE_EXHAUSTED maxFailures times in a row is ejected, and readmitted by
+ * the first successful call after ejectMillis. A call failed with UNAVAILABLE is sent again to another endorser.
+ */
 public class XendorserClient {
-    private final ManagedChannel channel;
-    private final XendorserGrpc.XendorserBlockingStub blockingClient;
+    public static final long DEFAULT_DEADLINE_MILLIS = 10000;
+    private static final double ALPHA = 0.3;
+
+    private final String target;
+    private final List<Endpoint> endpoints;
+    private final Map<String, Long> deadlineNanos = new ConcurrentHashMap<>();
+    private volatile long defaultDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DEADLINE_MILLIS);
+    private volatile int maxFailures = 3;
+    private volatile long ejectMillis = 30000;
 
     public XendorserClient(String target) {
-        this.channel = ManagedChannelBuilder.forTarget(target)
+        this(target, null);
+    }
+
+    /**
+     * @param target   the addresses of endorser services separated by comma
+     * @param executor the executor of channel callbacks, null means direct executor
+     */
+    public XendorserClient(String target, Executor executor) {
+        this.target = target;
+        List<Endpoint> es = new ArrayList<>();
+        for (String t : target.split(",")) {
+            if (!t.trim().isEmpty()) {
+                ManagedChannel channel = newChannel(t.trim(), executor);
+                XendorserGrpc.XendorserStub stub = XendorserGrpc.newStub(channel);
+                es.add(new Endpoint(t.trim(), channel, (request, deadline) -> FutureObserver.call(
+                        (deadline > 0 ? stub.withDeadlineAfter(deadline, TimeUnit.NANOSECONDS) : stub)::endorserCall, request)));
+            }
+        }
+        if (es.isEmpty()) {
+            throw new IllegalArgumentException("no endorser target");
+        }
+        this.endpoints = Collections.unmodifiableList(es);
+    }
+
+    /**
+     * @param senders the send function of each target, in the order of targets
+     */
+    XendorserClient(Map<String, Sender> senders) {
+        this.target = String.join(",", senders.keySet());
+        List<Endpoint> es = new ArrayList<>();
+        for (Map.Entry<String, Sender> e : senders.entrySet()) {
+            es.add(new Endpoint(e.getKey(), null, e.getValue()));
+        }
+        this.endpoints = Collections.unmodifiableList(es);
+    }
+
+    private static ManagedChannel newChannel(String target, Executor executor) {
+        ManagedChannelBuilder<?> builder = ManagedChannelBuilder.forTarget(target)
                 .usePlaintext()
-                .directExecutor()
                 .enableRetry()
                 .defaultLoadBalancingPolicy("round_robin")
                 .keepAliveTime(10, TimeUnit.SECONDS)
-                .keepAliveTimeout(20, TimeUnit.SECONDS)
-                .build();
-        blockingClient = XendorserGrpc.newBlockingStub(channel);
+                .keepAliveTimeout(20, TimeUnit.SECONDS);
+        if (executor != null) {
+            builder.executor(executor);
+        } else {
+            builder.directExecutor();
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param timeout the deadline of calls without one of their request name, 0 for no deadline
+     * @param unit    the unit of timeout
+     * @return this client
+     */
+    public XendorserClient setDeadline(long timeout, TimeUnit unit) {
+        this.defaultDeadlineNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * @param requestName the request name, like PreExecWithFee or ComplianceCheck
+     * @param timeout     the deadline of calls of this request name, 0 for no deadline
+     * @param unit        the unit of timeout
+     * @return this client
+     */
+    public XendorserClient setDeadline(String requestName, long timeout, TimeUnit unit) {
+        deadlineNanos.put(requestName, unit.toNanos(timeout));
+        return this;
+    }
+
+    /**
+     * @param maxFailures the count of failed calls in a row to eject an endorser
+     * @param ejectMillis how long an ejected endorser is not used at least
+     * @return this client
+     */
+    public XendorserClient setEjection(int maxFailures, long ejectMillis) {
+        this.maxFailures = maxFailures;
+        this.ejectMillis = ejectMillis;
+        return this;
+    }
+
+    /**
+     * @return the addresses this client is created with
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
     }
 
     public void close() {
-        channel.shutdownNow();
+        for (Endpoint e : endpoints) {
+            if (e.channel != null) {
+                e.channel.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * stop taking new calls, the calls in flight complete.
+     */
+    public void shutdown() {
+        for (Endpoint e : endpoints) {
+            if (e.channel != null) {
+                e.channel.shutdown();
+            }
+        }
     }
 
-    XendorserGrpc.XendorserBlockingStub getBlockingClient() {
-        return blockingClient;
+    /**
+     * @param request the endorser request
+     * @return the response, the calling thread waits for it
+     */
+    XendorserOuterClass.EndorserResponse blockingEndorserCall(XendorserOuterClass.EndorserRequest request) {
+        try {
+            return endorserCall(request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param request the endorser request
+     * @return the future of response, no thread waits for it
+     */
+    CompletableFuture<XendorserOuterClass.EndorserResponse> endorserCall(XendorserOuterClass.EndorserRequest request) {
+        Long nanos = deadlineNanos.get(request.getRequestName());
+        return call(request, nanos != null ? nanos : defaultDeadlineNanos, new ArrayList<>());
+    }
+
+    private CompletableFuture<XendorserOuterClass.EndorserResponse> call(XendorserOuterClass.EndorserRequest request,
+                                                                         long deadline, List<Endpoint> tried) {
+        Endpoint e = select(tried);
+        tried.add(e);
+        return e.call(request, deadline).handle((r, t) -> {
+            if (t == null) {
+                return CompletableFuture.completedFuture(r);
+            }
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            // the request has not reached the endorser, try another one
+            if (Status.fromThrowable(cause).getCode() == Status.Code.UNAVAILABLE && tried.size() < endpoints.size()) {
+                return call(request, deadline, tried);
+            }
+            return CompletableFuture.<XendorserOuterClass.EndorserResponse>failedFuture(cause);
+        }).thenCompose(f -> f);
+    }
+
+    Endpoint select(List<Endpoint> exclude) {
+        long now = System.currentTimeMillis();
+        Endpoint best = null;
+        int bestRank = Integer.MAX_VALUE;
+        for (Endpoint e : endpoints) {
+            if (exclude.contains(e)) {
+                continue;
+            }
+            // prefer in order: connected and admitted or on trial after ejectMillis, not connected and admitted,
+            // not connected on trial, ejected
+            int rank;
+            long ejectedUntil = e.ejectedUntil;
+            if (ejectedUntil == 0 || ejectedUntil <= now) {
+                rank = e.isConnectionFailing() ? (ejectedUntil == 0 ? 1 : 2) : 0;
+            } else {
+                rank = 3;
+            }
+            if (best == null || rank < bestRank || rank == bestRank && (e.inFlight.get() < best.inFlight.get()
+                    || e.inFlight.get() == best.inFlight.get() && e.latencyNanos < best.latencyNanos)) {
+                best = e;
+                bestRank = rank;
+            }
+        }
+        if (best == null) {
+            throw new IllegalStateException("no endorser to call");
+        }
+        return best;
+    }
+
+    interface Sender {
+        /**
+         * @param request       the endorser request
+         * @param deadlineNanos the deadline of call, 0 for none
+         * @return the future of response
+         */
+        CompletableFuture<XendorserOuterClass.EndorserResponse> send(XendorserOuterClass.EndorserRequest request, long deadlineNanos);
+    }
+
+    public class Endpoint {
+        private final String target;
+        private final ManagedChannel channel;
+        private final Sender send;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double latencyNanos;
+        // 0 if admitted, else the time since which the endorser may be readmitted
+        private volatile long ejectedUntil;
+        private int failures;
+
+        Endpoint(String target, ManagedChannel channel, Sender send) {
+            this.target = target;
+            this.channel = channel;
+            this.send = send;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public double getLatencyMillis() {
+            return latencyNanos / 1e6;
+        }
+
+        public boolean isEjected() {
+            return ejectedUntil != 0;
+        }
+
+        boolean isConnectionFailing() {
+            return channel != null && channel.getState(false) == ConnectivityState.TRANSIENT_FAILURE;
+        }
+
+        CompletableFuture<XendorserOuterClass.EndorserResponse> call(XendorserOuterClass.EndorserRequest request, long deadline) {
+            inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            return send.send(request, deadline).whenComplete((r, t) -> {
+                inFlight.decrementAndGet();
+                if (t == null) {
+                    record(System.nanoTime() - start, true);
+                } else if (HedgedCall.isTransient(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t)) {
+                    record(0, false);
+                }
+            });
+        }
+
+        synchronized void record(long nanos, boolean ok) {
+            if (ok) {
+                latencyNanos = latencyNanos == 0 ? nanos : ALPHA * nanos + (1 - ALPHA) * latencyNanos;
+                failures = 0;
+                ejectedUntil = 0;
+                return;
+            }
+            // a failure of an ejected endorser on trial ejects it again
+            if (++failures >= maxFailures || ejectedUntil != 0) {
+                ejectedUntil = System.currentTimeMillis() + ejectMillis;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return target + "(inFlight=" + getInFlight() + ", latency=" + getLatencyMillis() + "ms, ejected=" + isEjected() + ")";
+        }
     }
 }
@@ -1,42 +1,54 @@
 package com.baidu.xuper.api;
 
 import com.baidu.xuper.config.Config;
-import com.baidu.xuper.crypto.Crypto;
-import com.baidu.xuper.crypto.xchain.sign.Ecc;
 import com.baidu.xuper.pb.XchainGrpc;
 import com.baidu.xuper.pb.XchainOuterClass;
 import com.google.gson.Gson;
 import com.google.protobuf.ByteString;
+import io.grpc.ClientInterceptor;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import org.bouncycastle.crypto.params.ECPublicKeyParameters;
-import org.bouncycastle.crypto.signers.ECDSASigner;
-import org.bouncycastle.crypto.signers.RandomDSAKCalculator;
-import org.bouncycastle.math.ec.ECPoint;
 import org.bouncycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class XuperClient {
     private final ManagedChannel channel;
     private final XchainGrpc.XchainBlockingStub blockingClient;
-    private final XendorserClient xendorserClient;
+    private final XchainGrpc.XchainStub asyncClient;
+    private final Executor executor;
+    private final boolean ownExecutor;
+    private final boolean xendorser;
+    private volatile XendorserClient xendorserClient;
     private XEventServiceListener xeventServiceListener;
 
-    private Crypto cryptoClient ;
+    private volatile Config config;
+    private final SignatureVerifier signatureVerifier = new SignatureVerifier();
+    private volatile QueryCache queryCache;
+    private volatile ContractQueryCache contractQueryCache;
+    private final DeadlineInterceptor deadlines = new DeadlineInterceptor();
+    private ConfirmationTracker confirmationTracker;
     private String chainName = "xuper";
     private final String evmContract = "evm";
-    private final String xkernelModule = "xkernel";
+    static final String xkernelModule = "xkernel";
     private final String evmJSONEncoded = "jsonEncoded";
     private final String evmJSONEncodedTrue = "true";
     private final String argsInput = "input";
-    private final String xkernelDeployMethod = "Deploy";
-    private final String xkernelUpgradeMethod = "Upgrade";
-    private final String xkernelNewAccountMethod = "NewAccount";
+    static final String xkernelDeployMethod = "Deploy";
+    static final String xkernelUpgradeMethod = "Upgrade";
+    static final String xkernelNewAccountMethod = "NewAccount";
     private final String argAccountName = "account_name";
     private final String argContractName = "contract_name";
     private final String argContractCode = "contract_code";
@@ -72,10 +84,31 @@ public class XuperClient {
      * @param maxInboundMessageSize Sets the maximum message size allowed to be received on the channel, like 52428800 (50M)
      */
     public XuperClient(String target,Integer maxInboundMessageSize,boolean xendorser) {
-        this.channel = ManagedChannelBuilder.forTarget(target)
+        this(target, maxInboundMessageSize, xendorser, null, false);
+    }
+
+    /**
+     * @param target                the address of xchain node, like 127.0.0.1:37101
+     * @param maxInboundMessageSize Sets the maximum message size allowed to be received on the channel, like 52428800 (50M)
+     * @param xendorser             whether to connect to the endorser service in config
+     * @param executor              the executor of channel callbacks and supplyAsync, null means direct executor. It is not shut down by close()
+     */
+    public XuperClient(String target, Integer maxInboundMessageSize, boolean xendorser, Executor executor) {
+        this(target, maxInboundMessageSize, xendorser, executor, false);
+    }
+
+    /**
+     * @param interceptors intercept the calls on channel of node, like the latency tracking of NodePool
+     */
+    XuperClient(String target, Integer maxInboundMessageSize, boolean xendorser, Executor executor, ClientInterceptor... interceptors) {
+        this(target, maxInboundMessageSize, xendorser, executor, false, interceptors);
+    }
+
+    private XuperClient(String target, Integer maxInboundMessageSize, boolean xendorser, Executor executor, boolean ownExecutor,
+                        ClientInterceptor... interceptors) {
+        ManagedChannelBuilder<?> builder = ManagedChannelBuilder.forTarget(target)
                 .maxInboundMessageSize(maxInboundMessageSize)
                 .maxInboundMessageSize(maxInboundMessageSize)
-                .directExecutor()
                 // Channels are secure by default (via SSL/TLS). For the example we disable TLS to avoid
                 // needing certificates.
                 .usePlaintext()
@@ -83,23 +116,61 @@ public class XuperClient {
                 .defaultLoadBalancingPolicy("round_robin")
                 .keepAliveTime(10, TimeUnit.SECONDS)
                 .keepAliveTimeout(20, TimeUnit.SECONDS)
-                .build();
+                .intercept(interceptors)
+                .intercept(deadlines);
+        if (executor != null) {
+            builder.executor(executor);
+        } else {
+            builder.directExecutor();
+        }
+        this.channel = builder.build();
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.xendorser = xendorser;
         blockingClient = XchainGrpc.newBlockingStub(channel);
+        asyncClient = XchainGrpc.newStub(channel);
         if (xendorser&&Config.hasConfigFile()) {
-            xendorserClient = new XendorserClient(Config.getInstance().getEndorseServiceHost());
+            xendorserClient = new XendorserClient(Config.getInstance().getEndorseServiceHost(), executor);
         } else {
             xendorserClient = null;
         }
-        xeventServiceListener =new XEventServiceListener(target,maxInboundMessageSize);
-
-        cryptoClient=CryptoClient.getCryptoClient();
+        xeventServiceListener =new XEventServiceListener(target,maxInboundMessageSize, executor);
     }
 
+    /**
+     * create a client whose channels and supplyAsync calls run on a virtual-thread-per-task executor.
+     * The executor is shut down by close().
+     *
+     * @param target the address of xchain node, like 127.0.0.1:37101
+     * @return XuperClient
+     */
+    public static XuperClient newVirtualThreadClient(String target) {
+        return newVirtualThreadClient(target, Integer.MAX_VALUE, true);
+    }
 
-
+    /**
+     * @param target                the address of xchain node, like 127.0.0.1:37101
+     * @param maxInboundMessageSize Sets the maximum message size allowed to be received on the channel, like 52428800 (50M)
+     * @param xendorser             whether to connect to the endorser service in config
+     * @return XuperClient
+     */
+    public static XuperClient newVirtualThreadClient(String target, Integer maxInboundMessageSize, boolean xendorser) {
+        return new XuperClient(target, maxInboundMessageSize, xendorser, Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
 
     public void close() {
+        synchronized (this) {
+            if (confirmationTracker != null) {
+                confirmationTracker.close();
+            }
+        }
+        if (contractQueryCache != null) {
+            contractQueryCache.close();
+        }
         channel.shutdownNow();
+        if (ownExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
         if (xendorserClient != null) {
             xendorserClient.close();
         }
@@ -117,18 +188,183 @@ public class XuperClient {
         return this;
     }
 
+    /**
+     * set the deadline of every call to node without a more specific one, so a stalled node can not block
+     * a call forever.
+     *
+     * @param timeout the timeout of each call, 0 for no deadline
+     * @param unit    the unit of timeout
+     * @return this client
+     */
+    public XuperClient setDeadline(long timeout, TimeUnit unit) {
+        deadlines.set(null, timeout, unit);
+        return this;
+    }
+
+    /**
+     * @param method  the rpc method name, like QueryTx, GetBalance, GetBlockByHeight, PreExec or PostTx
+     * @param timeout the timeout of each call of method, 0 for no deadline
+     * @param unit    the unit of timeout
+     * @return this client
+     */
+    public XuperClient setDeadline(String method, long timeout, TimeUnit unit) {
+        deadlines.set(method, timeout, unit);
+        return this;
+    }
+
+    /**
+     * cache the responses of queryTx, queryBlock, queryBlockByHeight and getBlockchainStatus, see QueryCache.
+     *
+     * @param queryCache the cache, null to disable
+     * @return this client
+     */
+    public XuperClient setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+        return this;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * cache the responses of queryContract and queryEVMContract, see ContractQueryCache.
+     * The cache subscribes the blocks of this client to drop the responses of contracts called.
+     *
+     * @param contractQueryCache the cache, null to disable
+     * @return this client
+     */
+    public XuperClient setContractQueryCache(ContractQueryCache contractQueryCache) {
+        if (contractQueryCache != null) {
+            contractQueryCache.attach(chainName, f -> getXEventServiceListener().subscribeBlocks(f), this::queryTx);
+        }
+        this.contractQueryCache = contractQueryCache;
+        return this;
+    }
+
+    public ContractQueryCache getContractQueryCache() {
+        return contractQueryCache;
+    }
+
+    /**
+     * use a config of this client instead of Config.getInstance(), like another crypto or tx version.
+     * If the config needs compliance check, the client connects to the endorser service of the config unless
+     * it is connected to it already.
+     *
+     * @param config the config, frozen by this call, null to use Config.getInstance()
+     * @return this client
+     * @throws IllegalArgumentException if the config needs compliance check but the client is created without
+     *                                  endorser or the config has no endorseServiceHost
+     */
+    public XuperClient setConfig(Config config) {
+        if (config != null && config.freeze().getComplianceCheck().isNeedComplianceCheck()) {
+            try {
+                requireXendorserClient(config);
+            } catch (IllegalStateException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+        this.config = config;
+        return this;
+    }
+
+    /**
+     * @return the config of this client, read it once per operation as Config.getInstance() may be reloaded
+     */
+    public Config getConfig() {
+        Config c = config;
+        return c != null ? c : Config.getInstance();
+    }
+
     XchainGrpc.XchainBlockingStub getBlockingClient() {
         return blockingClient;
     }
 
+    XchainGrpc.XchainStub getAsyncClient() {
+        return asyncClient;
+    }
+
+    String getChainName() {
+        return chainName;
+    }
+
+    /**
+     * @return the executor given at construction, null if the channels use direct executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * run a blocking call of this client on its executor, like
+     * client.supplyAsync(() -> client.getBalance(address)).
+     * On a virtual thread client every call gets its own virtual thread, so many thousands
+     * of calls can wait for the node at the same time without a sized thread pool.
+     *
+     * @param call the blocking call
+     * @return the future of call result
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> call) {
+        if (executor == null) {
+            return CompletableFuture.supplyAsync(call);
+        }
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
     public XendorserClient getXendorserClient() {
         return xendorserClient;
     }
 
+    /**
+     * the endorser client connected to the endorser service of config. When the endorseServiceHost of config
+     * differs from the connected one, like after a reload, a client of the new host replaces it and the old one
+     * is shut down after its calls in flight.
+     *
+     * @param config the config of the operation
+     * @return the endorser client for compliance check
+     */
+    XendorserClient requireXendorserClient(Config config) {
+        if (!xendorser) {
+            throw new IllegalStateException("compliance check needs a client with endorser");
+        }
+        String host = config.getEndorseServiceHost();
+        if (host == null || host.trim().isEmpty()) {
+            throw new IllegalStateException("compliance check needs endorseServiceHost in config");
+        }
+        XendorserClient c = xendorserClient;
+        if (c != null && c.getTarget().equals(host)) {
+            return c;
+        }
+        XendorserClient old;
+        synchronized (this) {
+            c = xendorserClient;
+            if (c != null && c.getTarget().equals(host)) {
+                return c;
+            }
+            old = c;
+            c = new XendorserClient(host, executor);
+            xendorserClient = c;
+        }
+        if (old != null) {
+            old.shutdown();
+        }
+        return c;
+    }
+
     public XEventServiceListener getXEventServiceListener() {
         return xeventServiceListener;
     }
 
+    /**
+     * @return the tracker shared by Transaction.awaitConfirmation, it subscribes blocks on first use
+     */
+    public synchronized ConfirmationTracker getConfirmationTracker() {
+        if (confirmationTracker == null) {
+            confirmationTracker = new ConfirmationTracker(this);
+        }
+        return confirmationTracker;
+    }
+
     /**
      * @param from   from address
      * @param to     to address
@@ -147,6 +383,49 @@ public class XuperClient {
      * @return
      */
     public Transaction transfer(Account from, String to, BigInteger amount, String fee, String desc) {
+        return newTransferProposal(from, to, amount, fee, desc).build(this).sign().send(this);
+    }
+
+    /**
+     * post signed transactions with up to TxSubmitter.DEFAULT_WINDOW postTx calls in flight.
+     *
+     * @param txs the signed transactions
+     * @return the results in the order of txs, a failed transaction does not stop the others
+     */
+    public List<TxSubmitter.Result> sendAll(List<Transaction> txs) {
+        return sendAll(txs, TxSubmitter.DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param txs    the signed transactions
+     * @param window the max count of postTx calls in flight
+     * @return the results in the order of txs, a failed transaction does not stop the others
+     */
+    public List<TxSubmitter.Result> sendAll(List<Transaction> txs, int window) {
+        return sendAll(txs, window, null);
+    }
+
+    /**
+     * @param txs      the signed transactions
+     * @param window   the max count of postTx calls in flight
+     * @param onResult called with each transaction and its error, null on success, as soon as its post completes
+     * @return the results in the order of txs, a failed transaction does not stop the others
+     */
+    public List<TxSubmitter.Result> sendAll(List<Transaction> txs, int window, BiConsumer<Transaction, Throwable> onResult) {
+        return new TxSubmitter(this, window).submitAll(txs, onResult);
+    }
+
+    /**
+     * create a client side utxo pool for an account which sends many transfers in a row.
+     *
+     * @param account the account whose utxos are pooled
+     * @return UtxoPool
+     */
+    public UtxoPool newUtxoPool(Account account) {
+        return new UtxoPool(this, account, chainName);
+    }
+
+    Proposal newTransferProposal(Account from, String to, BigInteger amount, String fee, String desc) {
         Proposal p = new Proposal()
                 .setChainName(chainName)
                 .setFee(fee);
@@ -154,11 +433,12 @@ public class XuperClient {
             p.setDesc(desc);
         }
 
-        if (Config.getInstance().getComplianceCheck().isNeedComplianceCheck()) {
-            p.addAuthRequire(Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceAddr());
+        Config.ComplianceCheck complianceCheck = getConfig().getComplianceCheck();
+        if (complianceCheck.isNeedComplianceCheck()) {
+            p.addAuthRequire(complianceCheck.getComplianceCheckEndorseServiceAddr());
         }
         p.setInitiator(from);
-        return p.transfer(to, amount).build(this).sign().send(this);
+        return p.transfer(to, amount);
     }
 
 
@@ -175,15 +455,20 @@ public class XuperClient {
     }
 
     public Transaction invokeContract(Account from, String module, String contract, String method, Map<String, byte[]> args, String desc) {
+        return newInvokeProposal(from, module, contract, method, args, desc).build(this).sign().send(this);
+    }
+
+    Proposal newInvokeProposal(Account from, String module, String contract, String method, Map<String, byte[]> args, String desc) {
         Proposal p = new Proposal().setChainName(chainName);
-        if (Config.getInstance().getComplianceCheck().isNeedComplianceCheck()) {
-            p.addAuthRequire(Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceAddr());
+        Config.ComplianceCheck complianceCheck = getConfig().getComplianceCheck();
+        if (complianceCheck.isNeedComplianceCheck()) {
+            p.addAuthRequire(complianceCheck.getComplianceCheckEndorseServiceAddr());
         }
         p.setInitiator(from);
         if (desc!=null){
             p.setDesc(desc);
         }
-        return p.invokeContract(module, contract, method, args).build(this).sign().send(this);
+        return p.invokeContract(module, contract, method, args);
     }
 
 
@@ -200,7 +485,7 @@ public class XuperClient {
         return new Proposal()
                 .setChainName(chainName)
                 .setInitiator(from)
-                .addAuthRequire(Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceAddr())
+                .addAuthRequire(getConfig().getComplianceCheck().getComplianceCheckEndorseServiceAddr())
                 .invokeContract(module, contract, method, args)
                 .preExec(this);
     }
@@ -242,6 +527,10 @@ public class XuperClient {
      * @return transaction.
      */
     public Transaction deployEVMContract(Account from, byte[] bin, byte[] abi, String contract, Map<String, String> initArgs) {
+        return invokeContract(from, xkernelModule, "", xkernelDeployMethod, deployEVMContractArgs(from, bin, abi, contract, initArgs));
+    }
+
+    Map<String, byte[]> deployEVMContractArgs(Account from, byte[] bin, byte[] abi, String contract, Map<String, String> initArgs) {
         if (from.getContractAccount().isEmpty()) {
             throw new RuntimeException("deploy contract must use contract account");
         }
@@ -261,7 +550,7 @@ public class XuperClient {
         args.put(argContractDesc, desc.toByteArray());
         args.put(argInitArgs, initArgsJson);
         args.put(argContractAbi, abi);
-        return invokeContract(from, xkernelModule, "", xkernelDeployMethod, args);
+        return args;
     }
 
     /**
@@ -274,6 +563,10 @@ public class XuperClient {
      * @return
      */
     private Transaction deployContract(Account from, byte[] code, String contract, String runtime, Map<String, byte[]> initArgs, String contractType) {
+        return invokeContract(from, xkernelModule, "", xkernelDeployMethod, deployContractArgs(from, code, contract, runtime, initArgs, contractType));
+    }
+
+    Map<String, byte[]> deployContractArgs(Account from, byte[] code, String contract, String runtime, Map<String, byte[]> initArgs, String contractType) {
         if (from.getContractAccount().isEmpty()) {
             throw new RuntimeException("deploy contract must use contract account");
         }
@@ -296,7 +589,7 @@ public class XuperClient {
         args.put(argContractCode, code);
         args.put(argContractDesc, desc.toByteArray());
         args.put(argInitArgs, initArgsJson);
-        return invokeContract(from, xkernelModule, "", xkernelDeployMethod, args);
+        return args;
     }
 
     /**
@@ -305,11 +598,15 @@ public class XuperClient {
      * @return
      */
     public Transaction createContractAccount(Account from, String accountName) {
+        return invokeContract(from, xkernelModule, "", xkernelNewAccountMethod, createContractAccountArgs(from, accountName));
+    }
+
+    Map<String, byte[]> createContractAccountArgs(Account from, String accountName) {
         String desc = "{\"aksWeight\": {\"" + from.getAddress() + "\": 1.0}, \"pm\": {\"acceptValue\": 1.0, \"rule\": 1}}";
         Map<String, byte[]> args = new HashMap<>();
         args.put("account_name", accountName.getBytes());
         args.put("acl", desc.getBytes());
-        return invokeContract(from, xkernelModule, "", xkernelNewAccountMethod, args);
+        return args;
     }
 
     /**
@@ -319,20 +616,27 @@ public class XuperClient {
      * @return
      */
     public BigInteger getBalance(String account) {
-        XchainOuterClass.AddressStatus request = XchainOuterClass.AddressStatus.newBuilder()
-                .setHeader(Common.newHeader())
-                .setAddress(account)
-                .addBcs(XchainOuterClass.TokenDetail.newBuilder().setBcname(chainName).build())
-                .build();
-        XchainOuterClass.AddressStatus response = blockingClient.getBalance(request);
+        XchainOuterClass.AddressStatus response = blockingClient.getBalance(BalanceFetcher.newRequest(chainName, account));
+        return BalanceFetcher.balanceOf(response, chainName);
+    }
 
-        for (int i = 0; i < response.getBcsCount(); i++) {
-            if (response.getBcs(i).getBcname().equals(chainName)) {
-                return new BigInteger(response.getBcs(i).getBalance());
-            }
-        }
-        Common.checkResponseHeader(response.getHeader(), "query balance");
-        return BigInteger.valueOf(0);
+    /**
+     * Get balances of many accounts with up to BalanceFetcher.DEFAULT_WINDOW getBalance calls in flight
+     *
+     * @param accounts account names, can be contract accounts, duplicates are queried once
+     * @return balances and errors by account, a failed account does not stop the others
+     */
+    public BalanceFetcher.Result getBalances(Collection<String> accounts) {
+        return getBalances(accounts, BalanceFetcher.DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param accounts account names, can be contract accounts, duplicates are queried once
+     * @param window   the max count of getBalance calls in flight
+     * @return balances and errors by account, a failed account does not stop the others
+     */
+    public BalanceFetcher.Result getBalances(Collection<String> accounts, int window) {
+        return new BalanceFetcher(this, window).fetch(accounts);
     }
 
     /**
@@ -393,14 +697,46 @@ public class XuperClient {
      * @return
      */
     public XchainOuterClass.Transaction queryTx(String txid) {
+        String bcname = chainName;
+        QueryCache cache = queryCache;
+        if (cache == null) {
+            return queryTxStatus(bcname, txid).getTx();
+        }
+        // a confirmed transaction in an irreversible block never changes
+        return cache.get(bcname + "/tx/" + txid, () -> queryTxStatus(bcname, txid), r ->
+                r.getStatus() == XchainOuterClass.TransactionStatus.CONFIRM
+                        && isIrreversible(bcname, -1, r.getDistance()) ? Long.MAX_VALUE : 0).getTx();
+    }
+
+    private XchainOuterClass.TxStatus queryTxStatus(String bcname, String txid) {
         XchainOuterClass.TxStatus request = XchainOuterClass.TxStatus.newBuilder()
                 .setHeader(Common.newHeader())
-                .setBcname(chainName)
+                .setBcname(bcname)
                 .setTxid(ByteString.copyFrom(Hex.decode(txid)))
                 .build();
         XchainOuterClass.TxStatus response = blockingClient.queryTx(request);
         Common.checkResponseHeader(response.getHeader(), "query transaction");
-        return response.getTx();
+        return response;
+    }
+
+    /**
+     * @param bcname   the name of chain
+     * @param height   the height of block, -1 if unknown
+     * @param distance the distance to the tip of trunk when height is unknown
+     * @return whether the block is not higher than the irreversible height, false if the consensus has no such height
+     */
+    private boolean isIrreversible(String bcname, long height, long distance) {
+        XchainOuterClass.BCStatus status = getBlockchainStatus(bcname);
+        long irreversible = status.getUtxoMeta().getIrreversibleBlockHeight();
+        if (height < 0) {
+            height = status.getMeta().getTrunkHeight() - distance;
+        }
+        return irreversible > 0 && height <= irreversible;
+    }
+
+    private long blockTtl(String bcname, XchainOuterClass.Block response) {
+        return response.getStatus() == XchainOuterClass.Block.EBlockStatus.TRUNK
+                && isIrreversible(bcname, response.getBlock().getHeight(), 0) ? Long.MAX_VALUE : 0;
     }
 
     /**
@@ -410,15 +746,24 @@ public class XuperClient {
      * @return
      */
     public XchainOuterClass.InternalBlock queryBlock(String blockid) {
+        String bcname = chainName;
+        QueryCache cache = queryCache;
+        if (cache == null) {
+            return getBlock(bcname, blockid).getBlock();
+        }
+        return cache.get(bcname + "/block/" + blockid, () -> getBlock(bcname, blockid), r -> blockTtl(bcname, r)).getBlock();
+    }
+
+    private XchainOuterClass.Block getBlock(String bcname, String blockid) {
         XchainOuterClass.BlockID request = XchainOuterClass.BlockID.newBuilder()
                 .setHeader(Common.newHeader())
-                .setBcname(chainName)
+                .setBcname(bcname)
                 .setBlockid(ByteString.copyFrom(Hex.decode(blockid)))
                 .setNeedContent(true)
                 .build();
         XchainOuterClass.Block response = blockingClient.getBlock(request);
         Common.checkResponseHeader(response.getHeader(), "query transaction");
-        return response.getBlock();
+        return response;
     }
 
     /**
@@ -427,16 +772,36 @@ public class XuperClient {
      * @return
      */
     public XchainOuterClass.InternalBlock queryBlockByHeight(long blockHeight) {
+        String bcname = chainName;
+        QueryCache cache = queryCache;
+        if (cache == null) {
+            return getBlockByHeight(bcname, blockHeight).getBlock();
+        }
+        return cache.get(bcname + "/height/" + blockHeight, () -> getBlockByHeight(bcname, blockHeight),
+                r -> blockTtl(bcname, r)).getBlock();
+    }
+
+    private XchainOuterClass.Block getBlockByHeight(String bcname, long blockHeight) {
         XchainOuterClass.BlockHeight request =  XchainOuterClass.BlockHeight.newBuilder()
                 .setHeader(Common.newHeader())
-                .setBcname(chainName)
+                .setBcname(bcname)
                 .setHeight(blockHeight)
                 //.setBlockid(ByteString.copyFrom(Hex.decode(blockid)))
                 //.setNeedContent(true)
                 .build();
         XchainOuterClass.Block response = blockingClient.getBlockByHeight(request);
         Common.checkResponseHeader(response.getHeader(), "query transaction");
-        return response.getBlock();
+        return response;
+    }
+
+    /**
+     * queryBlocksByHeight get blocks of a height range in order, with many requests in flight, see BlockRangeFetcher
+     * @param from the first height
+     * @param to the last height, inclusive
+     * @return the blocks in height order
+     */
+    public Stream<XchainOuterClass.InternalBlock> queryBlocksByHeight(long from, long to) {
+        return new BlockRangeFetcher(this).stream(from, to);
     }
 
 
@@ -464,6 +829,14 @@ public class XuperClient {
      * @return instance of BCStatus
      */
     public XchainOuterClass.BCStatus getBlockchainStatus(String chainName) {
+        QueryCache cache = queryCache;
+        if (cache == null) {
+            return queryBlockchainStatus(chainName);
+        }
+        return cache.get(chainName + "/status", () -> queryBlockchainStatus(chainName), r -> cache.getStatusTtlMillis());
+    }
+
+    private XchainOuterClass.BCStatus queryBlockchainStatus(String chainName) {
         XchainOuterClass.BCStatus request = XchainOuterClass.BCStatus.newBuilder()
                 .setHeader(Common.newHeader())
                 .setBcname(chainName)
@@ -486,7 +859,7 @@ public class XuperClient {
         return new Proposal()
                 .setChainName(chainName)
                 .setInitiator(from)
-                .addAuthRequire(Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceAddr())
+                .addAuthRequire(getConfig().getComplianceCheck().getComplianceCheckEndorseServiceAddr())
                 .invokeContract(evmContract, contract, method, evmArgs)
                 .preExec(this);
     }
@@ -500,18 +873,23 @@ public class XuperClient {
      * @return transaction.
      */
     public Transaction invokeEVMContract(Account from, String contract, String method, Map<String, String> args, BigInteger amount) {
+        return newInvokeEVMProposal(from, contract, method, args, amount).build(this).sign().send(this);
+    }
+
+    Proposal newInvokeEVMProposal(Account from, String contract, String method, Map<String, String> args, BigInteger amount) {
         Proposal p = new Proposal().setChainName(chainName);
-        if (Config.getInstance().getComplianceCheck().isNeedComplianceCheck()) {
-            p.addAuthRequire(Config.getInstance().getComplianceCheck().getComplianceCheckEndorseServiceAddr());
+        Config.ComplianceCheck complianceCheck = getConfig().getComplianceCheck();
+        if (complianceCheck.isNeedComplianceCheck()) {
+            p.addAuthRequire(complianceCheck.getComplianceCheckEndorseServiceAddr());
         }
         p.setInitiator(from);
 
         Map<String, byte[]> evmArgs = this.convertToXuper3EVMArgs(args);
 
         if (amount == null || amount.compareTo(BigInteger.ZERO) == 0) {
-            return p.invokeContract(evmContract, contract, method, evmArgs).build(this).sign().send(this);
+            return p.invokeContract(evmContract, contract, method, evmArgs);
         }
-        return p.transfer(contract, amount).invokeContract(evmContract, contract, method, evmArgs).build(this).sign().send(this);
+        return p.transfer(contract, amount).invokeContract(evmContract, contract, method, evmArgs);
     }
 
     private Map<String, byte[]> convertToXuper3EVMArgs(Map<String, String> initArgs) {
@@ -541,6 +919,10 @@ public class XuperClient {
     }
 
     private Transaction upgradeContract(Account from, byte[] code, String contract, String contractType) {
+        return invokeContract(from, xkernelModule, "", xkernelUpgradeMethod, upgradeContractArgs(from, code, contract, contractType));
+    }
+
+    Map<String, byte[]> upgradeContractArgs(Account from, byte[] code, String contract, String contractType) {
         if (from.getContractAccount().isEmpty()) {
             throw new RuntimeException("deploy contract must use contract account");
         }
@@ -559,56 +941,20 @@ public class XuperClient {
         args.put(argContractCode, code);
         args.put(argContractDesc, desc.toByteArray());
 
-        return invokeContract(from, xkernelModule, "", xkernelUpgradeMethod, args);
+        return args;
     }
     public  boolean verifyXuperSignature(String chainAddress, String sig,String msg) throws Exception {
-        byte[] signature = Hex.decode(sig);
-        byte[] rBytes =Arrays.copyOfRange(signature, 0, 32);
-        byte[] sBytes= Arrays.copyOfRange(signature, 32, 64);
-        BigInteger r = new BigInteger(1, rBytes);
-        BigInteger s = new BigInteger(1, sBytes);
-
-        // 根据您的需求，可以提取公钥的 X 和 Y 值
-        BigInteger publicKeyX = new BigInteger(1, Arrays.copyOfRange(signature, 64, 96));
-        BigInteger publicKeyY = new BigInteger(1, Arrays.copyOfRange(signature, 96, 128));
-        byte[] data = Arrays.copyOfRange(signature, 128, signature.length);
-
-        // 使用 ECNamedCurveTable 获取 secp256r1 曲线参数
-        //ECNamedCurveParameterSpec curveParams = ECNamedCurveTable.getParameterSpec("secp256r1");
-
-        // 构造 ECPoint 对象
-        //ECPoint ecPoint = curveParams.getCurve().createPoint(publicKeyX, publicKeyY);
-
-        ECPoint ecPoint =Ecc.curve.getCurve().createPoint(publicKeyX, publicKeyY);
-
-
-
-        // 构造 ECPoint 对象
-        // ECPoint ecPoint = new ECPoint(publicKeyX, publicKeyY);
-
-        // 构造 ECDomainParameters 对象
-        //ECDomainParameters domainParameters = new ECDomainParameters(curveParams.getCurve(), curveParams.getG(), curveParams.getN(), curveParams.getH());
-
-        // 构造 ECPublicKeyParameters 对象
-        ECPublicKeyParameters publicKeyParameters = new ECPublicKeyParameters(ecPoint, Ecc.domain);
-
-        // 验证 address是否符合
-        String address=cryptoClient.getAddressFromPublicKey(publicKeyParameters.getQ());
-        if (!address.equals(chainAddress)){
-            return false;
-        }
-        if (msg!=null&&!msg.equals(new String(data))){
-            return false;
-        }
-
-
-
-        // 使用 Bouncy Castle 的 ECDSASigner 进行签名验证
-        ECDSASigner ecdsaSigner = new ECDSASigner(new RandomDSAKCalculator());
-        ecdsaSigner.init(false, publicKeyParameters);
+        return signatureVerifier.verify(chainAddress, sig, msg, CryptoClient.getCryptoClient(getConfig()));
+    }
 
-        // 传递 R 和 S 值
-        return ecdsaSigner.verifySignature(data,r, s);
+    /**
+     * verify many signatures in parallel, the public keys of known signers are cached.
+     *
+     * @param items the signatures
+     * @return the results in the order of items, a malformed signature is false
+     */
+    public List<Boolean> verifyXuperSignatures(List<SignatureVerifier.Item> items) {
+        return signatureVerifier.verifyAll(items, CryptoClient.getCryptoClient(getConfig()));
     }
 
 }
@@ -3,74 +3,191 @@ package com.baidu.xuper.config;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 
+/**
+ * the settings of sdk. The config in use is an immutable snapshot published through an atomic reference,
+ * read it once per operation with getInstance() or XuperClient.getConfig(). To change a setting, change a copy()
+ * and publish it with setInstance, or give it to a single client with XuperClient.setConfig.
+ * <pre>
+ * Config.setConfigPath("./conf/sdk.yaml", true); // reload when the file changes
+ * Config gm = Config.getInstance().copy();
+ * gm.setCrypto(Config.CRYPTO_GM);
+ * XuperClient client = new XuperClient("127.0.0.1:37101").setConfig(gm);
+ * </pre>
+ */
 public class Config {
     public static final String CRYPTO_CHAIN = "xchain";
     public static final String CRYPTO_GM = "gm";
 
-    private static Config singletonConfig;
-    private static String confFilePath;
-    private static InputStream confFileInputStream;
+    private static final AtomicReference<Config> current = new AtomicReference<>();
+    private static volatile String confFilePath;
+    private static volatile InputStream confFileInputStream;
+    private static Thread watcher;
+    private static volatile Consumer<Exception> reloadErrorHandler = e -> {
+        Thread t = Thread.currentThread();
+        t.getUncaughtExceptionHandler().uncaughtException(t, e);
+    };
 
     private String endorseServiceHost;
     private ComplianceCheck complianceCheck;
     private String minNewChainAmount;
     private String crypto;
     private Integer txVersion=1;
+    private volatile boolean frozen;
 
     private Config() {
     }
 
     public static void setConfigPath(String path) throws FileNotFoundException {
-        confFilePath = path;
-        setConfigInputStream(new FileInputStream(path));
-        getInstance();
+        setConfigPath(path, false);
     }
+
+    /**
+     * load the config file and publish it.
+     *
+     * @param path  the path of config file
+     * @param watch whether to load and publish the file again whenever it changes
+     */
+    public static void setConfigPath(String path, boolean watch) throws FileNotFoundException {
+        Config config = load(path);
+        synchronized (Config.class) {
+            stopWatcher();
+            confFilePath = path;
+            confFileInputStream = null;
+            current.set(config);
+            if (watch) {
+                watcher = new Thread(() -> watch(path), "xuper-config-watch");
+                watcher.setDaemon(true);
+                watcher.start();
+            }
+        }
+    }
+
+    /**
+     * @param inputStream the config file, loaded and published by the next getInstance. A watched config file
+     *                    is not watched any more.
+     */
     public static void setConfigInputStream(InputStream inputStream) {
-        confFileInputStream = inputStream;
+        synchronized (Config.class) {
+            stopWatcher();
+            confFileInputStream = inputStream;
+            current.set(null);
+        }
+    }
+
+    /**
+     * @param handler called on the watch thread with the exception when a changed config file can not be loaded,
+     *                the config in use is kept. By default the exception goes to the uncaught exception handler
+     *                of the thread.
+     */
+    public static void setReloadErrorHandler(Consumer<Exception> handler) {
+        reloadErrorHandler = handler;
     }
+
+    // called with the lock of Config.class held
+    private static void stopWatcher() {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
     public static boolean hasConfigFile() {
         return confFilePath != null || confFileInputStream != null;
     }
 
+    /**
+     * @return the published config, it can not be changed
+     */
     public static Config getInstance() {
-        if (singletonConfig != null) {
-            return singletonConfig;
+        Config config = current.get();
+        if (config != null) {
+            return config;
         }
-
-        if (hasConfigFile()) {
-            try {
-                singletonConfig = getConfigFromYaml();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        synchronized (Config.class) {
+            config = current.get();
+            if (config == null) {
+                if (confFileInputStream != null) {
+                    config = load(confFileInputStream);
+                } else if (confFilePath != null) {
+                    try {
+                        config = load(confFilePath);
+                    } catch (FileNotFoundException e) {
+                        throw new RuntimeException(e);
+                    }
+                } else {
+                    config = getDefaultConfig();
+                }
+                current.set(config.freeze());
             }
-        } else {
-            singletonConfig = getDefaultConfig();
+            return config;
         }
+    }
 
-        return singletonConfig;
+    /**
+     * publish the config, the following getInstance calls return it. A watched config file is not watched any more.
+     *
+     * @param config the config, it can not be changed after this
+     */
+    public static void setInstance(Config config) {
+        synchronized (Config.class) {
+            stopWatcher();
+            current.set(config.freeze());
+        }
     }
 
-    private static Config getConfigFromYaml() throws Exception {
+    /**
+     * @param path the path of config file
+     * @return the config of file, it can not be changed
+     */
+    public static Config load(String path) throws FileNotFoundException {
+        try (InputStream in = new FileInputStream(new File(path))) {
+            return load(in);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param inputStream the config file
+     * @return the config of file, it can not be changed
+     */
+    public static Config load(InputStream inputStream) {
         Yaml yaml = new Yaml(new Constructor(Config.class,new LoaderOptions()));
-        Config config= yaml.load(confFileInputStream!=null?confFileInputStream:new FileInputStream(new File(confFilePath)));
+        Config config= yaml.load(inputStream);
         if (config.getTxVersion()==null){
             config.setTxVersion(1);
         }
-        return config;
+        return config.freeze();
     }
 
-    private static Config getDefaultConfig() {
-        singletonConfig = new Config();
-        singletonConfig.minNewChainAmount = "100";
-        singletonConfig.crypto = CRYPTO_CHAIN;
-//        singletonConfig.crypto = CRYPTO_GM;
-        singletonConfig.endorseServiceHost = "";
+    /**
+     * @return the default config, it can not be changed
+     */
+    public static Config getDefaultConfig() {
+        Config config = new Config();
+        config.minNewChainAmount = "100";
+        config.crypto = CRYPTO_CHAIN;
+//        config.crypto = CRYPTO_GM;
+        config.endorseServiceHost = "";
 
         ComplianceCheck c = new ComplianceCheck();
         c.isNeedComplianceCheck = false;
@@ -79,9 +196,93 @@ public class Config {
         c.complianceCheckEndorseServiceFeeAddr = "XBbhR82cB6PvaLJs3D4uB9f12bhmKkHeX";
         c.complianceCheckEndorseServiceAddr = "TYyA3y8wdFZyzExtcbRNVd7ZZ2XXcfjdw";
 
-        singletonConfig.complianceCheck = c;
-        singletonConfig.txVersion = 1;
-        return singletonConfig;
+        config.complianceCheck = c;
+        config.txVersion = 1;
+        return config.freeze();
+    }
+
+    private static void watch(String path) {
+        Path file = Paths.get(path).toAbsolutePath();
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = ws.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                // an editor may still be writing the file
+                Thread.sleep(100);
+                Config config;
+                try {
+                    config = load(path);
+                } catch (Exception e) {
+                    // keep the config in use until the file is valid again
+                    reloadErrorHandler.accept(e);
+                    continue;
+                }
+                synchronized (Config.class) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    current.set(config);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped by setConfigPath, setConfigInputStream or setInstance
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return a copy which can be changed
+     */
+    public Config copy() {
+        Config config = new Config();
+        config.endorseServiceHost = endorseServiceHost;
+        config.minNewChainAmount = minNewChainAmount;
+        config.crypto = crypto;
+        config.txVersion = txVersion;
+        if (complianceCheck != null) {
+            ComplianceCheck c = new ComplianceCheck();
+            c.isNeedComplianceCheck = complianceCheck.isNeedComplianceCheck;
+            c.isNeedComplianceCheckFee = complianceCheck.isNeedComplianceCheckFee;
+            c.complianceCheckEndorseServiceFee = complianceCheck.complianceCheckEndorseServiceFee;
+            c.complianceCheckEndorseServiceFeeAddr = complianceCheck.complianceCheckEndorseServiceFeeAddr;
+            c.complianceCheckEndorseServiceAddr = complianceCheck.complianceCheckEndorseServiceAddr;
+            config.complianceCheck = c;
+        }
+        return config;
+    }
+
+    /**
+     * make this config and its ComplianceCheck unchangeable, the setters throw IllegalStateException after it.
+     *
+     * @return this config
+     */
+    public Config freeze() {
+        if (complianceCheck != null) {
+            complianceCheck.frozen = true;
+        }
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("config is published, change a copy()");
+        }
     }
 
     public String getEndorseServiceHost() {
@@ -101,18 +302,22 @@ public class Config {
     }
 
     public void setEndorseServiceHost(String endorseServiceHost) {
+        checkNotFrozen();
         this.endorseServiceHost = endorseServiceHost;
     }
 
     public void setComplianceCheck(ComplianceCheck complianceCheck) {
+        checkNotFrozen();
         this.complianceCheck = complianceCheck;
     }
 
     public void setMinNewChainAmount(String minNewChainAmount) {
+        checkNotFrozen();
         this.minNewChainAmount = minNewChainAmount;
     }
 
     public void setCrypto(String crypto) {
+        checkNotFrozen();
         this.crypto = crypto;
     }
 
@@ -121,6 +326,7 @@ public class Config {
     }
 
     public void setTxVersion(Integer txVersion) {
+        checkNotFrozen();
         this.txVersion = txVersion;
     }
 
@@ -130,6 +336,7 @@ public class Config {
         private int complianceCheckEndorseServiceFee;
         private String complianceCheckEndorseServiceFeeAddr;
         private String complianceCheckEndorseServiceAddr;
+        private volatile boolean frozen;
 
         public boolean isNeedComplianceCheck() {
             return isNeedComplianceCheck;
@@ -152,23 +359,34 @@ public class Config {
         }
 
         public void setIsNeedComplianceCheck(boolean needComplianceCheck) {
+            checkNotFrozen();
             isNeedComplianceCheck = needComplianceCheck;
         }
 
         public void setIsNeedComplianceCheckFee(boolean needComplianceCheckFee) {
+            checkNotFrozen();
             isNeedComplianceCheckFee = needComplianceCheckFee;
         }
 
         public void setComplianceCheckEndorseServiceFee(int complianceCheckEndorseServiceFee) {
+            checkNotFrozen();
             this.complianceCheckEndorseServiceFee = complianceCheckEndorseServiceFee;
         }
 
         public void setComplianceCheckEndorseServiceFeeAddr(String complianceCheckEndorseServiceFeeAddr) {
+            checkNotFrozen();
             this.complianceCheckEndorseServiceFeeAddr = complianceCheckEndorseServiceFeeAddr;
         }
 
         public void setComplianceCheckEndorseServiceAddr(String complianceCheckEndorseServiceAddr) {
+            checkNotFrozen();
             this.complianceCheckEndorseServiceAddr = complianceCheckEndorseServiceAddr;
         }
+
+        private void checkNotFrozen() {
+            if (frozen) {
+                throw new IllegalStateException("config is published, change a copy()");
+            }
+        }
     }
 }
@@ -31,7 +31,19 @@ import java.security.Security;
 
 public class XChainCryptoClient implements Crypto {
     public XChainCryptoClient(){
-        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+        ProviderHolder.register();
+    }
+
+    // register the BouncyCastle provider once, not for every client.
+    private static class ProviderHolder {
+        static {
+            if (Security.getProvider(org.bouncycastle.jce.provider.BouncyCastleProvider.PROVIDER_NAME) == null) {
+                Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+            }
+        }
+
+        static void register() {
+        }
     }
     /**
      * 产生随机熵
@@ -125,6 +137,18 @@ public class XChainCryptoClient implements Crypto {
         return Ecc.sign(msg, privateKey);
     }
 
+    /**
+     * 使用ECC私钥来签名，k 按 RFC 6979 由私钥和消息确定
+     *
+     * @param msg
+     * @param privateKey
+     * @param deterministic
+     * @return
+     */
+    public byte[] signECDSA(byte[] msg, BigInteger privateKey, boolean deterministic) throws IOException {
+        return Ecc.sign(msg, privateKey, deterministic);
+    }
+
     /**
      * 使用单个公钥来生成钱包地址
      *
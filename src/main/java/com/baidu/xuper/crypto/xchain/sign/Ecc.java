@@ -1,31 +1,80 @@
 package com.baidu.xuper.crypto.xchain.sign;
 
-import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.DERSequenceGenerator;
 import org.bouncycastle.asn1.nist.NISTNamedCurves;
 import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.crypto.params.ECDomainParameters;
 import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
 import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.FixedPointUtil;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.security.SecureRandom;
 
 public class Ecc {
     static final String curveName = "P-256";
     public static final X9ECParameters curve = NISTNamedCurves.getByName(curveName);
     public static final ECDomainParameters domain = new ECDomainParameters(curve.getCurve(), curve.getG(), curve.getN(), curve.getH());
 
+    // SecureRandom is thread safe, the seeding is paid once. A signer keeps state between init and
+    // generateSignature and costs little to create, so each call has its own, also on virtual threads.
+    private static final SecureRandom random = new SecureRandom();
+
+    static {
+        // the comb table of G is built once here instead of on the first signature
+        FixedPointUtil.precompute(domain.getG());
+    }
+
+    /**
+     * sign with a random k.
+     *
+     * @param hash       the digest to sign
+     * @param privateKey the private key
+     * @return the DER encoded signature
+     */
     static public byte[] sign(byte[] hash, BigInteger privateKey) throws IOException {
-        ECDSASigner signer = new ECDSASigner();
-        signer.init(true, new ECPrivateKeyParameters(privateKey, domain));
+        return sign(hash, privateKey, false);
+    }
+
+    /**
+     * @param hash          the digest to sign
+     * @param privateKey    the private key
+     * @param deterministic whether to derive k from the key and digest as RFC 6979 instead of random
+     * @return the DER encoded signature
+     */
+    static public byte[] sign(byte[] hash, BigInteger privateKey, boolean deterministic) throws IOException {
+        ECPrivateKeyParameters key = new ECPrivateKeyParameters(privateKey, domain);
+        ECDSASigner signer;
+        if (deterministic) {
+            signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+            signer.init(true, key);
+        } else {
+            signer = new ECDSASigner();
+            signer.init(true, new ParametersWithRandom(key, random));
+        }
         BigInteger[] signature = signer.generateSignature(hash);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DERSequenceGenerator seq = new DERSequenceGenerator(baos);
-        seq.addObject(new ASN1Integer(signature[0]));
-        seq.addObject(new ASN1Integer(signature[1]));
-        seq.close();
-        return baos.toByteArray();
+        return derEncode(signature[0], signature[1]);
+    }
+
+    // SEQUENCE { INTEGER r, INTEGER s }, both are less than n so the lengths fit in one byte.
+    static byte[] derEncode(BigInteger r, BigInteger s) {
+        byte[] rb = r.toByteArray();
+        byte[] sb = s.toByteArray();
+        int len = 2 + rb.length + 2 + sb.length;
+        byte[] out = new byte[2 + len];
+        int pos = 0;
+        out[pos++] = 0x30;
+        out[pos++] = (byte) len;
+        out[pos++] = 0x02;
+        out[pos++] = (byte) rb.length;
+        System.arraycopy(rb, 0, out, pos, rb.length);
+        pos += rb.length;
+        out[pos++] = 0x02;
+        out[pos++] = (byte) sb.length;
+        System.arraycopy(sb, 0, out, pos, sb.length);
+        return out;
     }
 }
@@ -0,0 +1,67 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import io.grpc.Status;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BalanceFetcherTest {
+    @Test
+    public void fetch() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ConcurrentHashMap<String, Integer> calls = new ConcurrentHashMap<>();
+        BalanceFetcher fetcher = new BalanceFetcher("xuper", request -> {
+            String address = request.getAddress();
+            calls.merge(address, 1, Integer::sum);
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                if (address.equals("bad")) {
+                    throw Status.UNAVAILABLE.asRuntimeException();
+                }
+                return XchainOuterClass.AddressStatus.newBuilder()
+                        .setAddress(address)
+                        .addBcs(XchainOuterClass.TokenDetail.newBuilder().setBcname("xuper").setBalance(address.substring(1)))
+                        .build();
+            }, CompletableFuture.delayedExecutor(5, TimeUnit.MILLISECONDS));
+        }, 4);
+
+        List<String> accounts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            accounts.add("a" + i);
+            accounts.add("a" + i);
+        }
+        accounts.add("bad");
+        BalanceFetcher.Result r = fetcher.fetch(accounts);
+
+        assertFalse(r.isSuccess());
+        assertEquals(50, r.getBalances().size());
+        assertEquals(BigInteger.valueOf(42), r.getBalances().get("a42"));
+        assertEquals(Status.Code.UNAVAILABLE, Status.fromThrowable(r.getErrors().get("bad")).getCode());
+        assertEquals(51, calls.size());
+        for (int n : calls.values()) {
+            assertEquals(1, n);
+        }
+        assertTrue(maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void balanceOf() {
+        XchainOuterClass.AddressStatus response = XchainOuterClass.AddressStatus.newBuilder()
+                .addBcs(XchainOuterClass.TokenDetail.newBuilder().setBcname("other").setBalance("1"))
+                .addBcs(XchainOuterClass.TokenDetail.newBuilder().setBcname("xuper").setBalance("100"))
+                .build();
+        assertEquals(BigInteger.valueOf(100), BalanceFetcher.balanceOf(response, "xuper"));
+        assertEquals(BigInteger.ZERO, BalanceFetcher.balanceOf(XchainOuterClass.AddressStatus.getDefaultInstance(), "xuper"));
+    }
+}
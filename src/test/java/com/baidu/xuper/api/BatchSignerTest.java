@@ -0,0 +1,72 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.crypto.xchain.sign.Ecc;
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchSignerTest {
+
+    @Test
+    public void signAll() throws Exception {
+        Account account = Account.create(1, 2);
+        UtxoPool pool = new UtxoPool(null, account, "xuper");
+        List<XchainOuterClass.Utxo> utxos = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            utxos.add(XchainOuterClass.Utxo.newBuilder()
+                    .setRefTxid(ByteString.copyFromUtf8("tx" + i))
+                    .setToAddr(ByteString.copyFromUtf8(account.getAKAddress()))
+                    .setAmount(ByteString.copyFrom(BigInteger.TEN.toByteArray()))
+                    .build());
+        }
+        pool.add(utxos);
+
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            txs.add(pool.build(new Proposal().setInitiator(account).transfer("XC1111111111111111@xuper", BigInteger.ONE)));
+        }
+        new BatchSigner().signAll(txs);
+
+        for (Transaction tx : txs) {
+            XchainOuterClass.Transaction pbtx = tx.getRawTx();
+            assertEquals(1, pbtx.getInitiatorSignsCount());
+            assertEquals(1, pbtx.getAuthRequireSignsCount());
+            byte[] sig = pbtx.getInitiatorSigns(0).getSign().toByteArray();
+            assertTrue(verify(TxEncoder.makeTxDigest(pbtx), sig, account));
+        }
+    }
+
+    @Test
+    public void signDigests() throws Exception {
+        Account a = Account.create(1, 2);
+        Account b = Account.create(1, 2);
+        List<byte[]> digests = Arrays.asList(new byte[32], new byte[]{1, 2, 3}, "digest".getBytes());
+        List<BigInteger> keys = Arrays.asList(a.getKeyPair().getPrivateKey(), b.getKeyPair().getPrivateKey(), a.getKeyPair().getPrivateKey());
+        List<byte[]> sigs = new BatchSigner().signDigests(digests, keys);
+        assertEquals(3, sigs.size());
+        assertTrue(verify(digests.get(0), sigs.get(0), a));
+        assertTrue(verify(digests.get(1), sigs.get(1), b));
+        assertTrue(verify(digests.get(2), sigs.get(2), a));
+        assertFalse(verify(digests.get(2), sigs.get(2), b));
+    }
+
+    private static boolean verify(byte[] digest, byte[] sig, Account account) {
+        ASN1Sequence seq = ASN1Sequence.getInstance(sig);
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(false, new ECPublicKeyParameters(account.getKeyPair().getPublicKey(), Ecc.domain));
+        return signer.verifySignature(digest,
+                ASN1Integer.getInstance(seq.getObjectAt(0)).getValue(),
+                ASN1Integer.getInstance(seq.getObjectAt(1)).getValue());
+    }
+}
@@ -0,0 +1,146 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BlockArchiveTest {
+
+    static byte[] id(String prefix, long height) {
+        byte[] id = new byte[32];
+        byte[] p = (prefix + height).getBytes();
+        System.arraycopy(p, 0, id, 0, p.length);
+        return id;
+    }
+
+    static XchainOuterClass.InternalBlock block(long height) {
+        XchainOuterClass.InternalBlock.Builder b = XchainOuterClass.InternalBlock.newBuilder()
+                .setHeight(height)
+                .setBlockid(ByteString.copyFrom(id("b", height)));
+        for (int i = 0; i < 3; i++) {
+            b.addTransactions(XchainOuterClass.Transaction.newBuilder()
+                    .setTxid(ByteString.copyFrom(id("t" + i + "-", height)))
+                    .setDesc(ByteString.copyFromUtf8("tx " + i + " of " + height)));
+        }
+        return b.build();
+    }
+
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void appendReadAndReopen() throws Exception {
+        Path dir = Files.createTempDirectory("archive");
+        try {
+            // small segments so blocks span several files
+            try (BlockArchive archive = BlockArchive.open(dir, 1024)) {
+                assertEquals(-1, archive.lastHeight());
+                assertNull(archive.getBlockByHeight(0));
+                for (long h = 100; h < 150; h++) {
+                    archive.append(block(h));
+                }
+                try {
+                    archive.append(block(151));
+                    fail();
+                } catch (IllegalArgumentException e) {
+                    // gap
+                }
+                assertEquals(100, archive.firstHeight());
+                assertEquals(149, archive.lastHeight());
+                assertEquals(block(120), archive.getBlockByHeight(120));
+                assertNull(archive.getBlockByHeight(150));
+            }
+            assertTrue(Files.exists(dir.resolve("00000002.seg")));
+
+            try (BlockArchive archive = BlockArchive.open(dir, 1024)) {
+                assertEquals(149, archive.lastHeight());
+                archive.append(block(150));
+                for (long h = 100; h <= 150; h++) {
+                    assertEquals(block(h), archive.getBlockByHeight(h));
+                }
+                ByteBuffer raw = archive.getRawBlock(101);
+                assertTrue(raw.isReadOnly());
+                assertEquals(block(101).getSerializedSize(), raw.remaining());
+
+                assertEquals(block(130), archive.getBlock(Hex.toHexString(id("b", 130))));
+                assertEquals(block(150).getTransactions(2), archive.getTx(Hex.toHexString(id("t2-", 150))));
+                assertNull(archive.getTx(Hex.toHexString(id("t9-", 150))));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void dropPartialRecords() throws Exception {
+        Path dir = Files.createTempDirectory("archive");
+        try {
+            // the indexes are larger than one read chunk
+            try (BlockArchive archive = BlockArchive.open(dir, 65536)) {
+                for (long h = 0; h < 1000; h++) {
+                    archive.append(block(h));
+                }
+            }
+            long heightSize = Files.size(dir.resolve("height.idx"));
+            long idSize = Files.size(dir.resolve("id.idx"));
+            Files.write(dir.resolve("height.idx"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+            Files.write(dir.resolve("id.idx"), new byte[]{0, 32, 1}, StandardOpenOption.APPEND);
+
+            try (BlockArchive archive = BlockArchive.open(dir, 65536)) {
+                assertEquals(999, archive.lastHeight());
+                assertEquals(heightSize, Files.size(dir.resolve("height.idx")));
+                assertEquals(idSize, Files.size(dir.resolve("id.idx")));
+                for (long h = 0; h < 1000; h++) {
+                    assertEquals(block(h), archive.getBlock(Hex.toHexString(id("b", h))));
+                }
+                archive.append(block(1000));
+                assertEquals(block(1000).getTransactions(1), archive.getTx(Hex.toHexString(id("t1-", 1000))));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void rebuildIdIndex() throws Exception {
+        Path dir = Files.createTempDirectory("archive");
+        try {
+            try (BlockArchive archive = BlockArchive.open(dir, 65536)) {
+                for (long h = 0; h < 300; h++) {
+                    archive.append(block(h));
+                }
+            }
+            // as if the ids were lost in a crash, they are indexed again from the blocks
+            Files.delete(dir.resolve("id.hash"));
+            Files.write(dir.resolve("id.idx"), new byte[0]);
+
+            try (BlockArchive archive = BlockArchive.open(dir, 65536)) {
+                assertEquals(299, archive.lastHeight());
+                for (long h = 0; h < 300; h++) {
+                    assertEquals(block(h), archive.getBlock(Hex.toHexString(id("b", h))));
+                    assertEquals(block(h).getTransactions(2), archive.getTx(Hex.toHexString(id("t2-", h))));
+                }
+                assertNull(archive.getBlock(Hex.toHexString(id("b", 300))));
+            }
+            try (BlockArchive archive = BlockArchive.open(dir, 65536)) {
+                assertEquals(block(150).getTransactions(0), archive.getTx(Hex.toHexString(id("t0-", 150))));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.*;
+
+public class BlockEventStreamTest {
+
+    static EventOuterClass.Event event(long height) {
+        EventOuterClass.FilteredBlock block = EventOuterClass.FilteredBlock.newBuilder()
+                .setBcname("xuper")
+                .setBlockid("block" + height)
+                .setBlockHeight(height)
+                .addTxs(EventOuterClass.FilteredTransaction.newBuilder().setTxid("tx" + height))
+                .build();
+        return EventOuterClass.Event.newBuilder().setPayload(block.toByteString()).build();
+    }
+
+    @Test
+    public void lazyHeight() throws Exception {
+        EventOuterClass.Event e = event(12345);
+        BlockEventStream.BlockEvent be = new BlockEventStream.BlockEvent(e.getPayload());
+        assertEquals(12345, be.getHeight());
+        assertEquals("block12345", be.getBlock().getBlockid());
+        assertEquals(0, new BlockEventStream.BlockEvent(ByteString.EMPTY).getHeight());
+    }
+
+    @Test
+    public void flowControlAndResubscribe() throws Exception {
+        FakeServer server = new FakeServer();
+        EventOuterClass.BlockFilter filter = EventOuterClass.BlockFilter.newBuilder().setBcname("xuper")
+                .setRange(EventOuterClass.BlockRange.newBuilder().setStart("10")).build();
+        BlockEventStream stream = new BlockEventStream(server, filter)
+                .setBufferSize(2)
+                .setBackoff(1, 1, TimeUnit.MILLISECONDS)
+                .start();
+
+        FakeCall first = server.calls.get(0);
+        assertEquals("10", server.start(0));
+        assertEquals(2, first.requested);
+        first.observer.onNext(event(10));
+        first.observer.onNext(event(11));
+
+        assertEquals(10, stream.take().getHeight());
+        assertEquals(3, first.requested);
+        assertEquals(10, stream.getLastHeight());
+
+        first.observer.onError(new RuntimeException("broken"));
+        for (int i = 0; i < 100 && server.calls.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, server.calls.size());
+        FakeCall second = server.calls.get(1);
+        assertEquals("12", server.start(1));
+        // block 11 is still buffered, only one more is requested
+        assertEquals(1, second.requested);
+
+        // a late event of the broken call is dropped, so is a duplicated height
+        first.observer.onNext(event(12));
+        second.observer.onNext(event(11));
+        second.observer.onNext(event(12));
+
+        assertEquals(11, stream.take().getHeight());
+        assertEquals(12, stream.take().getHeight());
+        assertEquals(3, second.requested);
+        assertNull(stream.poll(10, TimeUnit.MILLISECONDS));
+
+        stream.close();
+        assertTrue(second.cancelled);
+        assertNull(stream.take());
+        assertNull(stream.take());
+    }
+
+    @Test
+    public void endOfRange() throws Exception {
+        FakeServer server = new FakeServer();
+        EventOuterClass.BlockFilter filter = EventOuterClass.BlockFilter.newBuilder()
+                .setRange(EventOuterClass.BlockRange.newBuilder().setStart("1").setEnd("3")).build();
+        BlockEventStream stream = new BlockEventStream(server, filter).start();
+        FakeCall call = server.calls.get(0);
+        call.observer.onNext(event(1));
+        call.observer.onNext(event(2));
+        call.observer.onCompleted();
+        assertEquals(1, stream.take().getHeight());
+        assertEquals(2, stream.take().getHeight());
+        assertNull(stream.take());
+        assertEquals(1, server.calls.size());
+        stream.close();
+
+        // the last blocks of range are excluded by the filter
+        filter = filter.toBuilder().setRange(EventOuterClass.BlockRange.newBuilder().setStart("1").setEnd("6")).build();
+        stream = new BlockEventStream(server, filter).setBackoff(1, 1, TimeUnit.MILLISECONDS).start();
+        call = server.calls.get(1);
+        call.observer.onNext(event(2));
+        call.observer.onCompleted();
+        assertEquals(2, stream.take().getHeight());
+        assertNull(stream.take());
+        Thread.sleep(20);
+        assertEquals(2, server.calls.size());
+    }
+
+    static class FakeServer implements BiConsumer<EventOuterClass.SubscribeRequest, StreamObserver<EventOuterClass.Event>> {
+        final List<EventOuterClass.SubscribeRequest> requests = new ArrayList<>();
+        final List<FakeCall> calls = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized void accept(EventOuterClass.SubscribeRequest request, StreamObserver<EventOuterClass.Event> observer) {
+            FakeCall call = new FakeCall(observer);
+            ((ClientResponseObserver<EventOuterClass.SubscribeRequest, EventOuterClass.Event>) observer).beforeStart(call);
+            requests.add(request);
+            calls.add(call);
+        }
+
+        synchronized String start(int i) throws Exception {
+            return EventOuterClass.BlockFilter.parseFrom(requests.get(i).getFilter()).getRange().getStart();
+        }
+    }
+
+    static class FakeCall extends ClientCallStreamObserver<EventOuterClass.SubscribeRequest> {
+        final StreamObserver<EventOuterClass.Event> observer;
+        volatile int requested;
+        volatile boolean cancelled;
+
+        FakeCall(StreamObserver<EventOuterClass.Event> observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public void disableAutoRequestWithInitial(int request) {
+            requested = request;
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public synchronized void request(int count) {
+            requested += count;
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+        @Override
+        public void onNext(EventOuterClass.SubscribeRequest value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
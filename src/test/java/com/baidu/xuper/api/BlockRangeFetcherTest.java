@@ -0,0 +1,110 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.baidu.xuper.pb.XchainOuterClass;
+import io.grpc.Status;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BlockRangeFetcherTest {
+
+    static XchainOuterClass.Block block(long height) {
+        return XchainOuterClass.Block.newBuilder()
+                .setHeader(XchainOuterClass.Header.newBuilder())
+                .setStatus(XchainOuterClass.Block.EBlockStatus.TRUNK)
+                .setBlock(XchainOuterClass.InternalBlock.newBuilder().setHeight(height))
+                .build();
+    }
+
+    @Test
+    public void inOrderWithRetry() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ConcurrentHashMap<Long, Boolean> failed = new ConcurrentHashMap<>();
+        BlockRangeFetcher.Source flaky = h -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            // later heights complete first, every tenth height fails once
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                if (h % 10 == 0 && failed.putIfAbsent(h, true) == null) {
+                    throw Status.UNAVAILABLE.asRuntimeException();
+                }
+                return block(h);
+            }, CompletableFuture.delayedExecutor(100 - h % 7 * 10, TimeUnit.MILLISECONDS));
+        };
+        BlockRangeFetcher fetcher = new BlockRangeFetcher(flaky, flaky).setConcurrency(8).setRetry(3, 1);
+        try (Stream<XchainOuterClass.InternalBlock> blocks = fetcher.stream(1, 50)) {
+            List<Long> heights = blocks.map(XchainOuterClass.InternalBlock::getHeight).collect(Collectors.toList());
+            assertEquals(50, heights.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(Long.valueOf(i + 1), heights.get(i));
+            }
+        }
+        assertEquals(5, failed.size());
+        assertTrue(maxInFlight.get() <= 8);
+    }
+
+    @Test
+    public void permanentError() {
+        BlockRangeFetcher.Source source = h -> h == 3
+                ? CompletableFuture.completedFuture(XchainOuterClass.Block.newBuilder()
+                .setHeader(XchainOuterClass.Header.newBuilder().setError(XchainOuterClass.XChainErrorEnum.UNKNOW_ERROR))
+                .build())
+                : CompletableFuture.completedFuture(block(h));
+        Iterator<XchainOuterClass.InternalBlock> it = new BlockRangeFetcher(source).iterator(1, 5);
+        assertEquals(1, it.next().getHeight());
+        assertEquals(2, it.next().getHeight());
+        try {
+            it.next();
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("query block 3"));
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void closeCancelsCalls() {
+        List<CompletableFuture<XchainOuterClass.Block>> calls = new CopyOnWriteArrayList<>();
+        BlockRangeFetcher.Source source = h -> {
+            CompletableFuture<XchainOuterClass.Block> f = h == 1
+                    ? CompletableFuture.completedFuture(block(h)) : new CompletableFuture<>();
+            calls.add(f);
+            return f;
+        };
+        Stream<XchainOuterClass.InternalBlock> blocks = new BlockRangeFetcher(source).setConcurrency(4).stream(1, 100);
+        assertEquals(1, blocks.iterator().next().getHeight());
+        blocks.close();
+        assertEquals(4, calls.size());
+        for (CompletableFuture<XchainOuterClass.Block> f : calls.subList(1, 4)) {
+            assertTrue(f.isCancelled());
+        }
+    }
+
+    @Test
+    public void cancelGrpcCall() {
+        AtomicReference<BlockEventStreamTest.FakeCall> call = new AtomicReference<>();
+        CompletableFuture<EventOuterClass.Event> f = FutureObserver.call((EventOuterClass.SubscribeRequest request,
+                                                                         StreamObserver<EventOuterClass.Event> observer) -> {
+            call.set(new BlockEventStreamTest.FakeCall(observer));
+            ((ClientResponseObserver<EventOuterClass.SubscribeRequest, EventOuterClass.Event>) observer).beforeStart(call.get());
+        }, EventOuterClass.SubscribeRequest.getDefaultInstance());
+        assertFalse(call.get().cancelled);
+        f.cancel(false);
+        assertTrue(call.get().cancelled);
+    }
+}
@@ -0,0 +1,130 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConfirmationTrackerTest {
+
+    static EventOuterClass.FilteredBlock block(long height, String... txids) {
+        EventOuterClass.FilteredBlock.Builder b = EventOuterClass.FilteredBlock.newBuilder().setBlockHeight(height);
+        for (String txid : txids) {
+            b.addTxs(EventOuterClass.FilteredTransaction.newBuilder().setTxid(txid));
+        }
+        return b.build();
+    }
+
+    static EventOuterClass.Event event(EventOuterClass.FilteredBlock block) {
+        return EventOuterClass.Event.newBuilder().setPayload(block.toByteString()).build();
+    }
+
+    @Test
+    public void confirmByBlocks() throws Exception {
+        BlockEventStreamTest.FakeServer server = new BlockEventStreamTest.FakeServer();
+        List<String> queried = new CopyOnWriteArrayList<>();
+        ConfirmationTracker tracker = new ConfirmationTracker("xuper", f -> new BlockEventStream(server, f).start(), txid -> {
+            queried.add(txid);
+            return new CompletableFuture<>();
+        }, blockid -> new CompletableFuture<>());
+
+        CompletableFuture<Long> a = tracker.await("aa", 0);
+        CompletableFuture<Long> b = tracker.await("bb", 2);
+        CompletableFuture<Long> other = tracker.await("cc", 0);
+        assertEquals(3, tracker.pending());
+        EventOuterClass.BlockFilter filter = EventOuterClass.BlockFilter.parseFrom(server.requests.get(0).getFilter());
+        assertTrue(filter.getExcludeTxEvent());
+
+        BlockEventStreamTest.FakeCall call = server.calls.get(0);
+        call.observer.onNext(event(block(10, "aa", "bb")));
+        assertEquals(Long.valueOf(10), a.get(5, TimeUnit.SECONDS));
+        call.observer.onNext(event(block(11)));
+        Thread.sleep(50);
+        assertFalse(b.isDone());
+        call.observer.onNext(event(block(12)));
+        assertEquals(Long.valueOf(10), b.get(5, TimeUnit.SECONDS));
+        assertFalse(other.isDone());
+        for (int i = 0; i < 100 && tracker.pending() > 1; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, tracker.pending());
+        assertTrue(queried.isEmpty());
+
+        tracker.close();
+        try {
+            other.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void confirmByPolling() throws Exception {
+        BlockEventStreamTest.FakeServer server = new BlockEventStreamTest.FakeServer();
+        List<String> queried = new CopyOnWriteArrayList<>();
+        ConfirmationTracker tracker = new ConfirmationTracker("xuper", f -> new BlockEventStream(server, f).start(), txid -> {
+            queried.add(txid);
+            XchainOuterClass.TransactionStatus s = txid.equals("aa")
+                    ? XchainOuterClass.TransactionStatus.CONFIRM : XchainOuterClass.TransactionStatus.UNCONFIRM;
+            return CompletableFuture.completedFuture(XchainOuterClass.TxStatus.newBuilder().setStatus(s).setDistance(3)
+                    .setTx(XchainOuterClass.Transaction.newBuilder().setBlockid(ByteString.copyFromUtf8("b4"))).build());
+        }, blockid -> CompletableFuture.completedFuture(blockid.toStringUtf8().equals("b4") ? 4L : -1L))
+                .setTimeout(0, TimeUnit.MILLISECONDS).setPolling(10, TimeUnit.MILLISECONDS, 8);
+
+        CompletableFuture<Long> a = tracker.await("aa", 3);
+        CompletableFuture<Long> b = tracker.await("bb", 0);
+        // the height of the block of aa is queried, no block event is needed
+        assertEquals(Long.valueOf(4), a.get(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && queried.size() < 3; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(queried.contains("aa"));
+        // bb is not confirmed and is polled again
+        assertTrue(queried.lastIndexOf("bb") > queried.indexOf("bb"));
+        assertFalse(b.isDone());
+
+        // the block stream still completes it
+        server.calls.get(0).observer.onNext(event(block(7, "bb")));
+        assertEquals(Long.valueOf(7), b.get(5, TimeUnit.SECONDS));
+        tracker.close();
+    }
+
+    @Test
+    public void nodeAheadOfStream() throws Exception {
+        BlockEventStreamTest.FakeServer server = new BlockEventStreamTest.FakeServer();
+        // the node is at 20 while the stream has delivered up to 10, aa is in block 15
+        ConfirmationTracker tracker = new ConfirmationTracker("xuper", f -> new BlockEventStream(server, f).start(),
+                txid -> CompletableFuture.completedFuture(XchainOuterClass.TxStatus.newBuilder()
+                        .setStatus(XchainOuterClass.TransactionStatus.CONFIRM).setDistance(5)
+                        .setTx(XchainOuterClass.Transaction.newBuilder().setBlockid(ByteString.copyFromUtf8("b15"))).build()),
+                blockid -> CompletableFuture.completedFuture(15L))
+                .setTimeout(0, TimeUnit.MILLISECONDS).setPolling(10, TimeUnit.MILLISECONDS, 8);
+
+        CompletableFuture<Long> deep = tracker.await("aa", 5);
+        CompletableFuture<Long> deeper = tracker.await("aa", 8);
+        BlockEventStreamTest.FakeCall call = server.calls.get(0);
+        call.observer.onNext(event(block(10)));
+        assertEquals(Long.valueOf(15), deep.get(5, TimeUnit.SECONDS));
+
+        // 8 blocks on top of 15 are not reached, whatever the stream tip minus the distance is
+        call.observer.onNext(event(block(13)));
+        Thread.sleep(100);
+        assertFalse(deeper.isDone());
+        call.observer.onNext(event(block(15, "aa")));
+        call.observer.onNext(event(block(22)));
+        Thread.sleep(50);
+        assertFalse(deeper.isDone());
+        call.observer.onNext(event(block(23)));
+        assertEquals(Long.valueOf(15), deeper.get(5, TimeUnit.SECONDS));
+        tracker.close();
+    }
+}
@@ -0,0 +1,154 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ContractEventHubTest {
+
+    static EventOuterClass.Event block(long height, String contract, String... names) {
+        EventOuterClass.FilteredTransaction.Builder tx = EventOuterClass.FilteredTransaction.newBuilder().setTxid("tx" + height);
+        for (String name : names) {
+            tx.addEvents(XchainOuterClass.ContractEvent.newBuilder()
+                    .setContract(contract).setName(name).setBody(ByteString.copyFromUtf8(name + height)));
+        }
+        EventOuterClass.FilteredBlock b = EventOuterClass.FilteredBlock.newBuilder()
+                .setBcname("xuper").setBlockHeight(height).addTxs(tx).build();
+        return EventOuterClass.Event.newBuilder().setPayload(b.toByteString()).build();
+    }
+
+    static <T> T await(List<T> list, int index) throws InterruptedException {
+        for (int i = 0; i < 200 && list.size() <= index; i++) {
+            Thread.sleep(10);
+        }
+        return list.get(index);
+    }
+
+    @Test
+    public void mergeAndDispatch() throws Exception {
+        List<EventOuterClass.BlockFilter> filters = new CopyOnWriteArrayList<>();
+        List<BlockEventStreamTest.FakeServer> servers = new CopyOnWriteArrayList<>();
+        ContractEventHub hub = new ContractEventHub(f -> {
+            BlockEventStreamTest.FakeServer server = new BlockEventStreamTest.FakeServer();
+            filters.add(f);
+            servers.add(server);
+            return new BlockEventStream(server, f).start();
+        }, "xuper", Runnable::run, 16);
+
+        BlockingQueue<String> increases = new LinkedBlockingQueue<>();
+        BlockingQueue<String> all = new LinkedBlockingQueue<>();
+        hub.subscribe(new ContractEventHub.Filter().setContract("counter").setEventName("increase"),
+                e -> increases.add(e.getEvent().getBody().toStringUtf8()));
+        ContractEventHub.Subscription s = hub.subscribe(new ContractEventHub.Filter().setContract("counter").setEventName("decrease"),
+                e -> all.add(e.getTxid() + ":" + e.getEvent().getName()));
+        hub.subscribe(new ContractEventHub.Filter().setInitiator("alice"), e -> {
+        });
+        assertEquals(2, hub.streamCount());
+
+        // the two counter listeners share one stream once both are known
+        EventOuterClass.BlockFilter counter = null;
+        for (int i = 0; i < 200 && counter == null; i++) {
+            for (EventOuterClass.BlockFilter f : filters) {
+                if (f.getEventName().contains("|")) {
+                    counter = f;
+                }
+            }
+            Thread.sleep(10);
+        }
+        assertNotNull(counter);
+        assertEquals("counter", counter.getContract());
+        assertEquals("(?:increase)|(?:decrease)", counter.getEventName());
+        assertEquals("xuper", counter.getBcname());
+
+        BlockEventStreamTest.FakeServer server = servers.get(filters.indexOf(counter));
+        await(server.calls, 0).observer.onNext(block(5, "counter", "increase", "decrease", "reset"));
+        assertEquals("increase5", increases.poll(2, TimeUnit.SECONDS));
+        assertEquals("tx5:decrease", all.poll(2, TimeUnit.SECONDS));
+
+        // without the decrease listener the stream is opened again after block 5
+        s.close();
+        EventOuterClass.BlockFilter resumed = null;
+        for (int i = 0; i < 200 && resumed == null; i++) {
+            for (EventOuterClass.BlockFilter f : filters) {
+                if (f.hasRange()) {
+                    resumed = f;
+                }
+            }
+            Thread.sleep(10);
+        }
+        assertNotNull(resumed);
+        assertEquals("increase", resumed.getEventName());
+        assertEquals("6", resumed.getRange().getStart());
+
+        servers.get(filters.indexOf(resumed)).calls.get(0).observer.onNext(block(6, "counter", "decrease", "increase"));
+        assertEquals("increase6", increases.poll(2, TimeUnit.SECONDS));
+        assertNull(all.poll(50, TimeUnit.MILLISECONDS));
+
+        hub.close();
+        for (int i = 0; i < 200 && hub.streamCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, hub.streamCount());
+    }
+
+    @Test
+    public void handlerErrorDoesNotStopOthers() throws Exception {
+        BlockEventStreamTest.FakeServer server = new BlockEventStreamTest.FakeServer();
+        BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+        BlockingQueue<Long> heights = new LinkedBlockingQueue<>();
+        ContractEventHub hub = new ContractEventHub(f -> new BlockEventStream(server, f).start(), "xuper", Runnable::run, 4)
+                .setErrorHandler((e, t) -> errors.add(t));
+        hub.subscribe(new ContractEventHub.Filter(), e -> {
+            throw new IllegalStateException("bad handler");
+        });
+        hub.subscribe(new ContractEventHub.Filter(), e -> heights.add(e.getBlockHeight()));
+        assertEquals(1, hub.streamCount());
+
+        // both listeners are registered before the dispatcher reads the first block
+        Thread.sleep(200);
+        BlockEventStreamTest.FakeCall call = server.calls.get(server.calls.size() - 1);
+        for (int h = 1; h <= 10; h++) {
+            call.observer.onNext(block(h, "any", "e"));
+        }
+        for (long h = 1; h <= 10; h++) {
+            assertEquals(Long.valueOf(h), heights.poll(2, TimeUnit.SECONDS));
+        }
+        assertTrue(errors.poll(2, TimeUnit.SECONDS) instanceof IllegalStateException);
+        hub.close();
+    }
+
+    @Test
+    public void handlerErrorDoesNotWedgeListener() throws Exception {
+        BlockEventStreamTest.FakeServer server = new BlockEventStreamTest.FakeServer();
+        BlockingQueue<Long> heights = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ContractEventHub hub = new ContractEventHub(f -> new BlockEventStream(server, f).start(), "xuper", executor, 4);
+        hub.subscribe(new ContractEventHub.Filter(), e -> {
+            if (e.getBlockHeight() == 1) {
+                throw new AssertionError("bad handler");
+            }
+            heights.add(e.getBlockHeight());
+        });
+        Thread.sleep(200);
+        BlockEventStreamTest.FakeCall call = server.calls.get(server.calls.size() - 1);
+        for (int h = 1; h <= 5; h++) {
+            call.observer.onNext(block(h, "any", "e"));
+        }
+        for (long h = 2; h <= 5; h++) {
+            assertEquals(Long.valueOf(h), heights.poll(2, TimeUnit.SECONDS));
+        }
+        hub.close();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,196 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.EventOuterClass;
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ContractQueryCacheTest {
+
+    static XchainOuterClass.InvokeRPCRequest request(String contract, String... args) {
+        XchainOuterClass.InvokeRequest.Builder r = XchainOuterClass.InvokeRequest.newBuilder()
+                .setModuleName("wasm").setContractName(contract).setMethodName("get");
+        for (int i = 0; i < args.length; i += 2) {
+            r.putArgs(args[i], ByteString.copyFromUtf8(args[i + 1]));
+        }
+        return XchainOuterClass.InvokeRPCRequest.newBuilder().setBcname("xuper").setInitiator("alice").addRequests(r).build();
+    }
+
+    static EventOuterClass.FilteredBlock block(long height, String contract) {
+        EventOuterClass.FilteredBlock.Builder b = EventOuterClass.FilteredBlock.newBuilder().setBlockHeight(height);
+        if (contract != null) {
+            b.addTxs(EventOuterClass.FilteredTransaction.newBuilder().setTxid("tx" + height)
+                    .addEvents(XchainOuterClass.ContractEvent.newBuilder().setContract(contract).setName("set")));
+        }
+        return b.build();
+    }
+
+    @Test
+    public void key() {
+        assertEquals(ContractQueryCache.key(request("counter", "a", "1", "b", "2")),
+                ContractQueryCache.key(request("counter", "b", "2", "a", "1")));
+        assertNotEquals(ContractQueryCache.key(request("counter", "a", "1")),
+                ContractQueryCache.key(request("counter", "a", "2")));
+        assertNotEquals(ContractQueryCache.key(request("counter", "a", "1")),
+                ContractQueryCache.key(request("other", "a", "1")));
+    }
+
+    @Test
+    public void invalidateByBlocks() throws Exception {
+        BlockEventStreamTest.FakeServer server = new BlockEventStreamTest.FakeServer();
+        ContractQueryCache cache = new ContractQueryCache(1024 * 1024);
+        cache.attach("xuper", f -> new BlockEventStream(server, f).start(), txid -> {
+            throw new RuntimeException("not found");
+        });
+        AtomicInteger loads = new AtomicInteger();
+        XchainOuterClass.InvokeRPCResponse response = XchainOuterClass.InvokeRPCResponse.newBuilder().setBcname("xuper").build();
+
+        cache.get(request("counter", "k", "v"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        cache.get(request("counter", "k", "v"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        assertEquals(1, loads.get());
+        for (int i = 0; i < 100 && server.calls.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        EventOuterClass.BlockFilter filter = EventOuterClass.BlockFilter.parseFrom(server.requests.get(0).getFilter());
+        assertTrue("counter".matches(filter.getContract()));
+        assertFalse("counter2".matches(filter.getContract()));
+
+        // a block calling another contract keeps the response
+        cache.onBlock(block(10, null));
+        cache.get(request("counter", "k", "v"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        assertEquals(1, loads.get());
+
+        server.calls.get(0).observer.onNext(ConfirmationTrackerTest.event(block(11, "counter")));
+        for (int i = 0; i < 100 && cache.stats().getSize() > 0; i++) {
+            Thread.sleep(10);
+        }
+        cache.get(request("counter", "k", "v"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        assertEquals(2, loads.get());
+
+        // a new contract reopens the stream after the last block
+        cache.get(request("token"), () -> response);
+        for (int i = 0; i < 100 && server.calls.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("12", server.start(1));
+        filter = EventOuterClass.BlockFilter.parseFrom(server.requests.get(1).getFilter());
+        assertTrue("token".matches(filter.getContract()));
+        assertTrue("counter".matches(filter.getContract()));
+        cache.close();
+    }
+
+    @Test
+    public void maxBlocks() {
+        ContractQueryCache cache = new ContractQueryCache(1024 * 1024).setMaxBlocks(2);
+        XchainOuterClass.InvokeRPCResponse response = XchainOuterClass.InvokeRPCResponse.getDefaultInstance();
+        AtomicInteger loads = new AtomicInteger();
+        // not cached before the height is known
+        cache.get(request("counter"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        cache.onBlock(block(5, null));
+        cache.get(request("counter"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        cache.onBlock(block(6, null));
+        cache.get(request("counter"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        assertEquals(2, loads.get());
+        cache.onBlock(block(7, null));
+        cache.get(request("counter"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void invalidateByTxWithoutEvents() {
+        BlockEventStreamTest.FakeServer server = new BlockEventStreamTest.FakeServer();
+        ContractQueryCache cache = new ContractQueryCache(1024 * 1024);
+        cache.attach("xuper", f -> new BlockEventStream(server, f).start(), txid -> {
+            XchainOuterClass.Transaction.Builder tx = XchainOuterClass.Transaction.newBuilder()
+                    .setTxid(ByteString.copyFromUtf8(txid));
+            if (txid.equals("tx1")) {
+                // calls the router, which writes the state of counter
+                tx.addContractRequests(XchainOuterClass.InvokeRequest.newBuilder().setContractName("router"))
+                        .addTxOutputsExt(XchainOuterClass.TxOutputExt.newBuilder().setBucket("counter"));
+            } else if (!txid.equals("tx2")) {
+                throw new RuntimeException("not found");
+            }
+            return tx.build();
+        });
+        XchainOuterClass.InvokeRPCResponse response = XchainOuterClass.InvokeRPCResponse.getDefaultInstance();
+        AtomicInteger counter = new AtomicInteger();
+        AtomicInteger token = new AtomicInteger();
+        Runnable load = () -> {
+            cache.get(request("counter"), () -> {
+                counter.incrementAndGet();
+                return response;
+            });
+            cache.get(request("token"), () -> {
+                token.incrementAndGet();
+                return response;
+            });
+        };
+        load.run();
+        cache.onBlock(EventOuterClass.FilteredBlock.newBuilder().setBlockHeight(1)
+                .addTxs(EventOuterClass.FilteredTransaction.newBuilder().setTxid("tx1")).build());
+        load.run();
+        assertEquals(2, counter.get());
+        assertEquals(1, token.get());
+
+        // a transaction calling none of the cached contracts
+        cache.onBlock(EventOuterClass.FilteredBlock.newBuilder().setBlockHeight(2)
+                .addTxs(EventOuterClass.FilteredTransaction.newBuilder().setTxid("tx2")).build());
+        load.run();
+        assertEquals(2, counter.get());
+        assertEquals(1, token.get());
+
+        // a transaction that can not be queried drops every contract
+        cache.onBlock(EventOuterClass.FilteredBlock.newBuilder().setBlockHeight(3)
+                .addTxs(EventOuterClass.FilteredTransaction.newBuilder().setTxid("tx3")).build());
+        load.run();
+        assertEquals(3, counter.get());
+        assertEquals(2, token.get());
+        cache.close();
+    }
+
+    @Test
+    public void invalidatedWhileLoading() {
+        ContractQueryCache cache = new ContractQueryCache(1024 * 1024);
+        XchainOuterClass.InvokeRPCResponse response = XchainOuterClass.InvokeRPCResponse.getDefaultInstance();
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(request("counter"), () -> {
+            loads.incrementAndGet();
+            cache.invalidate("counter");
+            return response;
+        });
+        cache.get(request("counter"), () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.stats().getSize());
+    }
+}
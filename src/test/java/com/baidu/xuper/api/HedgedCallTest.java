@@ -0,0 +1,83 @@
+package com.baidu.xuper.api;
+
+import io.grpc.Status;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class HedgedCallTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static <T> Supplier<T> after(long millis, T value) {
+        return () -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return value;
+        };
+    }
+
+    @Test
+    public void fastPrimary() throws Exception {
+        AtomicInteger backups = new AtomicInteger();
+        String v = HedgedCall.run(executor, () -> "primary", () -> {
+            backups.incrementAndGet();
+            return "backup";
+        }, TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals("primary", v);
+        Thread.sleep(50);
+        assertEquals(0, backups.get());
+    }
+
+    @Test
+    public void slowPrimary() throws Exception {
+        long start = System.nanoTime();
+        String v = HedgedCall.run(executor, after(2000, "primary"), after(0, "backup"), TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals("backup", v);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    public void failover() throws Exception {
+        long start = System.nanoTime();
+        String v = HedgedCall.run(executor, () -> {
+            throw Status.UNAVAILABLE.asRuntimeException();
+        }, after(0, "backup"), TimeUnit.SECONDS.toNanos(10));
+        assertEquals("backup", v);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        try {
+            HedgedCall.run(executor, () -> {
+                throw Status.UNAVAILABLE.asRuntimeException();
+            }, () -> {
+                throw Status.INTERNAL.asRuntimeException();
+            }, TimeUnit.SECONDS.toNanos(10));
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(Status.Code.INTERNAL, Status.fromThrowable(e).getCode());
+        }
+
+        try {
+            HedgedCall.run(executor, () -> {
+                throw new IllegalStateException("bad request");
+            }, after(0, "backup"), TimeUnit.SECONDS.toNanos(10));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("bad request", e.getMessage());
+        }
+    }
+}
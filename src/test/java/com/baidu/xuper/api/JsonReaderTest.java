@@ -0,0 +1,91 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonReaderTest {
+
+    @Test
+    public void preExecWithFee() {
+        String json = "{\"header\":{\"logid\":\"log\",\"from_node\":\"node\\u0001\"},\"bcname\":\"xuper\",\n" +
+                " \"response\":{\"inputs\":[{\"bucket\":\"counter\",\"key\":\"YWI=\",\"ref_txid\":\"dHhpZA==\",\"ref_offset\":2}],\n" +
+                "  \"outputs\":[{\"bucket\":\"counter\",\"key\":\"YWI=\",\"value\":\"MQ==\"}],\n" +
+                "  \"response\":[\"MQ==\"],\"gas_used\":\"66\",\"unknown\":[1,{\"a\":null},\"]\"],\n" +
+                "  \"requests\":[{\"module_name\":\"wasm\",\"contract_name\":\"counter\",\"method_name\":\"increase\",\n" +
+                "   \"args\":{\"key\":\"5Lit\",\"empty\":null},\"resource_limits\":[{\"type\":1,\"limit\":1000}],\"amount\":\"10\"}],\n" +
+                "  \"responses\":[{\"status\":200,\"message\":\"ok \\\"中\\\" \\ud83d\\ude00\",\"body\":\"MQ==\"}],\n" +
+                "  \"utxoInputs\":[{\"ref_txid\":\"dHhpZA==\",\"from_addr\":\"YWI=\",\"amount\":\"Cg==\",\"frozen_height\":-1}],\n" +
+                "  \"utxoOutputs\":[{\"amount\":\"Cg==\",\"to_addr\":\"YWI=\"}]},\n" +
+                " \"utxoOutput\":{\"header\":{\"error\":4},\"utxoList\":[{\"amount\":\"Cg==\",\"toAddr\":\"YWI=\",\"toPubkey\":null,\"refTxid\":\"dHhpZA==\",\"refOffset\":1}],\"totalSelected\":\"10\"}}";
+
+        ByteString ab = ByteString.copyFromUtf8("ab");
+        ByteString txid = ByteString.copyFromUtf8("txid");
+        ByteString one = ByteString.copyFromUtf8("1");
+        ByteString ten = ByteString.copyFrom(new byte[]{10});
+        XchainOuterClass.PreExecWithSelectUTXOResponse expected = XchainOuterClass.PreExecWithSelectUTXOResponse.newBuilder()
+                .setHeader(XchainOuterClass.Header.newBuilder().setLogid("log").setFromNode("node\u0001"))
+                .setBcname("xuper")
+                .setResponse(XchainOuterClass.InvokeResponse.newBuilder()
+                        .addInputs(XchainOuterClass.TxInputExt.newBuilder().setBucket("counter").setKey(ab).setRefTxid(txid).setRefOffset(2))
+                        .addOutputs(XchainOuterClass.TxOutputExt.newBuilder().setBucket("counter").setKey(ab).setValue(one))
+                        .addResponse(one)
+                        .setGasUsed(66)
+                        .addRequests(XchainOuterClass.InvokeRequest.newBuilder()
+                                .setModuleName("wasm").setContractName("counter").setMethodName("increase")
+                                .putArgs("key", ByteString.copyFromUtf8("中"))
+                                .putArgs("empty", ByteString.EMPTY)
+                                .addResourceLimits(XchainOuterClass.ResourceLimit.newBuilder().setTypeValue(1).setLimit(1000))
+                                .setAmount("10"))
+                        .addResponses(XchainOuterClass.ContractResponse.newBuilder().setStatus(200).setMessage("ok \"中\" 😀").setBody(one))
+                        .addUtxoInputs(XchainOuterClass.TxInput.newBuilder().setRefTxid(txid).setFromAddr(ab).setAmount(ten).setFrozenHeight(-1))
+                        .addUtxoOutputs(XchainOuterClass.TxOutput.newBuilder().setAmount(ten).setToAddr(ab)))
+                .setUtxoOutput(XchainOuterClass.UtxoOutput.newBuilder()
+                        .setHeader(XchainOuterClass.Header.newBuilder().setErrorValue(4))
+                        .addUtxoList(XchainOuterClass.Utxo.newBuilder().setAmount(ten).setToAddr(ab).setRefTxid(txid).setRefOffset(1))
+                        .setTotalSelected("10"))
+                .build();
+
+        assertEquals(expected, JsonReader.preExecWithSelectUTXOResponse(ByteString.copyFromUtf8(json)));
+        assertEquals(expected, JsonUtils.json2PreExecWithSelUTXO(json));
+    }
+
+    @Test
+    public void fieldNames() {
+        XchainOuterClass.PreExecWithSelectUTXOResponse r = JsonReader.preExecWithSelectUTXOResponse(
+                ByteString.copyFromUtf8("{\"Header\":{\"fromNode\":\"n\",\"Error\":0},\"utxo_output\":{\"total_selected\":\"1\",\"utxoList\":null}}"));
+        assertEquals("n", r.getHeader().getFromNode());
+        assertEquals("1", r.getUtxoOutput().getTotalSelected());
+        assertEquals(0, r.getUtxoOutput().getUtxoListCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void malformed() {
+        JsonReader.preExecWithSelectUTXOResponse(ByteString.copyFromUtf8("{\"bcname\":\"xuper\""));
+    }
+
+    @Test
+    public void numbers() {
+        assertEquals(Long.MAX_VALUE, JsonReader.preExecWithSelectUTXOResponse(ByteString.copyFromUtf8(
+                "{\"response\":{\"gas_used\":9223372036854775807}}")).getResponse().getGasUsed());
+        assertEquals(Long.MIN_VALUE, JsonReader.preExecWithSelectUTXOResponse(ByteString.copyFromUtf8(
+                "{\"response\":{\"gas_used\":\"-9223372036854775808\"}}")).getResponse().getGasUsed());
+        String[] bad = {"9223372036854775808", "\"-9223372036854775809\"", "1.5", "1e3", "12a", "012", "-", "\"1 \""};
+        for (String n : bad) {
+            try {
+                JsonReader.preExecWithSelectUTXOResponse(ByteString.copyFromUtf8("{\"response\":{\"gas_used\":" + n + "}}"));
+                fail(n);
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("number"));
+            }
+        }
+        try {
+            JsonReader.preExecWithSelectUTXOResponse(ByteString.copyFromUtf8("{\"header\":{\"error\":2147483648}}"));
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("number overflow"));
+        }
+    }
+}
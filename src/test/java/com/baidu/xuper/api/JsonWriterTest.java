@@ -0,0 +1,85 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * the expected json is the output of the fastjson based serialization used before JsonWriter.
+ */
+public class JsonWriterTest {
+
+    static XchainOuterClass.TxStatus txStatus() {
+        ByteString b = ByteString.copyFromUtf8("ab");
+        XchainOuterClass.Transaction t = XchainOuterClass.Transaction.newBuilder()
+                .setTxid(ByteString.copyFromUtf8("txid"))
+                .setDesc(ByteString.copyFromUtf8("transfer"))
+                .setNonce("1700000000")
+                .setTimestamp(1700000000000000000L)
+                .setVersion(3)
+                .setInitiator("TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY")
+                .addAuthRequire("XC1111111111111111@xuper/TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY")
+                .addTxInputs(XchainOuterClass.TxInput.newBuilder().setRefTxid(b).setFromAddr(b).setAmount(ByteString.copyFrom(new byte[]{1, 0})))
+                .addTxOutputs(XchainOuterClass.TxOutput.newBuilder().setAmount(ByteString.copyFrom(new byte[]{10})).setToAddr(b).setFrozenHeight(-1))
+                .addTxInputsExt(XchainOuterClass.TxInputExt.newBuilder().setBucket("counter").setKey(b).setRefOffset(2))
+                .addTxOutputsExt(XchainOuterClass.TxOutputExt.newBuilder().setBucket("counter").setKey(b).setValue(b))
+                .addContractRequests(XchainOuterClass.InvokeRequest.newBuilder()
+                        .setModuleName("wasm").setContractName("counter").setMethodName("increase")
+                        .putArgs("key", ByteString.copyFromUtf8("中\"\\\n\u2028"))
+                        .putArgs("empty", ByteString.EMPTY)
+                        .putArgs("a", b)
+                        .addResourceLimits(XchainOuterClass.ResourceLimit.newBuilder().setLimit(7))
+                        .addResourceLimits(XchainOuterClass.ResourceLimit.newBuilder().setTypeValue(1)))
+                .addInitiatorSigns(XchainOuterClass.SignatureInfo.newBuilder().setPublicKey("{\"Curvname\":\"P-256\"}").setSign(b))
+                .addAuthRequireSigns(XchainOuterClass.SignatureInfo.newBuilder().setPublicKey("pk").setSign(b))
+                .build();
+        return XchainOuterClass.TxStatus.newBuilder().setBcname("xuper").setTx(t).build();
+    }
+
+    @Test
+    public void complianceCheck() {
+        assertJson("{\"bcname\":\"xuper\",\"header\":null,\"tx\":{\"auth_require\":[\"XC1111111111111111@xuper/TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY\"],\"auth_require_signs\":[{\"PublicKey\":\"pk\",\"Sign\":\"YWI=\"}],\"blockid\":null,\"contract_requests\":[{\"amount\":null,\"args\":{\"a\":\"YWI=\",\"key\":\"5LitIlwK4oCo\",\"empty\":null},\"contract_name\":\"counter\",\"method_name\":\"increase\",\"module_name\":\"wasm\",\"resource_limits\":[{\"limit\":7},{\"type\":1}]}],\"desc\":\"dHJhbnNmZXI=\",\"initiator\":\"TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY\",\"initiator_signs\":[{\"PublicKey\":\"{\\\"Curvname\\\":\\\"P-256\\\"}\",\"Sign\":\"YWI=\"}],\"modify_block\":null,\"nonce\":\"1700000000\",\"timestamp\":1700000000000000000,\"tx_inputs\":[{\"amount\":\"AQA=\",\"from_addr\":\"YWI=\",\"ref_txid\":\"YWI=\"}],\"tx_inputs_ext\":[{\"bucket\":\"counter\",\"key\":\"YWI=\",\"ref_offset\":2,\"ref_txid\":null}],\"tx_outputs\":[{\"amount\":\"Cg==\",\"frozen_height\":-1,\"to_addr\":\"YWI=\"}],\"tx_outputs_ext\":[{\"bucket\":\"counter\",\"key\":\"YWI=\",\"value\":\"YWI=\"}],\"txid\":\"dHhpZA==\",\"version\":3,\"xuper_sign\":null},\"txid\":null}",
+                JsonWriter.txStatus(txStatus()));
+
+        XchainOuterClass.TxStatus empty = XchainOuterClass.TxStatus.newBuilder()
+                .setHeader(XchainOuterClass.Header.newBuilder().setLogid("log\u0001"))
+                .setTxid(ByteString.copyFromUtf8("txid"))
+                .setStatus(XchainOuterClass.TransactionStatus.CONFIRM)
+                .setDistance(2)
+                .build();
+        assertJson("{\"bcname\":\"\",\"distance\":2,\"header\":{\"from_node\":\"\",\"logid\":\"log\\u0001\"},\"status\":2,\"tx\":{\"auth_require\":[],\"auth_require_signs\":null,\"blockid\":null,\"contract_requests\":null,\"desc\":null,\"initiator\":\"\",\"initiator_signs\":null,\"modify_block\":null,\"nonce\":null,\"tx_inputs\":null,\"tx_inputs_ext\":null,\"tx_outputs\":null,\"tx_outputs_ext\":null,\"txid\":\"\",\"xuper_sign\":null},\"txid\":\"dHhpZA==\"}",
+                JsonWriter.txStatus(empty));
+        assertEquals(JsonWriter.txStatus(empty).toStringUtf8(), JsonUtils.TxStatus2Json(empty));
+    }
+
+    @Test
+    public void preExecWithFee() {
+        XchainOuterClass.PreExecWithSelectUTXORequest request = XchainOuterClass.PreExecWithSelectUTXORequest.newBuilder()
+                .setBcname("xuper")
+                .setAddress("TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY")
+                .setTotalAmount(100)
+                .setRequest(XchainOuterClass.InvokeRPCRequest.newBuilder()
+                        .setInitiator("TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY")
+                        .addAuthRequire("TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY")
+                        .addRequests(XchainOuterClass.InvokeRequest.newBuilder()
+                                .setModuleName("wasm").setContractName("counter").setMethodName("increase\u2028é中😀")
+                                .putArgs("key", ByteString.copyFromUtf8("é\t"))
+                                .putArgs("empty", ByteString.EMPTY)
+                                .setAmount("10")))
+                .build();
+        assertJson("{\"bcname\":\"xuper\",\"address\":\"TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY\",\"totalAmount\":100,\"request\":{\"bcname\":\"xuper\",\"initiator\":\"TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY\",\"auth_require\":[\"TeyyPLpp9L7QAcxHangtcHTu7HUZ6iydY\"],\"requests\":[{\"module_name\":\"wasm\",\"contract_name\":\"counter\",\"method_name\":\"increase\\u2028é中😀\",\"args\":{\"key\":\"w6kJ\",\"empty\":\"\"},\"amount\":\"10\"}]}}",
+                JsonWriter.preExecWithFee(request));
+
+        assertJson("{\"totalAmount\":0,\"request\":{\"initiator\":\"\",\"auth_require\":[]}}",
+                JsonWriter.preExecWithFee(XchainOuterClass.PreExecWithSelectUTXORequest.getDefaultInstance()));
+    }
+
+    private static void assertJson(String expected, ByteString actual) {
+        assertEquals(expected, actual.toStringUtf8());
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), actual.toByteArray());
+    }
+}
@@ -0,0 +1,70 @@
+package com.baidu.xuper.api;
+
+import io.grpc.Status;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NodePoolTest {
+
+    @Test
+    public void routeByLatencyAndLag() {
+        NodePool pool = new NodePool(Arrays.asList("127.0.0.1:1", "127.0.0.1:2", "127.0.0.1:3"),
+                Collections.singletonList("127.0.0.1:3"), 0).setMaxLag(2);
+        try {
+            List<NodePool.Node> nodes = pool.getNodes();
+            nodes.get(0).record(30_000_000, true);
+            nodes.get(1).record(10_000_000, true);
+            nodes.get(2).record(20_000_000, true);
+            assertSame(nodes.get(1), pool.select(false, null));
+            assertSame(nodes.get(2), pool.select(true, null));
+
+            // node 1 falls behind
+            pool.onProbe(nodes.get(0), 100);
+            pool.onProbe(nodes.get(1), 95);
+            pool.onProbe(nodes.get(2), 99);
+            assertSame(nodes.get(2), pool.select(false, null));
+            assertSame(nodes.get(0), pool.select(false, Collections.singletonList(nodes.get(2))));
+
+            // EWMA moves towards the new samples
+            for (int i = 0; i < 20; i++) {
+                nodes.get(0).record(1_000_000, true);
+            }
+            assertEquals(1.0, nodes.get(0).getLatencyMillis(), 0.1);
+            assertSame(nodes.get(0), pool.select(false, null));
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void ejectAndReadmit() throws Exception {
+        NodePool pool = new NodePool(Arrays.asList("127.0.0.1:1", "127.0.0.1:2"),
+                Arrays.asList("127.0.0.1:1", "127.0.0.1:2"), 0).setEjection(1, 50);
+        try {
+            List<NodePool.Node> nodes = pool.getNodes();
+            // nothing listens on these ports, both nodes are tried and fail with UNAVAILABLE
+            try {
+                pool.read(c -> c.getBlockchainStatus("xuper"));
+                fail();
+            } catch (RuntimeException e) {
+                assertEquals(Status.Code.UNAVAILABLE, Status.fromThrowable(e).getCode());
+            }
+            assertTrue(nodes.get(0).isEjected());
+            assertTrue(nodes.get(1).isEjected());
+
+            nodes.get(0).record(5_000_000, true);
+            assertTrue(nodes.get(0).isEjected());
+            Thread.sleep(60);
+            pool.onProbe(nodes.get(1), 10);
+            assertFalse(nodes.get(1).isEjected());
+            assertSame(nodes.get(1), pool.select(false, null));
+        } finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheTest {
+
+    static XchainOuterClass.InternalBlock block(long height, int size) {
+        return XchainOuterClass.InternalBlock.newBuilder()
+                .setHeight(height)
+                .setBlockid(ByteString.copyFrom(new byte[size]))
+                .build();
+    }
+
+    @Test
+    public void hitAndEvictByWeight() {
+        QueryCache cache = new QueryCache(3200);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            long h = i;
+            cache.get("b" + i, () -> {
+                loads.incrementAndGet();
+                return block(h, 900);
+            }, b -> Long.MAX_VALUE);
+        }
+        // b0 is the least recently used after this
+        cache.get("b1", () -> block(-1, 0), b -> Long.MAX_VALUE);
+        cache.get("b2", () -> block(-1, 0), b -> Long.MAX_VALUE);
+        assertEquals(3, loads.get());
+        assertEquals(2, cache.stats().getHits());
+
+        cache.get("b3", () -> block(3, 900), b -> Long.MAX_VALUE);
+        QueryCache.Stats stats = cache.stats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(3, stats.getSize());
+        assertTrue(stats.getWeight() <= 3200);
+        assertEquals(1, cache.get("b1", () -> block(-1, 0), b -> Long.MAX_VALUE).getHeight());
+        assertEquals(-1, cache.get("b0", () -> block(-1, 0), b -> Long.MAX_VALUE).getHeight());
+    }
+
+    @Test
+    public void notCachedAndTtl() throws Exception {
+        QueryCache cache = new QueryCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("tx", () -> block(loads.incrementAndGet(), 1), b -> 0);
+        cache.get("tx", () -> block(loads.incrementAndGet(), 1), b -> 0);
+        assertEquals(2, loads.get());
+
+        cache.get("status", () -> block(loads.incrementAndGet(), 1), b -> 30);
+        assertEquals(3, cache.get("status", () -> block(loads.incrementAndGet(), 1), b -> 30).getHeight());
+        Thread.sleep(50);
+        assertEquals(4, cache.get("status", () -> block(loads.incrementAndGet(), 1), b -> 30).getHeight());
+
+        try {
+            cache.get("err", () -> {
+                throw new RuntimeException("boom");
+            }, b -> Long.MAX_VALUE);
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("boom", e.getMessage());
+        }
+        assertEquals(7, cache.get("err", () -> block(7, 1), b -> Long.MAX_VALUE).getHeight());
+    }
+
+    @Test
+    public void singleFlight() throws Exception {
+        QueryCache cache = new QueryCache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<XchainOuterClass.InternalBlock> first = CompletableFuture.supplyAsync(() ->
+                cache.get("k", () -> {
+                    loads.incrementAndGet();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return block(1, 1);
+                }, b -> Long.MAX_VALUE));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<XchainOuterClass.InternalBlock> second = CompletableFuture.supplyAsync(() ->
+                cache.get("k", () -> {
+                    loads.incrementAndGet();
+                    return block(2, 1);
+                }, b -> Long.MAX_VALUE));
+        for (int i = 0; i < 200 && cache.stats().getCoalesced() == 0; i++) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).getHeight());
+        assertEquals(1, second.get(5, TimeUnit.SECONDS).getHeight());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().getCoalesced());
+        assertEquals(1, cache.stats().getLoads());
+    }
+}
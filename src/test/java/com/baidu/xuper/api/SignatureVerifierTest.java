@@ -0,0 +1,69 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.crypto.xchain.sign.Ecc;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.util.BigIntegers;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SignatureVerifierTest {
+
+    private static String xuperSign(Account account, String msg) {
+        byte[] data = msg.getBytes();
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(true, new ECPrivateKeyParameters(account.getKeyPair().getPrivateKey(), Ecc.domain));
+        BigInteger[] rs = signer.generateSignature(data);
+        return Hex.toHexString(BigIntegers.asUnsignedByteArray(32, rs[0]))
+                + Hex.toHexString(BigIntegers.asUnsignedByteArray(32, rs[1]))
+                + Hex.toHexString(BigIntegers.asUnsignedByteArray(32, account.getKeyPair().getPublicKey().getAffineXCoord().toBigInteger()))
+                + Hex.toHexString(BigIntegers.asUnsignedByteArray(32, account.getKeyPair().getPublicKey().getAffineYCoord().toBigInteger()))
+                + Hex.toHexString(data);
+    }
+
+    @Test
+    public void verify() {
+        Account alice = Account.create(1, 2);
+        Account bob = Account.create(1, 2);
+        SignatureVerifier verifier = new SignatureVerifier();
+        String sig = xuperSign(alice, "hello");
+        assertTrue(verifier.verify(alice.getAddress(), sig, "hello"));
+        assertTrue(verifier.verify(alice.getAddress(), sig, null));
+        assertFalse(verifier.verify(alice.getAddress(), sig, "hello2"));
+        assertFalse(verifier.verify(bob.getAddress(), sig, "hello"));
+        assertEquals(1, verifier.cacheSize());
+
+        // tampered s
+        char c = sig.charAt(100) == '0' ? '1' : '0';
+        String bad = sig.substring(0, 100) + c + sig.substring(101);
+        assertFalse(verifier.verify(alice.getAddress(), bad, "hello"));
+    }
+
+    @Test
+    public void verifyAll() {
+        Account[] accounts = {Account.create(1, 2), Account.create(1, 2), Account.create(1, 2)};
+        SignatureVerifier verifier = new SignatureVerifier(ForkJoinPool.commonPool(), 4, 2);
+        List<SignatureVerifier.Item> items = new ArrayList<>();
+        List<Boolean> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Account a = accounts[i % 3];
+            String msg = "msg" + i;
+            boolean valid = i % 5 != 0;
+            items.add(new SignatureVerifier.Item(a.getAddress(), xuperSign(a, msg), valid ? msg : "other"));
+            expected.add(valid);
+        }
+        items.add(new SignatureVerifier.Item(accounts[0].getAddress(), "abcd", null));
+        expected.add(false);
+        assertEquals(expected, verifier.verifyAll(items));
+        assertTrue(verifier.cacheSize() <= 2);
+        assertEquals(Arrays.asList(true), verifier.verifyAll(items.subList(1, 2)));
+    }
+}
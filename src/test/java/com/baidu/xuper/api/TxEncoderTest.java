@@ -3,6 +3,7 @@ package com.baidu.xuper.api;
 import com.baidu.xuper.crypto.xchain.sign.ECKeyPair;
 import com.baidu.xuper.pb.XchainOuterClass;
 import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -83,6 +84,62 @@ public class TxEncoderTest {
         assertEquals("fc33b74ce929bbd4cbf81d13dfd3dd5c9961f366083344bf35a091f875f2af26", Hex.toHexString(txid));
     }
 
+    // strings which need json escaping, and a contract request without method name.
+    private static XchainOuterClass.Transaction escapedTx(int version) {
+        String odd = "q\"b\\s/\t\b\n\r\f\u0001\u001f\u007f<>&='\u2028\u2029中\ud83d\ude00\ud800x";
+        return XchainOuterClass.Transaction.newBuilder()
+                .addTxOutputs(XchainOuterClass.TxOutput.newBuilder()
+                        .setToAddr(ByteString.copyFromUtf8(odd)))
+                .addTxOutputs(XchainOuterClass.TxOutput.getDefaultInstance())
+                .setNonce(odd)
+                .setTimestamp(-5)
+                .setVersion(version)
+                .setCoinbase(true)
+                .addTxOutputsExt(XchainOuterClass.TxOutputExt.newBuilder().setBucket(odd))
+                .addContractRequests(XchainOuterClass.InvokeRequest.newBuilder()
+                        .setModuleName("wasm")
+                        .setContractName(odd)
+                        .putArgs(odd, ByteString.EMPTY)
+                        .putArgs("B", ByteString.copyFromUtf8("1"))
+                        .putArgs("a", ByteString.copyFromUtf8("2"))
+                        .addResourceLimits(XchainOuterClass.ResourceLimit.getDefaultInstance()))
+                .addContractRequests(XchainOuterClass.InvokeRequest.newBuilder()
+                        .setModuleName("xkernel")
+                        .setMethodName("Deploy"))
+                .setInitiator(odd)
+                .addAuthRequire(odd)
+                .addInitiatorSigns(XchainOuterClass.SignatureInfo.newBuilder().setPublicKey(odd))
+                .addAuthRequireSigns(XchainOuterClass.SignatureInfo.getDefaultInstance())
+                .build();
+    }
+
+    @Test
+    public void encodeAllFields() {
+        // recorded with the former Gson based encoder
+        String[][] expected = {
+                {"08a831567205d7f332a4aaa39f086e557416559147eff64fa3491463a28eeac6",
+                        "544952c36435dbc87162ff928f26fd520d522ad32a247b1a30a4771be0dd55c7",
+                        "601774be136eff2976b42700de76d91389049fdff6dbd8a01989dfa5114830d4",
+                        "bc8fff8fb3eb794ae0ffae35b079fb3b515633f0486b7a1439fcd0568df9f794",
+                        "ed50ea65c5702923e213eb5c62b62d3c122e7c232b5ad29cfa6bea25829d3aac"},
+                {"fd982e0ef6e590070902dd8e74dcfe5cf78c4152d1a100ddb08b55688b1b4155",
+                        "b4da9a0d275d662c5546e36a2255964ba029ec1a3a3ddbef9f00fb42b022e1cf",
+                        "0b01e1dfb789f976298a1c24b9911de257fea0d3176ffe4e9252174dc8a68c94",
+                        "c7bc68c923a4eb968f17473dabfa0e0a37f1ce85190be56acecfb1b61d39a84e",
+                        "f66385b12c27e1618d412f359ffc4efc36390e34b0c7e35369d76892e80fe324"},
+        };
+        XchainOuterClass.Transaction tx = TxEncoderV2Test.fullTx();
+        for (int version = 1; version <= 2; version++) {
+            XchainOuterClass.Transaction v = tx.toBuilder().setVersion(version).build();
+            String[] e = expected[version - 1];
+            assertEquals(e[0], Hex.toHexString(TxEncoder.makeTxDigest(v)));
+            assertEquals(e[1], Hex.toHexString(TxEncoder.makeTxID(v)));
+            assertEquals(e[2], Hex.toHexString(TxEncoder.makeTxID(v.toBuilder().clearXuperSign().clearHDInfo().build())));
+            assertEquals(e[3], Hex.toHexString(TxEncoder.makeTxDigest(escapedTx(version))));
+            assertEquals(e[4], Hex.toHexString(TxEncoder.makeTxID(escapedTx(version))));
+        }
+    }
+
     @Test
     public void makeEncoderTxID() throws IOException {
         byte[] txid = TxEncoder.makeTxID(getTxpb("xendorser1.pb"));
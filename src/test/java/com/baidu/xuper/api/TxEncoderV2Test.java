@@ -0,0 +1,110 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class TxEncoderV2Test {
+
+    private XchainOuterClass.Transaction getTxpb(String name) throws IOException {
+        byte[] pb = ByteStreams.toByteArray(getClass().getResourceAsStream(name));
+        return XchainOuterClass.Transaction.parseFrom(pb).toBuilder().setVersion(3).build();
+    }
+
+    // a transaction touching every field of the v3 encoding, with multi-byte characters and a large arg.
+    static XchainOuterClass.Transaction fullTx() {
+        byte[] code = new byte[20000];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = (byte) (i * 31);
+        }
+        XchainOuterClass.InvokeRequest req = XchainOuterClass.InvokeRequest.newBuilder()
+                .setModuleName("wasm")
+                .setContractName("counter")
+                .setMethodName("increase")
+                .putArgs("key", ByteString.copyFromUtf8("icexin"))
+                .putArgs("code", ByteString.copyFrom(code))
+                .putArgs("名字", ByteString.copyFromUtf8("值"))
+                .addResourceLimits(XchainOuterClass.ResourceLimit.newBuilder()
+                        .setType(XchainOuterClass.ResourceType.MEMORY).setLimit(1000))
+                .addResourceLimits(XchainOuterClass.ResourceLimit.newBuilder()
+                        .setType(XchainOuterClass.ResourceType.DISK).setLimit(77))
+                .setAmount("10")
+                .build();
+        XchainOuterClass.SignatureInfo sign = XchainOuterClass.SignatureInfo.newBuilder()
+                .setPublicKey("{\"Curvname\":\"P-256\",\"X\":1,\"Y\":2}")
+                .setSign(ByteString.copyFrom(new byte[]{48, 69, 2, 33, 0, -1}))
+                .build();
+        return XchainOuterClass.Transaction.newBuilder()
+                .addTxInputs(XchainOuterClass.TxInput.newBuilder()
+                        .setRefTxid(ByteString.copyFrom(Hex.decode("d53f49a512558e215ba52dad1b67cfbb23836fbdc8070f403faa670e171e4aeb")))
+                        .setRefOffset(2)
+                        .setFromAddr(ByteString.copyFromUtf8("dpzuVdosQrF2kmzumhVeFQZa1aYcdgFpN"))
+                        .setAmount(ByteString.copyFrom(BigInteger.valueOf(1000000).toByteArray()))
+                        .setFrozenHeight(-1))
+                .addTxOutputs(XchainOuterClass.TxOutput.newBuilder()
+                        .setToAddr(ByteString.copyFromUtf8("XC1111111111111111@xuper"))
+                        .setAmount(ByteString.copyFrom(BigInteger.TEN.toByteArray()))
+                        .setFrozenHeight(1L << 40))
+                .addTxOutputs(XchainOuterClass.TxOutput.newBuilder()
+                        .setToAddr(ByteString.copyFromUtf8("$"))
+                        .setAmount(ByteString.copyFrom(BigInteger.ONE.toByteArray())))
+                .setDesc(ByteString.copyFromUtf8("转账 test"))
+                .setNonce("1640000000000000000123")
+                .setTimestamp(1640000000000000000L)
+                .setVersion(3)
+                .setAutogen(true)
+                .addTxInputsExt(XchainOuterClass.TxInputExt.newBuilder()
+                        .setBucket("counter").setKey(ByteString.copyFromUtf8("icexin"))
+                        .setRefTxid(ByteString.copyFrom(new byte[]{1, 2, 3})).setRefOffset(1))
+                .addTxOutputsExt(XchainOuterClass.TxOutputExt.newBuilder()
+                        .setBucket("counter").setKey(ByteString.copyFromUtf8("icexin"))
+                        .setValue(ByteString.copyFromUtf8("2")))
+                .addContractRequests(req)
+                .setInitiator("dpzuVdosQrF2kmzumhVeFQZa1aYcdgFpN")
+                .addAuthRequire("dpzuVdosQrF2kmzumhVeFQZa1aYcdgFpN")
+                .addAuthRequire("XC1111111111111111@xuper/ü")
+                .addInitiatorSigns(sign)
+                .addAuthRequireSigns(sign)
+                .addAuthRequireSigns(sign)
+                .setXuperSign(XchainOuterClass.XuperSignature.newBuilder()
+                        .addPublicKeys(ByteString.copyFromUtf8("pk1"))
+                        .addPublicKeys(ByteString.copyFromUtf8("pk2"))
+                        .setSignature(ByteString.copyFromUtf8("sig")))
+                .setHDInfo(XchainOuterClass.HDInfo.newBuilder()
+                        .setHdPublicKey(ByteString.copyFromUtf8("hdpk"))
+                        .setOriginalHash(ByteString.copyFromUtf8("hash")))
+                .build();
+    }
+
+    @Test
+    public void fixtures() throws IOException {
+        assertEquals("4cd189b0dad9bbd9b3dfa663d7111dfc2b160739e04f1026d1f74820192c5ed1", Hex.toHexString(TxEncoder.makeTxDigest(getTxpb("transfer.pb"))));
+        assertEquals("5a5319995a93215febd08a0c2b7d88b3dae187931fed8d8cbdf338584c741d22", Hex.toHexString(TxEncoder.makeTxID(getTxpb("transfer.pb"))));
+        assertEquals("7ff1498658fa9c544d8f4c23c110a5fbf6ae0a83fb24db3a53e638fe95ce3846", Hex.toHexString(TxEncoder.makeTxDigest(getTxpb("invoke.pb"))));
+        assertEquals("fc33b74ce929bbd4cbf81d13dfd3dd5c9961f366083344bf35a091f875f2af26", Hex.toHexString(TxEncoder.makeTxID(getTxpb("counterDeploy.pb"))));
+    }
+
+    @Test
+    public void allFields() {
+        XchainOuterClass.Transaction tx = fullTx();
+        assertEquals("21b7070d5ab0dc4028337d7d58bed34fbb798f67e3091fb4a88f89a55007b936", Hex.toHexString(TxEncoder.makeTxDigest(tx)));
+        assertEquals("5087853c8b1cb6fb58ffca346ed2a96b3b7b40e9bf2fbdf65751080c5ae9bbf9", Hex.toHexString(TxEncoder.makeTxID(tx)));
+        // the encoder state must not leak between calls on one thread
+        assertEquals(Hex.toHexString(TxEncoder.makeTxID(tx)), Hex.toHexString(TxEncoder.makeTxID(fullTx())));
+
+        // an arg made of pieces hashes the same as a flat one
+        XchainOuterClass.InvokeRequest req = tx.getContractRequests(0);
+        ByteString code = req.getArgsOrThrow("code");
+        ByteString rope = code.substring(0, 5000).concat(code.substring(5000, 5001)).concat(code.substring(5001));
+        XchainOuterClass.Transaction ropeTx = tx.toBuilder()
+                .setContractRequests(0, req.toBuilder().putArgs("code", rope)).build();
+        assertEquals(Hex.toHexString(TxEncoder.makeTxID(tx)), Hex.toHexString(TxEncoder.makeTxID(ropeTx)));
+    }
+}
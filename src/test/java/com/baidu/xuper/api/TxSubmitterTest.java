@@ -0,0 +1,78 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TxSubmitterTest {
+
+    static Transaction tx(int i) {
+        return new Transaction("xuper", XchainOuterClass.Transaction.newBuilder()
+                .setDesc(ByteString.copyFromUtf8("tx " + i))
+                .build());
+    }
+
+    @Test
+    public void windowAndOrder() throws Exception {
+        List<CompletableFuture<XchainOuterClass.CommonReply>> calls = new CopyOnWriteArrayList<>();
+        TxSubmitter submitter = new TxSubmitter(request -> {
+            CompletableFuture<XchainOuterClass.CommonReply> f = new CompletableFuture<>();
+            calls.add(f);
+            return f;
+        }, 2);
+
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            txs.add(tx(i));
+        }
+        Map<Transaction, Throwable> callbacks = new ConcurrentHashMap<>();
+        CompletableFuture<List<TxSubmitter.Result>> all = CompletableFuture.supplyAsync(() ->
+                submitter.submitAll(txs, (tx, t) -> callbacks.put(tx, t != null ? t : new Throwable("ok"))));
+
+        // the producer waits while 2 posts are in flight
+        for (int i = 0; i < 500 && calls.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(2, calls.size());
+        assertEquals(0, submitter.available());
+
+        // completed out of order, the second fails
+        calls.get(1).completeExceptionally(new IllegalStateException("rejected"));
+        for (int i = 0; i < 100 && calls.size() < 3; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, calls.size());
+        calls.get(0).complete(XchainOuterClass.CommonReply.getDefaultInstance());
+        calls.get(2).complete(XchainOuterClass.CommonReply.getDefaultInstance());
+        for (int i = 0; i < 100 && calls.size() < 5; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, calls.size());
+        calls.get(4).complete(XchainOuterClass.CommonReply.getDefaultInstance());
+        calls.get(3).complete(XchainOuterClass.CommonReply.newBuilder()
+                .setHeader(XchainOuterClass.Header.newBuilder().setErrorValue(4))
+                .build());
+
+        List<TxSubmitter.Result> results = all.get(5, TimeUnit.SECONDS);
+        assertEquals(5, results.size());
+        for (int i = 0; i < 5; i++) {
+            assertSame(txs.get(i), results.get(i).getTransaction());
+            assertEquals(i != 1 && i != 3, results.get(i).isSuccess());
+            assertNotNull(callbacks.get(txs.get(i)));
+            assertEquals(results.get(i).isSuccess(), "ok".equals(callbacks.get(txs.get(i)).getMessage()));
+        }
+        assertTrue(results.get(1).getError() instanceof IllegalStateException);
+        assertEquals(2, submitter.available());
+    }
+}
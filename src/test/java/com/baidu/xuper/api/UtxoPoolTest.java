@@ -0,0 +1,118 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XchainOuterClass;
+import com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UtxoPoolTest {
+    private Account account;
+    private UtxoPool pool;
+
+    @Before
+    public void setUp() {
+        account = Account.create(1, 2);
+        pool = new UtxoPool(null, account, "xuper");
+        pool.add(Arrays.asList(utxo("aa", 0, 30), utxo("bb", 1, 50), utxo("cc", 0, 100)));
+    }
+
+    @Test
+    public void buildLocally() {
+        Transaction tx = pool.build(transfer(60, "5"));
+        XchainOuterClass.Transaction pbtx = tx.getRawTx();
+        assertEquals(2, pbtx.getTxInputsCount());
+        assertEquals(3, pbtx.getTxOutputsCount());
+        // to, fee, change
+        assertEquals(BigInteger.valueOf(60), new BigInteger(pbtx.getTxOutputs(0).getAmount().toByteArray()));
+        assertEquals(BigInteger.valueOf(5), new BigInteger(pbtx.getTxOutputs(1).getAmount().toByteArray()));
+        assertEquals(BigInteger.valueOf(15), new BigInteger(pbtx.getTxOutputs(2).getAmount().toByteArray()));
+        assertEquals(BigInteger.valueOf(100), pool.getBalance());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void releaseAndSent() {
+        Transaction tx = pool.build(transfer(60, "5"));
+        pool.release(tx);
+        assertEquals(BigInteger.valueOf(180), pool.getBalance());
+        assertEquals(3, pool.size());
+
+        tx = pool.build(transfer(60, "5")).sign();
+        tx.newPostTxRequest();
+        pool.sent(tx);
+        // the change of 15 is spendable, the spent inputs can not come back
+        assertEquals(BigInteger.valueOf(115), pool.getBalance());
+        assertEquals(0, pool.add(Arrays.asList(utxo("aa", 0, 30), utxo("cc", 0, 100))));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void seedPastHeldUtxos() {
+        List<BigInteger> asked = new ArrayList<>();
+        // the node holds aa:0=100 and bb:0=100, the pool already holds aa:0
+        UtxoPool p = new UtxoPool(null, account, "xuper") {
+            @Override
+            List<XchainOuterClass.Utxo> selectUTXO(BigInteger totalNeed) {
+                asked.add(totalNeed);
+                List<XchainOuterClass.Utxo> out = new ArrayList<>();
+                out.add(utxo("aa", 0, 100));
+                if (totalNeed.compareTo(BigInteger.valueOf(100)) > 0) {
+                    out.add(utxo("bb", 0, 100));
+                }
+                return out;
+            }
+        };
+        p.add(Arrays.asList(utxo("aa", 0, 100)));
+        Transaction tx = p.build(transfer(150, "0"));
+        assertEquals(2, tx.getRawTx().getTxInputsCount());
+        assertEquals(Arrays.asList(BigInteger.valueOf(150)), asked);
+    }
+
+    @Test
+    public void contractGas() {
+        UtxoPool p = new UtxoPool(null, account, "xuper") {
+            @Override
+            XchainOuterClass.InvokeRPCResponse preExec(XchainOuterClass.InvokeRPCRequest request) {
+                assertEquals("counter", request.getRequests(0).getContractName());
+                return XchainOuterClass.InvokeRPCResponse.newBuilder()
+                        .setHeader(XchainOuterClass.Header.newBuilder())
+                        .setResponse(XchainOuterClass.InvokeResponse.newBuilder().setGasUsed(60))
+                        .build();
+            }
+        };
+        p.add(Arrays.asList(utxo("aa", 0, 30), utxo("bb", 1, 50), utxo("cc", 0, 100)));
+        Map<String, byte[]> args = new HashMap<>();
+        args.put("key", "k".getBytes());
+        Transaction tx = p.build(new Proposal().setFee("5").setInitiator(account)
+                .invokeContract("wasm", "counter", "increase", args));
+        XchainOuterClass.Transaction pbtx = tx.getRawTx();
+        // the gas is selected too, fee and change
+        assertEquals(2, pbtx.getTxInputsCount());
+        assertEquals(2, pbtx.getTxOutputsCount());
+        assertEquals(BigInteger.valueOf(65), new BigInteger(pbtx.getTxOutputs(0).getAmount().toByteArray()));
+        assertEquals(BigInteger.valueOf(15), new BigInteger(pbtx.getTxOutputs(1).getAmount().toByteArray()));
+        assertEquals(60, tx.getGasUsed());
+    }
+
+    private Proposal transfer(long amount, String fee) {
+        return new Proposal().setFee(fee).setInitiator(account).transfer("XC1111111111111111@xuper", BigInteger.valueOf(amount));
+    }
+
+    private static XchainOuterClass.Utxo utxo(String txid, int offset, long amount) {
+        return XchainOuterClass.Utxo.newBuilder()
+                .setRefTxid(ByteString.copyFromUtf8(txid))
+                .setRefOffset(offset)
+                .setToAddr(ByteString.copyFromUtf8("addr"))
+                .setAmount(ByteString.copyFrom(BigInteger.valueOf(amount).toByteArray()))
+                .build();
+    }
+}
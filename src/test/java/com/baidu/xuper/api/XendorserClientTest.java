@@ -0,0 +1,112 @@
+package com.baidu.xuper.api;
+
+import com.baidu.xuper.pb.XendorserOuterClass;
+import io.grpc.Status;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class XendorserClientTest {
+
+    static class FakeEndorser implements XendorserClient.Sender {
+        final List<CompletableFuture<XendorserOuterClass.EndorserResponse>> calls = new ArrayList<>();
+        final List<Long> deadlines = new ArrayList<>();
+        Status fail;
+
+        @Override
+        public CompletableFuture<XendorserOuterClass.EndorserResponse> send(XendorserOuterClass.EndorserRequest request, long deadlineNanos) {
+            CompletableFuture<XendorserOuterClass.EndorserResponse> f = new CompletableFuture<>();
+            calls.add(f);
+            deadlines.add(deadlineNanos);
+            if (fail != null) {
+                f.completeExceptionally(fail.asRuntimeException());
+            }
+            return f;
+        }
+    }
+
+    static XendorserOuterClass.EndorserRequest request(String name) {
+        return XendorserOuterClass.EndorserRequest.newBuilder().setRequestName(name).build();
+    }
+
+    @Test
+    public void leastInFlight() {
+        FakeEndorser a = new FakeEndorser();
+        FakeEndorser b = new FakeEndorser();
+        Map<String, XendorserClient.Sender> senders = new LinkedHashMap<>();
+        senders.put("a", a);
+        senders.put("b", b);
+        XendorserClient client = new XendorserClient(senders);
+
+        CompletableFuture<XendorserOuterClass.EndorserResponse> first = client.endorserCall(request("PreExecWithFee"));
+        CompletableFuture<XendorserOuterClass.EndorserResponse> second = client.endorserCall(request("PreExecWithFee"));
+        assertEquals(1, a.calls.size());
+        assertEquals(1, b.calls.size());
+        assertEquals(1, client.getEndpoints().get(0).getInFlight());
+
+        a.calls.get(0).complete(XendorserOuterClass.EndorserResponse.getDefaultInstance());
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        client.endorserCall(request("ComplianceCheck"));
+        assertEquals(2, a.calls.size());
+    }
+
+    @Test
+    public void failoverAndEject() {
+        FakeEndorser a = new FakeEndorser();
+        FakeEndorser b = new FakeEndorser();
+        a.fail = Status.UNAVAILABLE;
+        Map<String, XendorserClient.Sender> senders = new LinkedHashMap<>();
+        senders.put("a", a);
+        senders.put("b", b);
+        XendorserClient client = new XendorserClient(senders).setEjection(2, 60000);
+
+        for (int i = 0; i < 2; i++) {
+            CompletableFuture<XendorserOuterClass.EndorserResponse> f = client.endorserCall(request("PreExecWithFee"));
+            b.calls.get(i).complete(XendorserOuterClass.EndorserResponse.getDefaultInstance());
+            assertTrue(f.isDone() && !f.isCompletedExceptionally());
+        }
+        assertEquals(2, a.calls.size());
+        assertTrue(client.getEndpoints().get(0).isEjected());
+
+        // b is busy but a is ejected
+        client.endorserCall(request("PreExecWithFee"));
+        assertEquals(2, a.calls.size());
+        assertEquals(3, b.calls.size());
+
+        // not retried on other failures
+        b.fail = Status.INVALID_ARGUMENT;
+        b.calls.get(2).complete(XendorserOuterClass.EndorserResponse.getDefaultInstance());
+        try {
+            client.blockingEndorserCall(request("ComplianceCheck"));
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(e).getCode());
+        }
+        assertEquals(2, a.calls.size());
+    }
+
+    @Test
+    public void deadlineByRequestName() {
+        FakeEndorser a = new FakeEndorser();
+        Map<String, XendorserClient.Sender> senders = new LinkedHashMap<>();
+        senders.put("a", a);
+        XendorserClient client = new XendorserClient(senders)
+                .setDeadline("ComplianceCheck", 2, TimeUnit.SECONDS)
+                .setDeadline("PreExecWithFee", 0, TimeUnit.SECONDS);
+
+        client.endorserCall(request("ComplianceCheck"));
+        client.endorserCall(request("PreExecWithFee"));
+        client.endorserCall(request("Other"));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), (long) a.deadlines.get(0));
+        assertEquals(0, (long) a.deadlines.get(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(XendorserClient.DEFAULT_DEADLINE_MILLIS), (long) a.deadlines.get(2));
+    }
+}
@@ -10,11 +10,14 @@ import org.junit.Test;
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static java.lang.Thread.sleep;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assume.assumeNoException;
 
 public class XuperClientTest {
@@ -48,6 +51,21 @@ public class XuperClientTest {
         System.out.println("transfer " + txid);
     }
 
+    @Test
+    public void sendAll() throws Exception {
+        UtxoPool pool = client.newUtxoPool(account);
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            txs.add(pool.build(client.newTransferProposal(account, "XC1111111111111111@xuper", BigInteger.valueOf(10), "0", null)).sign());
+        }
+        List<TxSubmitter.Result> results = pool.sendAll(txs, 4);
+        assertEquals(txs.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(txs.get(i), results.get(i).getTransaction());
+            assertNull(results.get(i).getError());
+        }
+    }
+
     @Test
     public void getBalance() throws Exception {
         Account bob = Account.create();
@@ -2,8 +2,15 @@ package com.baidu.xuper.config;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ConfigTest {
     @Test
@@ -34,4 +41,48 @@ public class ConfigTest {
 //        assertEquals(c.getComplianceCheck().getComplianceCheckEndorseServiceFeeAddr(), "ejD5M7phBVW5vKsz9RY86ZwomjK5CHekK");
 //        assertEquals(c.getComplianceCheck().getComplianceCheckEndorseServiceAddr(), "ejD5M7phBVW5vKsz9RY86ZwomjK5CHekK");
     }
+
+    @Test
+    public void testSnapshot() {
+        Config c = Config.getInstance();
+        assertTrue(c.isFrozen());
+        assertSame(c, Config.getInstance());
+        try {
+            c.setCrypto(Config.CRYPTO_GM);
+            fail();
+        } catch (IllegalStateException e) {
+            // published configs can not be changed
+        }
+        try {
+            c.getComplianceCheck().setIsNeedComplianceCheck(true);
+            fail();
+        } catch (IllegalStateException e) {
+            // nor their ComplianceCheck
+        }
+
+        Config gm = c.copy();
+        gm.setCrypto(Config.CRYPTO_GM);
+        gm.getComplianceCheck().setComplianceCheckEndorseServiceFee(20);
+        assertEquals(Config.CRYPTO_GM, gm.getCrypto());
+        assertEquals(c.getCrypto(), Config.getInstance().getCrypto());
+        assertEquals(10, c.getComplianceCheck().getComplianceCheckEndorseServiceFee());
+        assertNotSame(c.getComplianceCheck(), gm.getComplianceCheck());
+        assertTrue(gm.freeze().getComplianceCheck() != null && gm.isFrozen());
+    }
+
+    @Test
+    public void testLoad() {
+        String yaml = "endorseServiceHost: \"127.0.0.1:37100,127.0.0.2:37100\"\n" +
+                "complianceCheck:\n" +
+                "  isNeedComplianceCheck: true\n" +
+                "  complianceCheckEndorseServiceFee: 400\n" +
+                "crypto: \"gm\"\n";
+        Config c = Config.load(new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)));
+        assertTrue(c.isFrozen());
+        assertEquals("127.0.0.1:37100,127.0.0.2:37100", c.getEndorseServiceHost());
+        assertTrue(c.getComplianceCheck().isNeedComplianceCheck());
+        assertEquals(400, c.getComplianceCheck().getComplianceCheckEndorseServiceFee());
+        assertEquals(Config.CRYPTO_GM, c.getCrypto());
+        assertEquals(1, (int) c.getTxVersion());
+    }
 }
@@ -1,10 +1,19 @@
 package com.baidu.xuper.crypto;
 
 import com.baidu.xuper.api.CryptoClient;
+import com.baidu.xuper.crypto.xchain.hash.Hash;
 import com.baidu.xuper.crypto.xchain.sign.ECKeyPair;
+import com.baidu.xuper.crypto.xchain.sign.Ecc;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
 import org.junit.Test;
 
-import static org.junit.Assert.assertNotNull;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
 
 public class ECCTest {
     @Test
@@ -27,4 +36,30 @@ public class ECCTest {
             throw e;
         }
     }
+
+    @Test
+    public void cachedCryptoClient() {
+        Crypto cli = CryptoClient.getCryptoClient();
+        assertSame(cli, CryptoClient.getCryptoClient());
+        CryptoClient.invalidate();
+        assertNotSame(cli, CryptoClient.getCryptoClient());
+    }
+
+    @Test
+    public void deterministicSign() throws Exception {
+        ECKeyPair ecKeyPair = ECKeyPair.create();
+        byte[] hash = Hash.doubleSha256("a".getBytes());
+        byte[] sign = Ecc.sign(hash, ecKeyPair.getPrivateKey(), true);
+        assertArrayEquals(sign, Ecc.sign(hash, ecKeyPair.getPrivateKey(), true));
+        assertFalse(Arrays.equals(Ecc.sign(hash, ecKeyPair.getPrivateKey()), Ecc.sign(hash, ecKeyPair.getPrivateKey())));
+
+        ASN1Sequence seq = ASN1Sequence.getInstance(sign);
+        ECDSASigner verifier = new ECDSASigner();
+        verifier.init(false, new ECPublicKeyParameters(ecKeyPair.getPublicKey(), Ecc.domain));
+        assertTrue(verifier.verifySignature(hash,
+                ASN1Integer.getInstance(seq.getObjectAt(0)).getValue(),
+                ASN1Integer.getInstance(seq.getObjectAt(1)).getValue()));
+        // the same bytes as the DER encoder of BouncyCastle
+        assertArrayEquals(seq.getEncoded(ASN1Encoding.DER), sign);
+    }
 }